@@ -0,0 +1,274 @@
+package j.lucene.tutorial.extract;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A Bible chapter extracted with a fixed schema. Unlike the general-purpose
+ * {@link ExtractedDocument}, values are held in typed fields, with the chapter
+ * number as an int and the timestamp as epoch milliseconds. A transformer that
+ * knows this type can read the values directly, without map lookups, casts or
+ * boxing.
+ * 
+ * For compatibility, {@link #getContentByFieldname()} still returns the
+ * equivalent map, but it is only created if asked for.
+ *
+ */
+public class ExtractedChapter extends ExtractedDocument {
+
+	private final int chapter;
+	private final String book;
+	private final long addTimestampMillis;
+	private final String source;
+	private final String entryName;
+	private final String synopsis;
+	private final String[] keywords;
+	private final Supplier<String> textSupplier;
+
+	private volatile String text;
+	private Map<String, Object> contentByFieldname = null;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param b the values
+	 */
+	public ExtractedChapter(Builder b) {
+		this.chapter = b.chapter;
+		this.book = b.book;
+		this.addTimestampMillis = b.addTimestampMillis;
+		this.source = b.source;
+		this.entryName = b.entryName;
+		this.synopsis = b.synopsis;
+		this.keywords = b.keywords;
+		this.text = b.text;
+		this.textSupplier = b.textSupplier;
+	}
+
+	/**
+	 * The chapter number
+	 * 
+	 * @return the chapter
+	 */
+	public int getChapter() {
+		return chapter;
+	}
+
+	/**
+	 * The book name
+	 * 
+	 * @return the book
+	 */
+	public String getBook() {
+		return book;
+	}
+
+	/**
+	 * When this was extracted, in milliseconds since the epoch.
+	 * 
+	 * @return the timestamp
+	 */
+	public long getAddTimestampMillis() {
+		return addTimestampMillis;
+	}
+
+	/**
+	 * The archive this came from
+	 * 
+	 * @return the source
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * The archive entry this came from, if known. Unlike the other values, this
+	 * is not part of {@link #getContentByFieldname()}; it is where the chapter
+	 * was found rather than part of it.
+	 * 
+	 * @return the entry name, or null
+	 */
+	public String getEntryName() {
+		return entryName;
+	}
+
+	/**
+	 * The synopsis, if any
+	 * 
+	 * @return the synopsis, or null
+	 */
+	public String getSynopsis() {
+		return synopsis;
+	}
+
+	/**
+	 * The keywords, if any
+	 * 
+	 * @return the keywords, or null
+	 */
+	public String[] getKeywords() {
+		return keywords;
+	}
+
+	/**
+	 * The raw text. If the text is lazy, it is obtained now, once, even if
+	 * several threads ask for it at the same time.
+	 * 
+	 * @return the text
+	 */
+	public String getText() {
+		String t = text;
+		if (t == null && textSupplier != null) {
+			synchronized (this) {
+				t = text;
+				if (t == null) {
+					t = textSupplier.get();
+					text = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	@Override
+	public synchronized Map<String, Object> getContentByFieldname() {
+		if (contentByFieldname == null) {
+			Map<String, Object> fields = new HashMap<>();
+			fields.put("chapter", chapter);
+			fields.put("book", book);
+			fields.put("add_timestamp", ZonedDateTime.ofInstant(Instant.ofEpochMilli(addTimestampMillis), ZoneOffset.UTC));
+			fields.put("source", source);
+			if (synopsis != null) {
+				fields.put("synopsis", synopsis);
+			}
+			if (keywords != null) {
+				fields.put("keywords", keywords);
+			}
+			Map<String, Supplier<?>> lazy = new HashMap<>();
+			lazy.put("text", this::getText);
+			contentByFieldname = new ExtractedDocument(fields, lazy).getContentByFieldname();
+		}
+		return contentByFieldname;
+	}
+
+	/**
+	 * Collects the values for an {@link ExtractedChapter}. Anything not set is
+	 * left null, or 0.
+	 */
+	public static class Builder {
+		private int chapter;
+		private String book;
+		private long addTimestampMillis;
+		private String source;
+		private String entryName;
+		private String synopsis;
+		private String[] keywords;
+		private String text;
+		private Supplier<String> textSupplier;
+
+		/**
+		 * The chapter number
+		 * 
+		 * @param chapter the chapter
+		 * @return this
+		 */
+		public Builder chapter(int chapter) {
+			this.chapter = chapter;
+			return this;
+		}
+
+		/**
+		 * The book name
+		 * 
+		 * @param book the book
+		 * @return this
+		 */
+		public Builder book(String book) {
+			this.book = book;
+			return this;
+		}
+
+		/**
+		 * When this was extracted, in milliseconds since the epoch.
+		 * 
+		 * @param addTimestampMillis the timestamp
+		 * @return this
+		 */
+		public Builder addTimestampMillis(long addTimestampMillis) {
+			this.addTimestampMillis = addTimestampMillis;
+			return this;
+		}
+
+		/**
+		 * The archive this came from
+		 * 
+		 * @param source the archive file name
+		 * @return this
+		 */
+		public Builder source(String source) {
+			this.source = source;
+			return this;
+		}
+
+		/**
+		 * The archive entry this came from
+		 * 
+		 * @param entryName the entry name
+		 * @return this
+		 */
+		public Builder entryName(String entryName) {
+			this.entryName = entryName;
+			return this;
+		}
+
+		/**
+		 * The synopsis
+		 * 
+		 * @param synopsis the synopsis
+		 * @return this
+		 */
+		public Builder synopsis(String synopsis) {
+			this.synopsis = synopsis;
+			return this;
+		}
+
+		/**
+		 * The keywords
+		 * 
+		 * @param keywords the keywords
+		 * @return this
+		 */
+		public Builder keywords(String[] keywords) {
+			this.keywords = keywords;
+			return this;
+		}
+
+		/**
+		 * The text, already read. This replaces any text supplier.
+		 * 
+		 * @param text the raw text
+		 * @return this
+		 */
+		public Builder text(String text) {
+			this.text = text;
+			this.textSupplier = null;
+			return this;
+		}
+
+		/**
+		 * The text will be obtained only when first requested.
+		 * 
+		 * @param textSupplier supplies the text
+		 * @return this
+		 */
+		public Builder text(Supplier<String> textSupplier) {
+			this.text = null;
+			this.textSupplier = textSupplier;
+			return this;
+		}
+	}
+}
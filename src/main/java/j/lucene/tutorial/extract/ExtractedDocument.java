@@ -1,7 +1,15 @@
 package j.lucene.tutorial.extract;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Contains the raw data from a System Of Record extracted as a document that
@@ -21,6 +29,29 @@ public class ExtractedDocument {
 		this.contentByFieldname = Collections.unmodifiableMap(contentByFieldname);
 	}
 
+	/**
+	 * Constructor for a document with some fields that are expensive to obtain,
+	 * such as the full text. These lazy fields are only obtained when their value
+	 * is first requested from {@link #getContentByFieldname()}, and then only
+	 * once. Passes that only need the other fields (counting, filtering, etc) do
+	 * not pay for them.
+	 * 
+	 * @param contentByFieldname     raw data by field
+	 * @param lazyContentByFieldname suppliers of raw data by field
+	 */
+	public ExtractedDocument(Map<String, Object> contentByFieldname,
+			Map<String, Supplier<?>> lazyContentByFieldname) {
+		this.contentByFieldname = new LazyContentMap(contentByFieldname, lazyContentByFieldname);
+	}
+
+	/**
+	 * Constructor for subclasses that hold their content some other way, and
+	 * override {@link #getContentByFieldname()}.
+	 */
+	protected ExtractedDocument() {
+		this.contentByFieldname = null;
+	}
+
 	/**
 	 * the document contents
 	 * 
@@ -30,4 +61,123 @@ public class ExtractedDocument {
 		return contentByFieldname;
 	}
 
+	/**
+	 * An unmodifiable map that resolves lazy values on first access. Keys, and
+	 * the size, are known without resolving anything.
+	 */
+	private static class LazyContentMap extends AbstractMap<String, Object> {
+		private final Map<String, Object> eager;
+		private final Map<String, Supplier<?>> lazy;
+		private final Map<String, Object> resolved;
+		private final Set<String> keys;
+
+		LazyContentMap(Map<String, Object> eager, Map<String, Supplier<?>> lazy) {
+			this.eager = eager;
+			this.lazy = lazy;
+			this.resolved = new HashMap<>(lazy.size());
+			Set<String> k = new LinkedHashSet<>(eager.keySet());
+			k.addAll(lazy.keySet());
+			this.keys = Collections.unmodifiableSet(k);
+		}
+
+		@Override
+		public Object get(Object key) {
+			Supplier<?> s = lazy.get(key);
+			if (s == null) {
+				return eager.get(key);
+			}
+			synchronized (resolved) {
+				if (!resolved.containsKey(key)) {
+					resolved.put((String) key, s.get());
+				}
+				return resolved.get(key);
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return keys.contains(key);
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return keys;
+		}
+
+		@Override
+		public int size() {
+			return keys.size();
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<>() {
+
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					Iterator<String> it = keys.iterator();
+					return new Iterator<>() {
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							return new LazyEntry(it.next());
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return keys.size();
+				}
+			};
+		}
+
+		/**
+		 * Resolves its value only when asked.
+		 */
+		private class LazyEntry implements Entry<String, Object> {
+			private final String key;
+
+			LazyEntry(String key) {
+				this.key = key;
+			}
+
+			@Override
+			public String getKey() {
+				return key;
+			}
+
+			@Override
+			public Object getValue() {
+				return get(key);
+			}
+
+			@Override
+			public Object setValue(Object value) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean equals(Object o) {
+				return o instanceof Entry<?, ?> e && Objects.equals(key, e.getKey())
+						&& Objects.equals(getValue(), e.getValue());
+			}
+
+			@Override
+			public int hashCode() {
+				return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+			}
+
+			@Override
+			public String toString() {
+				return key + "=" + getValue();
+			}
+		}
+	}
+
 }
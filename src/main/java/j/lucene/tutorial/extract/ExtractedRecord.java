@@ -0,0 +1,73 @@
+package j.lucene.tutorial.extract;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * A document whose values are held by position, in the order of a list of
+ * field names shared by every record of the same kind. A transformer compiled
+ * for that list can read each value by its index, without map lookups.
+ *
+ * For compatibility, {@link #getContentByFieldname()} still returns the
+ * equivalent map, without null values, but it is only created if asked for.
+ *
+ */
+public class ExtractedRecord extends ExtractedDocument {
+
+	private final List<String> fieldNames;
+	private final Object[] values;
+
+	private Map<String, Object> contentByFieldname = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fieldNames the field names, shared by records of the same kind
+	 * @param values     the raw data, in the same order, with null for no value
+	 */
+	public ExtractedRecord(List<String> fieldNames, Object[] values) {
+		if (fieldNames.size() != values.length) {
+			throw new LuceneTutorialException(
+					"Expected " + fieldNames.size() + " values but there are " + values.length);
+		}
+		this.fieldNames = fieldNames;
+		this.values = values;
+	}
+
+	/**
+	 * The field names, in the order of the values
+	 *
+	 * @return the field names
+	 */
+	public List<String> getFieldNames() {
+		return fieldNames;
+	}
+
+	/**
+	 * The value of a field, by its position
+	 *
+	 * @param index the position of the field in {@link #getFieldNames()}
+	 * @return the value, or null
+	 */
+	public Object getValue(int index) {
+		return values[index];
+	}
+
+	@Override
+	public synchronized Map<String, Object> getContentByFieldname() {
+		if (contentByFieldname == null) {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					fields.put(fieldNames.get(i), values[i]);
+				}
+			}
+			contentByFieldname = Collections.unmodifiableMap(fields);
+		}
+		return contentByFieldname;
+	}
+}
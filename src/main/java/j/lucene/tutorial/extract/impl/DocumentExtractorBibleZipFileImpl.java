@@ -0,0 +1,234 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.DocumentExtractor;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * This Document Extractor reads the same zip archive as
+ * {@link DocumentExtractorBibleZipImpl}, but rather than reading the archive
+ * from start to finish, it uses the zip central directory to find each chapter.
+ * Knowing all the chapters up-front, the resulting stream has an exact size and
+ * can be split into ranges of chapters. This lets a parallel stream inflate and
+ * parse chapters on multiple cores.
+ * 
+ * Optionally, the "text" field is lazy. Then only the head of each chapter is
+ * read during extraction, and the rest only if the text is requested.
+ * 
+ * The zip file is held open until the stream is closed, so callers should use
+ * try-with-resources. Lazy text must be requested before then.
+ * 
+ * An interrupted load can be resumed with
+ * {@link #documentsFromFilePath(Path, String)}, which skips the chapters up to
+ * the last one loaded.
+ *
+ */
+public class DocumentExtractorBibleZipFileImpl implements DocumentExtractor {
+
+	private final boolean lazyText;
+	private final Charset charset;
+
+	/**
+	 * Constructor. The text is read eagerly and decoded as UTF-8.
+	 */
+	public DocumentExtractorBibleZipFileImpl() {
+		this(false);
+	}
+
+	/**
+	 * Constructor. The archive is decoded as UTF-8.
+	 * 
+	 * @param lazyText if true, read the chapter text only when requested.
+	 */
+	public DocumentExtractorBibleZipFileImpl(boolean lazyText) {
+		this(lazyText, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param lazyText if true, read the chapter text only when requested.
+	 * @param charset  the encoding of the HTML in the archive
+	 */
+	public DocumentExtractorBibleZipFileImpl(boolean lazyText, Charset charset) {
+		this.lazyText = lazyText;
+		this.charset = charset;
+	}
+
+	@Override
+	public Stream<ExtractedDocument> documentsFromFilePath(Path zipFilePath) {
+		return documentsFromFilePath(zipFilePath, null);
+	}
+
+	/**
+	 * Extracts the chapters that come after the given one, in central directory
+	 * order. As the order is that of the archive, not of the books and chapters,
+	 * this is only meaningful for resuming an earlier extraction of the same
+	 * archive.
+	 * 
+	 * @param zipFilePath      the archive
+	 * @param resumeAfterEntry the name of the last chapter entry already
+	 *                         extracted, or null to extract them all
+	 * @return the document stream
+	 */
+	public Stream<ExtractedDocument> documentsFromFilePath(Path zipFilePath, String resumeAfterEntry) {
+		ZipFile zf = open(zipFilePath);
+		try {
+			Map<Integer, String> booknameByChapterId = bookNameIndex(zf, charset);
+			String source = zipFilePath.getFileName().toString();
+			List<ZipEntry> chapterEntries = chapterEntriesToExtract(chapterEntries(zf), booknameByChapterId, source,
+					resumeAfterEntry);
+			return StreamSupport
+					.stream(new EntryRangeSpliterator<>(chapterEntries,
+							() -> chapterReader(zf, booknameByChapterId, source)), false)
+					.onClose(() -> close(zf));
+		} catch (RuntimeException e) {
+			close(zf);
+			throw e;
+		}
+	}
+
+	static ZipFile open(Path zipFilePath) {
+		try {
+			return new ZipFile(zipFilePath.toFile());
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+	}
+
+	static void close(ZipFile zf) {
+		try {
+			zf.close();
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+	}
+
+	/**
+	 * Only the index entries are read here; the central directory tells us where
+	 * they are.
+	 * 
+	 * @param zf      the open archive
+	 * @param charset the encoding of the HTML in the archive
+	 * @return the book names by book number
+	 */
+	static Map<Integer, String> bookNameIndex(ZipFile zf, Charset charset) {
+		Map<Integer, String> booknameByChapterId = new HashMap<>();
+		zf.stream().filter(ze -> DocumentExtractorBibleZipImpl.isBookNameIndex(ze.getName())).forEach(ze -> {
+			DocumentExtractorBibleZipImpl.addToBookNameIndex(new String(readAllBytes(zf, ze), charset),
+					booknameByChapterId);
+		});
+		return Collections.unmodifiableMap(booknameByChapterId);
+	}
+
+	/**
+	 * The chapters in central directory order
+	 * 
+	 * @param zf the open archive
+	 * @return the chapter entries
+	 */
+	static List<ZipEntry> chapterEntries(ZipFile zf) {
+		List<ZipEntry> chapterEntries = new ArrayList<>();
+		zf.stream().filter(ze -> DocumentExtractorBibleZipImpl.chapter(ze.getName()) != null)
+				.forEach(chapterEntries::add);
+		return Collections.unmodifiableList(chapterEntries);
+	}
+
+	/**
+	 * Chooses which chapters to extract. By default, every chapter is extracted,
+	 * or every chapter after the one to resume after.
+	 * 
+	 * @param chapterEntries      all the chapters, in central directory order
+	 * @param booknameByChapterId the book names
+	 * @param source              the archive file name
+	 * @param resumeAfterEntry    the name of the last chapter entry already
+	 *                            extracted, or null
+	 * @return the chapters to extract
+	 */
+	protected List<ZipEntry> chapterEntriesToExtract(List<ZipEntry> chapterEntries,
+			Map<Integer, String> booknameByChapterId, String source, String resumeAfterEntry) {
+		if (resumeAfterEntry == null) {
+			return chapterEntries;
+		}
+		Set<String> done = entriesUpTo(chapterEntries, resumeAfterEntry);
+		return chapterEntries.stream().filter(ze -> !done.contains(ze.getName())).toList();
+	}
+
+	/**
+	 * The names of the chapters up to and including the given one. The given
+	 * chapter need not be one an incremental extraction would extract, as it may
+	 * have skipped it.
+	 * 
+	 * @param chapterEntries all the chapters, in central directory order
+	 * @param entryName      the last chapter already extracted
+	 * @return the names of the chapters already extracted, or skipped
+	 */
+	static Set<String> entriesUpTo(List<ZipEntry> chapterEntries, String entryName) {
+		Set<String> done = new HashSet<>();
+		for (ZipEntry ze : chapterEntries) {
+			done.add(ze.getName());
+			if (ze.getName().equals(entryName)) {
+				return Collections.unmodifiableSet(done);
+			}
+		}
+		throw new LuceneTutorialException("The archive has no chapter to resume after: " + entryName);
+	}
+
+	private Function<ZipEntry, ExtractedDocument> chapterReader(ZipFile zf, Map<Integer, String> booknameByChapterId,
+			String source) {
+		if (lazyText) {
+			// the text may be requested later from any thread, so it cannot share buffers.
+			return ze -> DocumentExtractorBibleZipImpl.lazyChapterDocument(ze.getName(),
+					DocumentExtractorBibleZipImpl.chapter(ze.getName()), readHead(zf, ze, charset),
+					() -> new String(readAllBytes(zf, ze), charset), booknameByChapterId, source);
+		}
+		EntryDecoder decoder = new EntryDecoder(charset);
+		return ze -> DocumentExtractorBibleZipImpl.chapterDocument(ze.getName(),
+				DocumentExtractorBibleZipImpl.chapter(ze.getName()), decode(zf, ze, decoder), booknameByChapterId,
+				source);
+	}
+
+	static String decode(ZipFile zf, ZipEntry ze, EntryDecoder decoder) {
+		try (InputStream is = zf.getInputStream(ze)) {
+			return decoder.decode(is);
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+	}
+
+	static String readHead(ZipFile zf, ZipEntry ze, Charset charset) {
+		try (Reader r = new InputStreamReader(zf.getInputStream(ze), charset)) {
+			return HtmlHeadScanner.readHead(r);
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+	}
+
+	static byte[] readAllBytes(ZipFile zf, ZipEntry ze) {
+		try (InputStream is = zf.getInputStream(ze)) {
+			return is.readAllBytes();
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+	}
+
+}
@@ -1,26 +1,28 @@
 package j.lucene.tutorial.extract.impl;
 
 import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Clock;
-import java.time.ZonedDateTime;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import j.lucene.tutorial.LuceneTutorialException;
 import j.lucene.tutorial.extract.DocumentExtractor;
+import j.lucene.tutorial.extract.ExtractedChapter;
 import j.lucene.tutorial.extract.ExtractedDocument;
 
 /**
@@ -38,44 +40,134 @@ public class DocumentExtractorBibleZipImpl implements DocumentExtractor {
 	protected static final Clock CLOCK = Clock.systemUTC();
 
 	private static final Pattern INDEX_PATTERN = Pattern.compile("^.*title=\\\"\\[(\\d+).*>([- A-Za-z0-9]+)<.*$");
-	private static final Pattern SYNOPSIS_PATTERN1 = Pattern.compile("^.*<title>Audio.Books:.*\\\\d{1,3}.(.*)<.*$");
-	private static final Pattern SYNOPSIS_PATTERN2 = Pattern.compile("^.*<title>(.*), .*<.*$");
-	private static final Pattern KEYWORDS_PATTERN = Pattern.compile("^.*<meta name=\\\"keywords\\\" content=\\\"(.*)\\\".*$");
-	private static final Pattern KEYWORD_SPLIT_PATTERN = Pattern.compile(", ");
-	private static final Pattern NEWLINE_PATTERN = Pattern.compile("\\\n");
+
+	private final Charset charset;
+
+	/**
+	 * Constructor. The archive is decoded as UTF-8.
+	 */
+	public DocumentExtractorBibleZipImpl() {
+		this(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param charset the encoding of the HTML in the archive
+	 */
+	public DocumentExtractorBibleZipImpl(Charset charset) {
+		this.charset = charset;
+	}
 
 	@Override
 	public Stream<ExtractedDocument> documentsFromFilePath(Path zipFilePath) {
 		return StreamSupport.stream(
-				Spliterators.spliteratorUnknownSize(new IngestDocumentIterator(bookNameIndex(zipFilePath), zipFilePath),
+				Spliterators.spliteratorUnknownSize(
+						new IngestDocumentIterator(bookNameIndex(zipFilePath), zipFilePath, charset),
 						Spliterator.DISTINCT & Spliterator.IMMUTABLE & Spliterator.NONNULL),
 				false);
 	}
 
+	/**
+	 * The book names are in "index.htm", which we find using the zip central
+	 * directory. This way only the index entry is read here, and the archive as
+	 * a whole is read just once, by the {@link IngestDocumentIterator}.
+	 * 
+	 * @param zipFilePath the archive
+	 * @return the book names by book number
+	 */
 	private Map<Integer, String> bookNameIndex(Path zipFilePath) {
-		try {
-			Map<Integer, String> booknameByChapterId = new HashMap<>();
-			ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFilePath.toFile()));
-			ZipEntry zipEntry = null;
-			while ((zipEntry = zis.getNextEntry()) != null) {
-				if (zipEntry.getName().endsWith("index.htm")) {
-					String[] index = new String(zis.readAllBytes()).split("\\n");
-					for (String line : index) {
-						Matcher m = INDEX_PATTERN.matcher(line);
-						if (m.find()) {
-							booknameByChapterId.put(Integer.parseInt(m.group(1)), m.group(2).trim());
-						}
-					}
-				}
-				zis.closeEntry();
-			}
-			zis.close();
-			return Collections.unmodifiableMap(booknameByChapterId);
+		try (ZipFile zf = new ZipFile(zipFilePath.toFile())) {
+			return DocumentExtractorBibleZipFileImpl.bookNameIndex(zf, charset);
+		} catch (LuceneTutorialException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new LuceneTutorialException(e);
 		}
 	}
 
+	static boolean isBookNameIndex(String entryName) {
+		return entryName.endsWith("index.htm");
+	}
+
+	static void addToBookNameIndex(String indexHtml, Map<Integer, String> booknameByChapterId) {
+		String[] index = indexHtml.split("\\n");
+		for (String line : index) {
+			Matcher m = INDEX_PATTERN.matcher(line);
+			if (m.find()) {
+				booknameByChapterId.put(Integer.parseInt(m.group(1)), m.group(2).trim());
+			}
+		}
+	}
+
+	/**
+	 * Chapters are named like "kj/01/1.htm", with the book number in the second
+	 * path element and the chapter number as the file name.
+	 * 
+	 * @param entryName the zip entry name
+	 * @return the chapter number, or null if the entry is not a chapter
+	 */
+	static Integer chapter(String entryName) {
+		if (!entryName.endsWith(".htm")) {
+			return null;
+		}
+		String chapterStr = Paths.get(entryName).getFileName().toString();
+		int indexOfDot = chapterStr.lastIndexOf('.');
+		chapterStr = chapterStr.substring(0, indexOfDot);
+		try {
+			return Integer.parseInt(chapterStr);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the document for one chapter.
+	 * 
+	 * @param entryName           the zip entry name
+	 * @param chapter             the chapter number, see {@link #chapter(String)}
+	 * @param text                the raw HTML of the chapter
+	 * @param booknameByChapterId the book names
+	 * @param source              the archive file name
+	 * @return the document
+	 */
+	static ExtractedDocument chapterDocument(String entryName, Integer chapter, String text,
+			Map<Integer, String> booknameByChapterId, String source) {
+		return new ExtractedChapter(chapterBuilder(entryName, chapter, text, booknameByChapterId, source).text(text));
+	}
+
+	/**
+	 * Creates the document for one chapter, where the "text" is read only if
+	 * requested.
+	 * 
+	 * @param entryName           the zip entry name
+	 * @param chapter             the chapter number, see {@link #chapter(String)}
+	 * @param head                the beginning of the raw HTML, through the end
+	 *                            of the head section
+	 * @param text                supplies the raw HTML of the chapter
+	 * @param booknameByChapterId the book names
+	 * @param source              the archive file name
+	 * @return the document
+	 */
+	static ExtractedDocument lazyChapterDocument(String entryName, Integer chapter, CharSequence head,
+			Supplier<String> text, Map<Integer, String> booknameByChapterId, String source) {
+		return new ExtractedChapter(chapterBuilder(entryName, chapter, head, booknameByChapterId, source).text(text));
+	}
+
+	private static ExtractedChapter.Builder chapterBuilder(String entryName, int chapter, CharSequence head,
+			Map<Integer, String> booknameByChapterId, String source) {
+		String bookStr = Paths.get(entryName).getName(1).toString();
+		HtmlHeadScanner.Head h = HtmlHeadScanner.scan(head);
+		return new ExtractedChapter.Builder() //
+				.chapter(chapter) //
+				.book(booknameByChapterId.get(Integer.parseInt(bookStr))) //
+				.synopsis(h.synopsis) //
+				.keywords(h.keywords) //
+				.addTimestampMillis(CLOCK.millis()) //
+				.source(source) //
+				.entryName(entryName);
+	}
+
 	/**
 	 * Iterator, used internally to provide the Stream
 	 *
@@ -85,15 +177,17 @@ public class DocumentExtractorBibleZipImpl implements DocumentExtractor {
 		final Map<Integer, String> booknameByChapterId;
 		final Path zipFilePath;
 		final String source;
+		final EntryDecoder decoder;
 
 		private ExtractedDocument next = null;
 		private ZipInputStream zis = null;
 		private boolean done = false;
 
-		IngestDocumentIterator(Map<Integer, String> booknameByChapterId, Path zipFilePath) {
+		IngestDocumentIterator(Map<Integer, String> booknameByChapterId, Path zipFilePath, Charset charset) {
 			this.booknameByChapterId = booknameByChapterId;
 			this.zipFilePath = zipFilePath;
 			this.source = zipFilePath.getFileName().toString();
+			this.decoder = new EntryDecoder(charset);
 		}
 
 		@Override
@@ -143,84 +237,16 @@ public class DocumentExtractorBibleZipImpl implements DocumentExtractor {
 		}
 
 		private void maybePopulateNext(ZipEntry zipEntry) {
-			if (zipEntry.getName().endsWith(".htm")) {
-				Integer chapter = chapter(zipEntry);
-				if (chapter != null) {
-					Map<String, Object> fields = new HashMap<>();
-					fields.put("chapter", chapter);
-
-					String bookStr = Paths.get(zipEntry.getName()).getName(1).toString();
-					fields.put("book", booknameByChapterId.get(Integer.parseInt(bookStr)));
-
-					try {
-						String text = new String(zis.readAllBytes());
-						String[] textLines = NEWLINE_PATTERN.split(text);
-						maybeAddSynopsisAndKeywords(fields, textLines);
-						fields.put("text", text);
-					} catch (Exception e) {
-						throw new LuceneTutorialException(e);
-					}
-					fields.put("add_timestamp", ZonedDateTime.now(CLOCK));
-					fields.put("source", source);
-					next = new ExtractedDocument(fields);
-				}
-			}
-		}
-
-		private Integer chapter(ZipEntry ze) {
-			String chapterStr = Paths.get(ze.getName()).getFileName().toString();
-			int indexOfDot = chapterStr.lastIndexOf('.');
-			chapterStr = chapterStr.substring(0, indexOfDot);
-			try {
-				return Integer.parseInt(chapterStr);
-			} catch (Exception e) {
-				return null;
-			}
-		}
-
-		private void maybeAddSynopsisAndKeywords(Map<String, Object> fields, String[] textLines) {
-			boolean foundSynopsis = false;
-			boolean foundKeywords = false;
-			for (String line : textLines) {
-				if (!foundSynopsis) {
-					foundSynopsis = synopsis(fields, line);
-					if(foundSynopsis) {
-						continue;
-					}
-				}
-				foundKeywords = keywords(fields, line);
-				if (foundKeywords && foundSynopsis) {
-					return;
-				}
-			}
-		}
-		
-		private boolean synopsis(Map<String, Object> fields, String line) {
-			Matcher synopsisM = SYNOPSIS_PATTERN1.matcher(line);
-			if (synopsisM.find()) {
-				fields.put("synopsis", synopsisM.group(1));
-				return true;
-			}
-			synopsisM = SYNOPSIS_PATTERN2.matcher(line);
-			if (synopsisM.find()) {
-				fields.put("synopsis", synopsisM.group(1));
-				return true;
-			}
-			return false;
-		}
-		private boolean keywords(Map<String, Object> fields, String line) {
-			Matcher keywordM = KEYWORDS_PATTERN.matcher(line);
-			if (keywordM.find()) {
-				String[] kArr = KEYWORD_SPLIT_PATTERN.split(keywordM.group(1));
-				if(kArr[0].equals("Audio")) {
-					String[] kArr1 = new String[kArr.length-1];
-					System.arraycopy(kArr, 1, kArr1, 0, kArr1.length);
-					kArr = kArr1;
+			Integer chapter = chapter(zipEntry.getName());
+			if (chapter != null) {
+				String text;
+				try {
+					text = decoder.decode(zis);
+				} catch (Exception e) {
+					throw new LuceneTutorialException(e);
 				}
-				fields.put("keywords", kArr);
-				return true;
+				next = chapterDocument(zipEntry.getName(), chapter, text, booknameByChapterId, source);
 			}
-			return false;
 		}
 	}
 
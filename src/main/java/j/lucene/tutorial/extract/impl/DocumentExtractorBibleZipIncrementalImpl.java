@@ -0,0 +1,181 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * Extracts only the chapters that are new or have changed since the last
+ * extraction. An {@link ExtractionManifest} records every chapter's CRC-32,
+ * size and last-modified time, as found in the zip central directory. Chapters
+ * that are unchanged are skipped without being read.
+ * 
+ * Changed chapters, and chapters no longer in the archive, have prior versions
+ * that need to be deleted from the index. These are listed by
+ * {@link #documentsToDelete()}, as documents having only the "book", "chapter"
+ * and "source" fields. The book is the one recorded in the manifest, as the
+ * archive's index may no longer list it.
+ * 
+ * The manifest keeps each archive's chapters apart, so one manifest, and one
+ * instance of this extractor, may serve several archives, for instance through
+ * {@link DocumentExtractorMultiArchiveImpl}. The archives must have different
+ * file names.
+ * 
+ * The manifest is not updated until {@link #saveManifest()} is called. Call it
+ * only once the extracted documents have been successfully committed to the
+ * index; otherwise the next run will repeat the same work.
+ * 
+ * An interrupted load can resume with
+ * {@link #documentsFromFilePath(Path, String)}, as the manifest is not yet
+ * saved. The deletes must then be applied before any chapter is loaded, so the
+ * first commit holds them all. On resuming, the chapters up to the resume point
+ * were loaded, in their new versions, and are neither extracted nor deleted
+ * again; the deletes of the removed chapters, and of the changed ones after the
+ * resume point, are repeated, which is harmless.
+ *
+ */
+public class DocumentExtractorBibleZipIncrementalImpl extends DocumentExtractorBibleZipFileImpl {
+
+	private final Path manifestPath;
+
+	private final Map<String, Pending> pendingBySource = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param manifestPath where the manifest is kept, usually next to the index.
+	 */
+	public DocumentExtractorBibleZipIncrementalImpl(Path manifestPath) {
+		this.manifestPath = manifestPath;
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param manifestPath where the manifest is kept, usually next to the index.
+	 * @param lazyText     if true, read the chapter text only when requested.
+	 * @param charset      the encoding of the HTML in the archive
+	 */
+	public DocumentExtractorBibleZipIncrementalImpl(Path manifestPath, boolean lazyText, Charset charset) {
+		super(lazyText, charset);
+		this.manifestPath = manifestPath;
+	}
+
+	@Override
+	protected List<ZipEntry> chapterEntriesToExtract(List<ZipEntry> chapterEntries,
+			Map<Integer, String> booknameByChapterId, String source, String resumeAfterEntry) {
+		Set<String> done = resumeAfterEntry == null ? Set.of() : entriesUpTo(chapterEntries, resumeAfterEntry);
+		ExtractionManifest manifest = ExtractionManifest.read(manifestPath);
+		// a manifest from before archives were recorded has the entries of the one archive it was used with.
+		boolean legacy = !manifest.getEntriesBySource().containsKey(source);
+		Map<String, ExtractionManifest.Entry> previous = new HashMap<>(
+				manifest.getEntriesByName(legacy ? null : source));
+		Map<String, ExtractionManifest.Entry> current = new LinkedHashMap<>();
+		List<ZipEntry> toExtract = new ArrayList<>();
+		List<ExtractedDocument> toDelete = new ArrayList<>();
+
+		for (ZipEntry ze : chapterEntries) {
+			ExtractionManifest.Entry e = new ExtractionManifest.Entry(ze.getCrc(), ze.getSize(), ze.getTime(),
+					book(ze.getName(), booknameByChapterId));
+			current.put(ze.getName(), e);
+			ExtractionManifest.Entry prior = previous.remove(ze.getName());
+			if (done.contains(ze.getName())) {
+				// loaded, in its current version, before the load was interrupted
+				continue;
+			}
+			if (prior == null) {
+				toExtract.add(ze);
+			} else if (!prior.equals(e) || (prior.getBook() != null && !prior.getBook().equals(e.getBook()))) {
+				toExtract.add(ze);
+				toDelete.add(identity(ze.getName(), prior, booknameByChapterId, source));
+			}
+		}
+		for (Map.Entry<String, ExtractionManifest.Entry> removed : previous.entrySet()) {
+			toDelete.add(identity(removed.getKey(), removed.getValue(), booknameByChapterId, source));
+		}
+
+		pendingBySource.put(source, new Pending(current, Collections.unmodifiableList(toDelete), legacy));
+		return Collections.unmodifiableList(toExtract);
+	}
+
+	/**
+	 * From the last extraction of each archive, the changed and removed chapters
+	 * whose prior versions should be deleted from the index.
+	 * 
+	 * @return documents with the identifying fields "book", "chapter" and
+	 *         "source", in archive file name order.
+	 */
+	public List<ExtractedDocument> documentsToDelete() {
+		List<ExtractedDocument> toDelete = new ArrayList<>();
+		for (Pending p : new TreeMap<>(pendingBySource).values()) {
+			toDelete.addAll(p.toDelete);
+		}
+		return Collections.unmodifiableList(toDelete);
+	}
+
+	/**
+	 * Records the last extraction of each archive in the manifest, so the next
+	 * extraction will skip these chapters unless they change. Archives not
+	 * extracted by this instance keep their entries.
+	 */
+	public synchronized void saveManifest() {
+		if (pendingBySource.isEmpty()) {
+			throw new LuceneTutorialException("Must call 'documentsFromFilePath' before saving the manifest.");
+		}
+		ExtractionManifest manifest = ExtractionManifest.read(manifestPath);
+		for (Map.Entry<String, Pending> e : pendingBySource.entrySet()) {
+			if (e.getValue().legacy) {
+				manifest = manifest.withoutEntries(null);
+			}
+			manifest = manifest.withEntries(e.getKey(), e.getValue().entries);
+		}
+		manifest.write(manifestPath);
+	}
+
+	/**
+	 * The prior version's identifying values. A manifest from before books were
+	 * recorded falls back to the current archive's index.
+	 */
+	private ExtractedDocument identity(String entryName, ExtractionManifest.Entry prior,
+			Map<Integer, String> booknameByChapterId, String source) {
+		Map<String, Object> fields = new HashMap<>();
+		fields.put("chapter", DocumentExtractorBibleZipImpl.chapter(entryName));
+		fields.put("book", prior.getBook() != null ? prior.getBook() : book(entryName, booknameByChapterId));
+		fields.put("source", source);
+		return new ExtractedDocument(fields);
+	}
+
+	private static String book(String entryName, Map<Integer, String> booknameByChapterId) {
+		String bookStr = Paths.get(entryName).getName(1).toString();
+		return booknameByChapterId.get(Integer.parseInt(bookStr));
+	}
+
+	/**
+	 * The outcome of extracting one archive, until the manifest is saved.
+	 */
+	private static class Pending {
+		final Map<String, ExtractionManifest.Entry> entries;
+		final List<ExtractedDocument> toDelete;
+		final boolean legacy;
+
+		Pending(Map<String, ExtractionManifest.Entry> entries, List<ExtractedDocument> toDelete, boolean legacy) {
+			this.entries = entries;
+			this.toDelete = toDelete;
+			this.legacy = legacy;
+		}
+	}
+
+}
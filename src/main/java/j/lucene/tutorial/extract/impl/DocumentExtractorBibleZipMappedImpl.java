@@ -0,0 +1,151 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Inflater;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.DocumentExtractor;
+import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.extract.impl.MappedZipArchive.Entry;
+
+/**
+ * This Document Extractor reads the same zip archive as
+ * {@link DocumentExtractorBibleZipImpl}, but memory-maps the archive instead of
+ * reading it through a chain of streams. Each chapter is inflated directly from
+ * the mapped file into a buffer that is reused from one chapter to the next.
+ * Like {@link DocumentExtractorBibleZipFileImpl}, the stream is sized and may
+ * be split for parallel processing; each split has its own buffers and
+ * inflater.
+ * 
+ * The archive, and the native memory of any inflater whose split was not read
+ * to the end, are held until the stream is closed, so callers should use
+ * try-with-resources.
+ *
+ */
+public class DocumentExtractorBibleZipMappedImpl implements DocumentExtractor {
+
+	private final Charset charset;
+
+	/**
+	 * Constructor. The archive is decoded as UTF-8.
+	 */
+	public DocumentExtractorBibleZipMappedImpl() {
+		this(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param charset the encoding of the HTML in the archive
+	 */
+	public DocumentExtractorBibleZipMappedImpl(Charset charset) {
+		this.charset = charset;
+	}
+
+	@Override
+	public Stream<ExtractedDocument> documentsFromFilePath(Path zipFilePath) {
+		MappedZipArchive archive;
+		try {
+			archive = new MappedZipArchive(zipFilePath);
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+		try {
+			Map<Integer, String> booknameByChapterId = bookNameIndex(archive);
+			List<Entry> chapterEntries = archive.entries().stream()
+					.filter(e -> DocumentExtractorBibleZipImpl.chapter(e.name) != null).toList();
+			String source = zipFilePath.getFileName().toString();
+			Queue<ChapterReader> readers = new ConcurrentLinkedQueue<>();
+			return StreamSupport.stream(new EntryRangeSpliterator<>(chapterEntries, () -> {
+				ChapterReader r = new ChapterReader(archive, booknameByChapterId, source);
+				readers.add(r);
+				return r;
+			}), false).onClose(() -> {
+				readers.forEach(ChapterReader::close);
+				close(archive);
+			});
+		} catch (RuntimeException e) {
+			close(archive);
+			throw e;
+		}
+	}
+
+	private Map<Integer, String> bookNameIndex(MappedZipArchive archive) {
+		Map<Integer, String> booknameByChapterId = new HashMap<>();
+		try (ChapterReader r = new ChapterReader(archive, booknameByChapterId, null)) {
+			for (Entry e : archive.entries()) {
+				if (DocumentExtractorBibleZipImpl.isBookNameIndex(e.name)) {
+					DocumentExtractorBibleZipImpl.addToBookNameIndex(r.text(e), booknameByChapterId);
+				}
+			}
+		}
+		return Collections.unmodifiableMap(booknameByChapterId);
+	}
+
+	private void close(MappedZipArchive archive) {
+		try {
+			archive.close();
+		} catch (Exception e) {
+			throw new LuceneTutorialException(e);
+		}
+	}
+
+	/**
+	 * Reads chapters from the mapped archive. An instance is used by only one
+	 * thread at a time, so the inflater and buffers can be reused. Closing it
+	 * frees the inflater's native memory; this may be done more than once.
+	 */
+	private class ChapterReader implements Function<Entry, ExtractedDocument>, AutoCloseable {
+		private final MappedZipArchive archive;
+		private final Map<Integer, String> booknameByChapterId;
+		private final String source;
+		private final Inflater inflater = new Inflater(true);
+		private final EntryDecoder decoder = new EntryDecoder(charset);
+
+		private ByteBuffer buffer = null;
+
+		ChapterReader(MappedZipArchive archive, Map<Integer, String> booknameByChapterId, String source) {
+			this.archive = archive;
+			this.booknameByChapterId = booknameByChapterId;
+			this.source = source;
+		}
+
+		@Override
+		public ExtractedDocument apply(Entry e) {
+			return DocumentExtractorBibleZipImpl.chapterDocument(e.name, DocumentExtractorBibleZipImpl.chapter(e.name),
+					text(e), booknameByChapterId, source);
+		}
+
+		String text(Entry e) {
+			try {
+				ByteBuffer data = archive.data(e, inflater, buffer);
+				if (data.hasArray()) {
+					// inflated into our heap buffer, keep it for the next entry.
+					buffer = data;
+				}
+				// stored entries are decoded straight from the mapped file.
+				return decoder.decode(data);
+			} catch (Exception ex) {
+				throw new LuceneTutorialException("Could not read entry: " + e.name, ex);
+			}
+		}
+
+		@Override
+		public void close() {
+			inflater.end();
+		}
+	}
+
+}
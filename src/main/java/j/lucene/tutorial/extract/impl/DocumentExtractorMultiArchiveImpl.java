@@ -0,0 +1,117 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.DocumentExtractor;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * Extracts documents from every archive in a directory, deferring to another
+ * Document Extractor for each archive. Several archives are extracted at once,
+ * on background threads, up to a configurable limit. Their documents are merged
+ * into a single stream through a bounded queue, so the background threads wait
+ * whenever the consumer falls behind.
+ * 
+ * Documents from the same archive keep their order, but documents from
+ * different archives are interleaved. The "source" field tells them apart.
+ * Close the stream to stop the background threads early. Each archive's own
+ * stream is only closed along with this one, so lazy fields of its documents
+ * can still be read once it has been extracted.
+ *
+ */
+public class DocumentExtractorMultiArchiveImpl implements DocumentExtractor {
+
+	private final DocumentExtractor archiveExtractor;
+	private final String glob;
+	private final int parallelism;
+	private final int queueDepth;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param archiveExtractor extracts each individual archive
+	 * @param glob             selects archives by file name, for instance
+	 *                         "*.zip"
+	 * @param parallelism      the most archives to extract at once
+	 * @param queueDepth       the most extracted documents to hold waiting for
+	 *                         the consumer
+	 */
+	public DocumentExtractorMultiArchiveImpl(DocumentExtractor archiveExtractor, String glob, int parallelism,
+			int queueDepth) {
+		if (parallelism < 1) {
+			throw new LuceneTutorialException("The parallelism must be at least 1.");
+		}
+		this.archiveExtractor = archiveExtractor;
+		this.glob = glob;
+		this.parallelism = parallelism;
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Extracts documents from all matching archives.
+	 * 
+	 * @param directory the directory containing the archives
+	 * @return the document stream
+	 */
+	@Override
+	public Stream<ExtractedDocument> documentsFromFilePath(Path directory) {
+		List<Path> archives = archives(directory);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, archives.size())),
+				new ExtractorThreadFactory());
+		DocumentQueue queue = new DocumentQueue(queueDepth, archives.size(), executor::shutdownNow);
+		for (Path archive : archives) {
+			executor.execute(() -> queue.produce(() -> archiveExtractor.documentsFromFilePath(archive),
+					"Could not extract archive: " + archive));
+		}
+		executor.shutdown();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(queue, Spliterator.NONNULL), false)
+				.onClose(queue::close);
+	}
+
+	/**
+	 * The archives in the directory, in file name order.
+	 * 
+	 * @param directory the directory
+	 * @return the matching archives
+	 */
+	List<Path> archives(Path directory) {
+		List<Path> archives = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, glob)) {
+			for (Path p : ds) {
+				if (Files.isRegularFile(p)) {
+					archives.add(p);
+				}
+			}
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not list directory: " + directory, e);
+		}
+		Collections.sort(archives);
+		return archives;
+	}
+
+	private static class ExtractorThreadFactory implements ThreadFactory {
+		private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "archive-extractor-" + THREAD_NUMBER.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import j.lucene.tutorial.extract.DocumentExtractor;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * Wraps another Document Extractor, running it on a background thread so that
+ * reading and parsing the archive overlaps with whatever the consumer does
+ * with each document, such as transforming and indexing it. Up to a
+ * configurable number of documents are read ahead into a bounded queue.
+ * 
+ * Callers use the stream as before. Failures, including
+ * {@link j.lucene.tutorial.LuceneTutorialException}, are re-thrown on the
+ * consuming thread. Closing the stream stops the background thread and closes
+ * the underlying stream, which stays open until then so that lazy fields can
+ * still be read.
+ *
+ */
+public class DocumentExtractorPrefetchingImpl implements DocumentExtractor {
+
+	private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+	private final DocumentExtractor extractor;
+	private final int depth;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param extractor the extractor to run in the background
+	 * @param depth     the most documents to read ahead
+	 */
+	public DocumentExtractorPrefetchingImpl(DocumentExtractor extractor, int depth) {
+		this.extractor = extractor;
+		this.depth = depth;
+	}
+
+	@Override
+	public Stream<ExtractedDocument> documentsFromFilePath(Path filePath) {
+		Thread[] producer = new Thread[1];
+		DocumentQueue queue = new DocumentQueue(depth, 1, () -> producer[0].interrupt());
+		producer[0] = new Thread(() -> queue.produce(() -> extractor.documentsFromFilePath(filePath), null),
+				"prefetching-extractor-" + THREAD_NUMBER.incrementAndGet());
+		producer[0].setDaemon(true);
+		producer[0].start();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(queue, Spliterator.NONNULL), false)
+				.onClose(queue::close);
+	}
+
+}
@@ -0,0 +1,230 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * A bounded queue of documents, filled by one or more background producers and
+ * drained by a single consumer through its Iterator. When the queue is full,
+ * producers wait, so extraction never runs too far ahead of the consumer.
+ * 
+ * The first failure of any producer is re-thrown to the consumer. Closing the
+ * queue tells the producers to stop and runs the supplied close action.
+ * 
+ * The producers' streams stay open until the consumer closes the queue, not
+ * just until they are drained: documents with lazy fields, such as the text of
+ * a chapter, are still read from them after they have been queued.
+ *
+ */
+class DocumentQueue implements Iterator<ExtractedDocument>, AutoCloseable {
+
+	private static final ExtractedDocument END = new ExtractedDocument(Collections.emptyMap());
+	private static final long OFFER_WAIT_MILLIS = 100;
+
+	private final BlockingQueue<ExtractedDocument> queue;
+	private final AtomicInteger producersRunning;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final Runnable closeAction;
+	private final Queue<Stream<ExtractedDocument>> openStreams = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean closed = false;
+	private ExtractedDocument next = null;
+	private boolean done = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param depth       the most documents to hold at once
+	 * @param producers   the number of producers that will call
+	 *                    {@link #producerDone()}
+	 * @param closeAction run when the consumer closes the queue
+	 */
+	DocumentQueue(int depth, int producers, Runnable closeAction) {
+		if (depth < 1) {
+			throw new LuceneTutorialException("The queue depth must be at least 1.");
+		}
+		this.queue = new ArrayBlockingQueue<>(depth);
+		this.producersRunning = new AtomicInteger(producers);
+		this.closeAction = closeAction;
+		if (producers == 0) {
+			done = true;
+		}
+	}
+
+	/**
+	 * Runs a producer: adds every document from the stream, waiting whenever the
+	 * queue is full, then calls {@link #producerDone()}. Stops early if the
+	 * consumer closes the queue. Any failure is passed to the consumer.
+	 * 
+	 * @param documents      opens the stream of documents, which is closed when
+	 *                       the queue is, or straight away if it fails
+	 * @param failureMessage describes a failure, or null to pass failures as-is
+	 */
+	void produce(Supplier<Stream<ExtractedDocument>> documents, String failureMessage) {
+		Stream<ExtractedDocument> s = null;
+		try {
+			s = documents.get();
+			openStreams.add(s);
+			if (closed) {
+				closeStreams();
+				return;
+			}
+			Iterator<ExtractedDocument> it = s.iterator();
+			while (it.hasNext()) {
+				if (!put(it.next())) {
+					break;
+				}
+			}
+			producerDone();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+			close(s);
+		} catch (Throwable t) {
+			fail(failureMessage == null ? t : new LuceneTutorialException(failureMessage, t));
+			close(s);
+		}
+	}
+
+	/**
+	 * Adds a document, waiting for space if the queue is full.
+	 * 
+	 * @param doc the document
+	 * @return false if the consumer has closed the queue or a producer has
+	 *         failed, so the producer should stop
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	boolean put(ExtractedDocument doc) throws InterruptedException {
+		while (!closed && failure.get() == null) {
+			if (queue.offer(doc, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Each producer calls this exactly once, when it has no more documents.
+	 */
+	void producerDone() {
+		if (producersRunning.decrementAndGet() == 0) {
+			putEnd();
+		}
+	}
+
+	/**
+	 * A producer calls this if it fails. The consumer will see the failure next
+	 * time it advances.
+	 * 
+	 * @param t the cause
+	 */
+	void fail(Throwable t) {
+		if (failure.compareAndSet(null, t)) {
+			queue.clear();
+			putEnd();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		advance();
+		return next != null;
+	}
+
+	@Override
+	public ExtractedDocument next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ExtractedDocument val = next;
+		next = null;
+		return val;
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		queue.clear();
+		closeAction.run();
+		closeStreams();
+	}
+
+	private void advance() {
+		checkFailure();
+		if (done || next != null) {
+			return;
+		}
+		if (closed) {
+			throw new LuceneTutorialException("Cannot use this once it has been closed.");
+		}
+		try {
+			ExtractedDocument doc = queue.take();
+			checkFailure();
+			if (doc == END) {
+				done = true;
+			} else {
+				next = doc;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LuceneTutorialException("Interrupted while waiting for documents.", e);
+		}
+	}
+
+	private void checkFailure() {
+		Throwable t = failure.get();
+		if (t == null) {
+			return;
+		}
+		done = true;
+		next = null;
+		if (t instanceof LuceneTutorialException lte) {
+			throw lte;
+		}
+		throw new LuceneTutorialException(t);
+	}
+
+	private void closeStreams() {
+		Stream<ExtractedDocument> s;
+		while ((s = openStreams.poll()) != null) {
+			s.close();
+		}
+	}
+
+	private void close(Stream<ExtractedDocument> s) {
+		if (s != null && openStreams.remove(s)) {
+			s.close();
+		}
+	}
+
+	private void putEnd() {
+		// the end marker must not be lost, so make room if the consumer is gone.
+		try {
+			while (!queue.offer(END, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (closed || failure.get() != null) {
+					queue.clear();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			queue.clear();
+			queue.offer(END);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Decodes archive entries to text with an explicit charset, reusing its byte
+ * buffer, char buffer and decoder from one entry to the next. The buffers grow
+ * as needed to fit the largest entry seen, so once the largest entry has been
+ * seen, the only allocation per entry is the resulting String.
+ * 
+ * Not threadsafe, each thread (or stream split) should have its own.
+ * Malformed input is replaced rather than rejected, the same as
+ * {@link String#String(byte[], Charset)}.
+ *
+ */
+class EntryDecoder {
+
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+
+	private final CharsetDecoder decoder;
+
+	private byte[] bytes = new byte[INITIAL_CAPACITY];
+	private CharBuffer chars = CharBuffer.allocate(INITIAL_CAPACITY);
+
+	EntryDecoder(Charset charset) {
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Reads the rest of the stream and decodes it. The stream is not closed.
+	 * 
+	 * @param in the entry data
+	 * @return the text
+	 * @throws IOException if the entry cannot be read
+	 */
+	String decode(InputStream in) throws IOException {
+		int len = 0;
+		int n;
+		while ((n = in.read(bytes, len, bytes.length - len)) >= 0) {
+			len += n;
+			if (len == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+		}
+		return decode(ByteBuffer.wrap(bytes, 0, len));
+	}
+
+	/**
+	 * Decodes the buffer, from its position to its limit.
+	 * 
+	 * @param in the entry data
+	 * @return the text
+	 * @throws IOException if the entry cannot be decoded
+	 */
+	String decode(ByteBuffer in) throws IOException {
+		int maxChars = (int) Math.ceil(in.remaining() * (double) decoder.maxCharsPerByte());
+		if (chars.capacity() < maxChars) {
+			chars = CharBuffer.allocate(Math.max(maxChars, chars.capacity() * 2));
+		}
+		chars.clear();
+		decoder.reset();
+		CoderResult cr = decoder.decode(in, chars, true);
+		if (cr.isUnderflow()) {
+			cr = decoder.flush(chars);
+		}
+		if (!cr.isUnderflow()) {
+			cr.throwException();
+		}
+		return new String(chars.array(), 0, chars.position());
+	}
+}
@@ -0,0 +1,115 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * A Spliterator over a list of archive entries known in advance, each of which
+ * becomes exactly one document. Because the number of entries is known, this
+ * reports SIZED and SUBSIZED, and it splits by halving its range of entries.
+ * Every split gets its own entry reader from the supplier, so a reader may
+ * hold state (buffers, etc) without being threadsafe. A reader that holds
+ * native resources may implement AutoCloseable, and is closed once its range
+ * is exhausted. A stream that stops early leaves its readers open, so whoever
+ * supplies them should also close them when the stream is closed.
+ *
+ * @param <E> the type of archive entry
+ */
+class EntryRangeSpliterator<E> implements Spliterator<ExtractedDocument> {
+
+	/**
+	 * Do not split ranges smaller than this, the overhead is not worth it.
+	 */
+	static final int MIN_SPLIT_SIZE = 16;
+
+	private final List<E> entries;
+	private final Supplier<Function<E, ExtractedDocument>> readerSupplier;
+	private final int fence;
+
+	private int origin;
+	private Function<E, ExtractedDocument> reader = null;
+
+	EntryRangeSpliterator(List<E> entries, Supplier<Function<E, ExtractedDocument>> readerSupplier) {
+		this(entries, readerSupplier, 0, entries.size());
+	}
+
+	private EntryRangeSpliterator(List<E> entries, Supplier<Function<E, ExtractedDocument>> readerSupplier,
+			int origin, int fence) {
+		this.entries = entries;
+		this.readerSupplier = readerSupplier;
+		this.origin = origin;
+		this.fence = fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ExtractedDocument> action) {
+		if (origin >= fence) {
+			return false;
+		}
+		action.accept(reader().apply(entries.get(origin++)));
+		if (origin >= fence) {
+			release();
+		}
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super ExtractedDocument> action) {
+		if (origin >= fence) {
+			return;
+		}
+		Function<E, ExtractedDocument> r = reader();
+		while (origin < fence) {
+			action.accept(r.apply(entries.get(origin++)));
+		}
+		release();
+	}
+
+	@Override
+	public Spliterator<ExtractedDocument> trySplit() {
+		int size = fence - origin;
+		if (size < MIN_SPLIT_SIZE * 2) {
+			return null;
+		}
+		int mid = origin + (size >>> 1);
+		EntryRangeSpliterator<E> prefix = new EntryRangeSpliterator<>(entries, readerSupplier, origin, mid);
+		this.origin = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return fence - origin;
+	}
+
+	@Override
+	public int characteristics() {
+		return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL
+				| Spliterator.IMMUTABLE;
+	}
+
+	private Function<E, ExtractedDocument> reader() {
+		if (reader == null) {
+			reader = readerSupplier.get();
+		}
+		return reader;
+	}
+
+	private void release() {
+		if (reader instanceof AutoCloseable c) {
+			try {
+				c.close();
+			} catch (Exception e) {
+				throw new LuceneTutorialException(e);
+			}
+		}
+		reader = null;
+	}
+
+}
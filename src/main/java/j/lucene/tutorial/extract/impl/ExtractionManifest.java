@@ -0,0 +1,248 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * A record of which archive entries have been extracted, so that a later
+ * extraction can tell which entries are new, changed or removed. Each entry is
+ * identified by its archive and name, so several archives can share one
+ * manifest, and is considered changed if its CRC-32, size or last-modified
+ * time differ. The book each entry belonged to is kept as well, so its
+ * document can be deleted even once the book is gone from the archive.
+ *
+ * The manifest is saved as a tab-separated text file, one entry per line: the
+ * name, CRC-32, size, last-modified time, book and archive. Manifests written
+ * before the book or the archive were kept have fewer columns. Their entries
+ * are read with no book, and with a null archive.
+ *
+ */
+public class ExtractionManifest {
+
+	private final Map<String, Map<String, Entry>> entriesBySource;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param entriesBySource the entries by name, by archive file name
+	 */
+	public ExtractionManifest(Map<String, Map<String, Entry>> entriesBySource) {
+		Map<String, Map<String, Entry>> m = new LinkedHashMap<>();
+		for (Map.Entry<String, Map<String, Entry>> e : entriesBySource.entrySet()) {
+			m.put(e.getKey(), Collections.unmodifiableMap(new LinkedHashMap<>(e.getValue())));
+		}
+		this.entriesBySource = Collections.unmodifiableMap(m);
+	}
+
+	/**
+	 * Reads a manifest. If the file does not exist, the manifest is empty.
+	 * 
+	 * @param manifestPath the file
+	 * @return the manifest
+	 */
+	public static ExtractionManifest read(Path manifestPath) {
+		Map<String, Map<String, Entry>> m = new LinkedHashMap<>();
+		if (!Files.exists(manifestPath)) {
+			return new ExtractionManifest(m);
+		}
+		try (BufferedReader r = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				String[] parts = line.split("\t", -1);
+				if (parts.length < 4 || parts.length > 6) {
+					throw new LuceneTutorialException("Invalid manifest line: " + line);
+				}
+				String book = parts.length >= 5 && !parts[4].isEmpty() ? parts[4] : null;
+				String source = parts.length == 6 ? parts[5] : null;
+				Entry e = new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]), book);
+				m.computeIfAbsent(source, s -> new LinkedHashMap<>()).put(parts[0], e);
+			}
+		} catch (LuceneTutorialException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not read manifest: " + manifestPath, e);
+		}
+		return new ExtractionManifest(m);
+	}
+
+	/**
+	 * Saves this manifest, replacing any prior version only once it is
+	 * completely written.
+	 * 
+	 * @param manifestPath the file
+	 */
+	public void write(Path manifestPath) {
+		Path temp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+		try {
+			try (BufferedWriter w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Map<String, Entry>> s : entriesBySource.entrySet()) {
+					for (Map.Entry<String, Entry> e : s.getValue().entrySet()) {
+						Entry entry = e.getValue();
+						w.write(e.getKey() + "\t" + entry.crc + "\t" + entry.size + "\t" + entry.lastModified);
+						if (s.getKey() != null) {
+							w.write("\t" + (entry.book == null ? "" : entry.book) + "\t" + s.getKey());
+						} else if (entry.book != null) {
+							w.write("\t" + entry.book);
+						}
+						w.newLine();
+					}
+				}
+			}
+			Files.move(temp, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not write manifest: " + manifestPath, e);
+		}
+	}
+
+	/**
+	 * The entries of every archive
+	 * 
+	 * @return the entries by name, by archive file name
+	 */
+	public Map<String, Map<String, Entry>> getEntriesBySource() {
+		return entriesBySource;
+	}
+
+	/**
+	 * The entries of one archive
+	 * 
+	 * @param source the archive file name, or null for the entries of a
+	 *               manifest written before archives were kept
+	 * @return the entries by name, empty if the archive is not in the manifest
+	 */
+	public Map<String, Entry> getEntriesByName(String source) {
+		return entriesBySource.getOrDefault(source, Collections.emptyMap());
+	}
+
+	/**
+	 * A copy of this manifest with one archive's entries replaced, leaving those
+	 * of the other archives as they were.
+	 * 
+	 * @param source        the archive file name
+	 * @param entriesByName the archive's entries, by name
+	 * @return the new manifest
+	 */
+	public ExtractionManifest withEntries(String source, Map<String, Entry> entriesByName) {
+		Map<String, Map<String, Entry>> m = new LinkedHashMap<>(entriesBySource);
+		m.put(source, entriesByName);
+		return new ExtractionManifest(m);
+	}
+
+	/**
+	 * A copy of this manifest without one archive's entries.
+	 * 
+	 * @param source the archive file name, or null for the entries of a
+	 *               manifest written before archives were kept
+	 * @return the new manifest
+	 */
+	public ExtractionManifest withoutEntries(String source) {
+		Map<String, Map<String, Entry>> m = new LinkedHashMap<>(entriesBySource);
+		m.remove(source);
+		return new ExtractionManifest(m);
+	}
+
+	/**
+	 * Identifies one version of an archive entry. The book is not part of the
+	 * version, and is ignored by {@link #equals(Object)}.
+	 */
+	public static class Entry {
+		private final long crc;
+		private final long size;
+		private final long lastModified;
+		private final String book;
+
+		/**
+		 * Constructor, for an entry whose book is not known.
+		 * 
+		 * @param crc          the CRC-32 of the uncompressed data
+		 * @param size         the uncompressed size
+		 * @param lastModified the last-modified time, in milliseconds since the
+		 *                     epoch
+		 */
+		public Entry(long crc, long size, long lastModified) {
+			this(crc, size, lastModified, null);
+		}
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param crc          the CRC-32 of the uncompressed data
+		 * @param size         the uncompressed size
+		 * @param lastModified the last-modified time, in milliseconds since the
+		 *                     epoch
+		 * @param book         the name of the book the entry belongs to, or null
+		 *                     if not known
+		 */
+		public Entry(long crc, long size, long lastModified, String book) {
+			this.crc = crc;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.book = book;
+		}
+
+		/**
+		 * The CRC-32 of the uncompressed data
+		 * 
+		 * @return the CRC-32
+		 */
+		public long getCrc() {
+			return crc;
+		}
+
+		/**
+		 * The uncompressed size
+		 * 
+		 * @return the size
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * The last-modified time, in milliseconds since the epoch
+		 * 
+		 * @return the time
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * The name of the book the entry belonged to
+		 * 
+		 * @return the book, or null if not known
+		 */
+		public String getBook() {
+			return book;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(crc, size, lastModified);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Entry other)) {
+				return false;
+			}
+			return crc == other.crc && size == other.size && lastModified == other.lastModified;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the synopsis and keywords of a chapter by scanning its HTML character
+ * by character. Only the "head" section is examined, the scan stops at the
+ * closing "head" tag, and the text is never split into lines.
+ * 
+ * The synopsis comes from the "title" tag and is the title up to its last
+ * comma. The keywords are in the "keywords" meta tag.
+ *
+ */
+final class HtmlHeadScanner {
+
+	private static final String TITLE = "<title>";
+	private static final String KEYWORDS = "<meta name=\"keywords\" content=\"";
+	private static final String HEAD_END = "</head>";
+	private static final int READ_CHUNK = 2048;
+
+	/**
+	 * Only ever applied to the title, so the backtracking is bounded by its
+	 * length.
+	 */
+	private static final Pattern AUDIO_BOOKS_SYNOPSIS_PATTERN = Pattern.compile("^Audio.Books:.*\\d{1,3}.([^<]*)<");
+	private static final Pattern KEYWORD_SPLIT_PATTERN = Pattern.compile(", ");
+
+	private HtmlHeadScanner() {
+	}
+
+	/**
+	 * Reads only as much of a chapter as is needed to scan its head.
+	 * 
+	 * @param r the chapter
+	 * @return the chapter text up to and a little past the end of the head
+	 * @throws IOException if the chapter could not be read
+	 */
+	static String readHead(Reader r) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[READ_CHUNK];
+		int n;
+		while ((n = r.read(buf)) >= 0) {
+			int from = Math.max(0, sb.length() - HEAD_END.length());
+			sb.append(buf, 0, n);
+			if (sb.indexOf(HEAD_END, from) >= 0) {
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Finds the synopsis and keywords.
+	 * 
+	 * @param html the chapter
+	 * @return the synopsis and keywords, each null if not found
+	 */
+	static Head scan(CharSequence html) {
+		Head head = new Head();
+		boolean foundSynopsis = false;
+		boolean foundKeywords = false;
+		int len = html.length();
+		int i = 0;
+		while (!(foundSynopsis && foundKeywords)) {
+			i = indexOf(html, '<', i, len);
+			if (i < 0 || startsWith(html, HEAD_END, i)) {
+				return head;
+			}
+			if (!foundSynopsis && startsWith(html, TITLE, i)) {
+				int start = i + TITLE.length();
+				String synopsis = synopsis(html, start, lineEnd(html, start));
+				if (synopsis != null) {
+					head.synopsis = synopsis;
+					foundSynopsis = true;
+				}
+			} else if (startsWith(html, KEYWORDS, i)) {
+				int start = i + KEYWORDS.length();
+				int end = lastIndexOf(html, '"', start, lineEnd(html, start));
+				if (end >= 0) {
+					head.keywords = keywords(html.subSequence(start, end));
+					foundKeywords = true;
+				}
+			}
+			i++;
+		}
+		return head;
+	}
+
+	/**
+	 * The title up to its last comma; in the chapters the remainder is
+	 * boilerplate. Titles without a comma have no synopsis, unless they are in
+	 * the "Audio Books" format.
+	 */
+	private static String synopsis(CharSequence html, int start, int end) {
+		CharSequence title = html.subSequence(start, end);
+		Matcher m = AUDIO_BOOKS_SYNOPSIS_PATTERN.matcher(title);
+		if (m.find()) {
+			return m.group(1);
+		}
+		int lastLt = lastIndexOf(html, '<', start, end);
+		for (int comma = lastLt - 2; comma >= start; comma--) {
+			if (html.charAt(comma) == ',' && html.charAt(comma + 1) == ' ') {
+				return html.subSequence(start, comma).toString();
+			}
+		}
+		return null;
+	}
+
+	private static String[] keywords(CharSequence content) {
+		String[] kArr = KEYWORD_SPLIT_PATTERN.split(content);
+		if (kArr[0].equals("Audio")) {
+			String[] kArr1 = new String[kArr.length - 1];
+			System.arraycopy(kArr, 1, kArr1, 0, kArr1.length);
+			kArr = kArr1;
+		}
+		return kArr;
+	}
+
+	/**
+	 * What was found in the head of a chapter.
+	 */
+	static class Head {
+		String synopsis = null;
+		String[] keywords = null;
+	}
+
+	private static boolean startsWith(CharSequence cs, String prefix, int from) {
+		if (from + prefix.length() > cs.length()) {
+			return false;
+		}
+		for (int j = 0; j < prefix.length(); j++) {
+			if (cs.charAt(from + j) != prefix.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(CharSequence cs, char c, int from, int to) {
+		for (int j = from; j < to; j++) {
+			if (cs.charAt(j) == c) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(CharSequence cs, char c, int from, int to) {
+		for (int j = to - 1; j >= from; j--) {
+			if (cs.charAt(j) == c) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	private static int lineEnd(CharSequence cs, int from) {
+		int len = cs.length();
+		for (int j = from; j < len; j++) {
+			char c = cs.charAt(j);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return j;
+			}
+		}
+		return len;
+	}
+}
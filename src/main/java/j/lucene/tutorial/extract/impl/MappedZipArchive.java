@@ -0,0 +1,276 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only zip archive that is memory-mapped rather than read through
+ * streams. The central directory is parsed here directly, and entry data is
+ * sliced out of the mapped region. Stored (uncompressed) entries are returned
+ * as-is without copying; deflated entries are inflated straight from the
+ * mapped region into a caller-supplied, reusable buffer. Either way, the data
+ * is checked against the CRC-32 in the central directory.
+ * 
+ * Archives up to 2GB are mapped once. Larger (ZIP64) archives have each
+ * entry's region mapped on demand.
+ *
+ */
+class MappedZipArchive implements AutoCloseable {
+
+	private static final int EOCD_SIG = 0x06054b50;
+	private static final int EOCD_LEN = 22;
+	private static final int ZIP64_EOCD_LOCATOR_SIG = 0x07064b50;
+	private static final int ZIP64_EOCD_LOCATOR_LEN = 20;
+	private static final int ZIP64_EOCD_SIG = 0x06064b50;
+	private static final int CEN_SIG = 0x02014b50;
+	private static final int CEN_LEN = 46;
+	private static final int LOC_SIG = 0x04034b50;
+	private static final int LOC_LEN = 30;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int MAX_COMMENT_LEN = 0xFFFF;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	static final int METHOD_STORED = 0;
+	static final int METHOD_DEFLATED = 8;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final ByteBuffer whole;
+	private final List<Entry> entries;
+
+	MappedZipArchive(Path zipFilePath) throws IOException {
+		this.channel = FileChannel.open(zipFilePath, StandardOpenOption.READ);
+		try {
+			this.fileSize = channel.size();
+			this.whole = fileSize <= Integer.MAX_VALUE ? map(0, fileSize) : null;
+			this.entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The entries, in central directory order.
+	 * 
+	 * @return the entries
+	 */
+	List<Entry> entries() {
+		return entries;
+	}
+
+	/**
+	 * The raw data for an entry, exactly as it is in the archive. No data is
+	 * copied.
+	 * 
+	 * @param e the entry
+	 * @return a read-only buffer positioned at the entry's data
+	 * @throws IOException if the entry cannot be read
+	 */
+	ByteBuffer rawData(Entry e) throws IOException {
+		ByteBuffer loc = region(e.localHeaderOffset, LOC_LEN);
+		if (loc.getInt(0) != LOC_SIG) {
+			throw new ZipException("Invalid local header for entry: " + e.name);
+		}
+		long dataOffset = e.localHeaderOffset + LOC_LEN + u16(loc, 26) + u16(loc, 28);
+		return region(dataOffset, e.compressedSize);
+	}
+
+	/**
+	 * The uncompressed data for an entry. Stored entries are returned without
+	 * copying. Deflated entries are inflated into the supplied buffer if it is
+	 * large enough, or otherwise into a new buffer that the caller may keep for
+	 * reuse.
+	 * 
+	 * @param e        the entry
+	 * @param inflater a reusable inflater, created with "nowrap" set
+	 * @param reuse    a buffer to inflate into, may be null
+	 * @return a buffer with the entry data between position and limit
+	 * @throws IOException if the entry cannot be read or inflated, or its data
+	 *                     does not match its CRC-32
+	 */
+	ByteBuffer data(Entry e, Inflater inflater, ByteBuffer reuse) throws IOException {
+		ByteBuffer raw = rawData(e);
+		if (e.method == METHOD_STORED) {
+			return checkCrc(e, raw);
+		}
+		if (e.method != METHOD_DEFLATED) {
+			throw new ZipException("Unsupported compression method " + e.method + " for entry: " + e.name);
+		}
+		if (e.size > Integer.MAX_VALUE) {
+			throw new ZipException("Entry too large: " + e.name);
+		}
+		ByteBuffer out = reuse == null || reuse.capacity() < e.size ? ByteBuffer.allocate((int) e.size) : reuse;
+		out.clear().limit((int) e.size);
+		inflater.reset();
+		inflater.setInput(raw);
+		try {
+			while (out.hasRemaining() && !inflater.finished()) {
+				if (inflater.inflate(out) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new ZipException("Truncated deflate data for entry: " + e.name);
+				}
+			}
+		} catch (DataFormatException dfe) {
+			throw new ZipException("Invalid deflate data for entry: " + e.name + ": " + dfe.getMessage());
+		}
+		if (out.hasRemaining()) {
+			throw new ZipException("Truncated deflate data for entry: " + e.name);
+		}
+		return checkCrc(e, out.flip());
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		long tailLen = Math.min(fileSize, EOCD_LEN + MAX_COMMENT_LEN);
+		long tailOffset = fileSize - tailLen;
+		ByteBuffer tail = region(tailOffset, tailLen);
+		int eocd = -1;
+		for (int i = (int) tailLen - EOCD_LEN; i >= 0; i--) {
+			if (tail.getInt(i) == EOCD_SIG) {
+				eocd = i;
+				break;
+			}
+		}
+		if (eocd < 0) {
+			throw new ZipException("Not a zip archive, no end of central directory record.");
+		}
+		long total = u16(tail, eocd + 10);
+		long cenSize = u32(tail, eocd + 12);
+		long cenOffset = u32(tail, eocd + 16);
+
+		if (total == 0xFFFF || cenSize == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC) {
+			long locatorOffset = tailOffset + eocd - ZIP64_EOCD_LOCATOR_LEN;
+			ByteBuffer locator = region(locatorOffset, ZIP64_EOCD_LOCATOR_LEN);
+			if (locator.getInt(0) != ZIP64_EOCD_LOCATOR_SIG) {
+				throw new ZipException("Missing ZIP64 end of central directory locator.");
+			}
+			ByteBuffer eocd64 = region(locator.getLong(8), 56);
+			if (eocd64.getInt(0) != ZIP64_EOCD_SIG) {
+				throw new ZipException("Invalid ZIP64 end of central directory record.");
+			}
+			total = eocd64.getLong(32);
+			cenSize = eocd64.getLong(40);
+			cenOffset = eocd64.getLong(48);
+		}
+
+		ByteBuffer cen = region(cenOffset, cenSize);
+		List<Entry> l = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE));
+		int pos = 0;
+		for (long i = 0; i < total; i++) {
+			if (cen.getInt(pos) != CEN_SIG) {
+				throw new ZipException("Invalid central directory header at entry " + i);
+			}
+			int method = u16(cen, pos + 10);
+			long crc = u32(cen, pos + 16);
+			long compressedSize = u32(cen, pos + 20);
+			long size = u32(cen, pos + 24);
+			int nameLen = u16(cen, pos + 28);
+			int extraLen = u16(cen, pos + 30);
+			int commentLen = u16(cen, pos + 32);
+			long localHeaderOffset = u32(cen, pos + 42);
+
+			byte[] nameBytes = new byte[nameLen];
+			cen.get(pos + CEN_LEN, nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			int extra = pos + CEN_LEN + nameLen;
+			int extraEnd = extra + extraLen;
+			while (extra + 4 <= extraEnd) {
+				int id = u16(cen, extra);
+				int len = u16(cen, extra + 2);
+				if (id == ZIP64_EXTRA_ID) {
+					int p = extra + 4;
+					if (size == ZIP64_MAGIC) {
+						size = cen.getLong(p);
+						p += 8;
+					}
+					if (compressedSize == ZIP64_MAGIC) {
+						compressedSize = cen.getLong(p);
+						p += 8;
+					}
+					if (localHeaderOffset == ZIP64_MAGIC) {
+						localHeaderOffset = cen.getLong(p);
+					}
+				}
+				extra += 4 + len;
+			}
+			l.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+			pos = extraEnd + commentLen;
+		}
+		return l;
+	}
+
+	private static ByteBuffer checkCrc(Entry e, ByteBuffer data) throws ZipException {
+		CRC32 crc = new CRC32();
+		crc.update(data.duplicate());
+		if (crc.getValue() != e.crc) {
+			throw new ZipException("CRC-32 mismatch for entry: " + e.name);
+		}
+		return data;
+	}
+
+	private ByteBuffer region(long offset, long length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > fileSize) {
+			throw new ZipException("Region out of bounds: " + offset + "+" + length);
+		}
+		if (whole != null) {
+			return whole.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new ZipException("Region too large to map: " + length);
+		}
+		return map(offset, length);
+	}
+
+	private ByteBuffer map(long offset, long length) throws IOException {
+		MappedByteBuffer mbb = channel.map(MapMode.READ_ONLY, offset, length);
+		return mbb.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int u16(ByteBuffer bb, int index) {
+		return Short.toUnsignedInt(bb.getShort(index));
+	}
+
+	private static long u32(ByteBuffer bb, int index) {
+		return Integer.toUnsignedLong(bb.getInt(index));
+	}
+
+	/**
+	 * One file in the archive, as described by the central directory.
+	 */
+	static class Entry {
+		final String name;
+		final int method;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		final long localHeaderOffset;
+
+		Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package j.lucene.tutorial.load.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.lucene.document.Field;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.transform.DocumentTransformer;
+import j.lucene.tutorial.transform.TransformedDocument;
+
+/**
+ * An append-only file of the documents that failed to load, given to the
+ * loader as its {@link LuceneLoadingCollectorImpl#deadLetters}. The whole
+ * document is not kept, only the values of its identifying fields, which by
+ * default are "book", "chapter" and "source", along with the exception.
+ *
+ * Once the cause is fixed, {@link #replay(Stream, DocumentTransformer,
+ * LuceneLoadingCollectorImpl)} extracts the failed documents again and loads
+ * them.
+ *
+ * Each failure is a line of tab-separated name=value pairs, the last being the
+ * exception. Tabs, line breaks and backslashes in values are escaped with a
+ * backslash. The file is opened for each failure and closed again, so it is
+ * complete even if the load is interrupted.
+ *
+ */
+public class DeadLetterFile {
+
+	/**
+	 * The fields that identify a Bible chapter.
+	 */
+	public static final List<String> DEFAULT_IDENTIFYING_FIELDS = List.of("book", "chapter", "source");
+
+	/**
+	 * The name of the last value of each line.
+	 */
+	public static final String EXCEPTION_KEY = "exception";
+
+	private final Path path;
+	private final List<String> identifyingFields;
+
+	/**
+	 * Constructor, identifying documents by {@link #DEFAULT_IDENTIFYING_FIELDS}.
+	 *
+	 * @param path the file, which is created on the first failure
+	 */
+	public DeadLetterFile(Path path) {
+		this(path, DEFAULT_IDENTIFYING_FIELDS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path              the file, which is created on the first failure
+	 * @param identifyingFields the fields that identify a document, both in the
+	 *                          transformed document, where they must be stored,
+	 *                          and in the extracted document
+	 */
+	public DeadLetterFile(Path path, List<String> identifyingFields) {
+		this.path = path;
+		this.identifyingFields = List.copyOf(identifyingFields);
+	}
+
+	/**
+	 * The file
+	 *
+	 * @return the path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Appends a failure. This is threadsafe.
+	 *
+	 * @param td the document that failed
+	 * @param e  why it failed
+	 */
+	public synchronized void write(TransformedDocument td, Exception e) {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> value : identifyingValues(td).entrySet()) {
+			sb.append(value.getKey()).append('=').append(escape(value.getValue())).append('\t');
+		}
+		sb.append(EXCEPTION_KEY).append('=').append(escape(e.toString()));
+		try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND)) {
+			w.write(sb.toString());
+			w.newLine();
+		} catch (Exception e1) {
+			throw new LuceneTutorialException("Could not write dead letter: " + path, e1);
+		}
+	}
+
+	/**
+	 * Reads every failure. If the file does not exist, there are none.
+	 *
+	 * @return the failures, in the order they were written
+	 */
+	public List<DeadLetter> read() {
+		List<DeadLetter> letters = new ArrayList<>();
+		if (!Files.exists(path)) {
+			return letters;
+		}
+		try (BufferedReader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				Map<String, String> values = new LinkedHashMap<>();
+				for (String pair : line.split("\t")) {
+					int eq = pair.indexOf('=');
+					if (eq < 0) {
+						throw new LuceneTutorialException("Invalid dead letter line: " + line);
+					}
+					values.put(pair.substring(0, eq), unescape(pair.substring(eq + 1)));
+				}
+				String exception = values.remove(EXCEPTION_KEY);
+				if (exception == null) {
+					throw new LuceneTutorialException("Invalid dead letter line: " + line);
+				}
+				letters.add(new DeadLetter(values, exception));
+			}
+		} catch (LuceneTutorialException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not read dead letters: " + path, e);
+		}
+		return letters;
+	}
+
+	/**
+	 * Filters an extraction down to the documents that failed.
+	 *
+	 * @param extracted the documents, extracted again
+	 * @return those whose identifying values match a failure
+	 */
+	public Stream<ExtractedDocument> failed(Stream<ExtractedDocument> extracted) {
+		Set<Map<String, String>> failed = new HashSet<>();
+		for (DeadLetter dl : read()) {
+			failed.add(dl.getIdentifyingValues());
+		}
+		return extracted.filter(ed -> failed.contains(identifyingValues(ed)));
+	}
+
+	/**
+	 * Loads the failed documents again. So that documents that fail again are
+	 * recorded afresh, the file is first moved aside, with the suffix
+	 * ".replayed", replacing any file from an earlier replay.
+	 *
+	 * @param extracted   the documents, extracted again
+	 * @param transformer transforms the failed documents
+	 * @param loader      loads them, writing to this file if they fail again
+	 * @return how many were loaded
+	 */
+	public long replay(Stream<ExtractedDocument> extracted, DocumentTransformer transformer,
+			LuceneLoadingCollectorImpl loader) {
+		Stream<ExtractedDocument> failed = failed(extracted);
+		if (Files.exists(path)) {
+			try {
+				Files.move(path, path.resolveSibling(path.getFileName() + ".replayed"),
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (Exception e) {
+				throw new LuceneTutorialException("Could not move dead letters aside: " + path, e);
+			}
+		}
+		return failed.map(transformer::transformExtractedDocument).collect(loader);
+	}
+
+	private Map<String, String> identifyingValues(TransformedDocument td) {
+		Map<String, String> values = new LinkedHashMap<>();
+		for (String name : identifyingFields) {
+			for (Field f : td.getFields()) {
+				if (f.name().equals(name)) {
+					if (f.stringValue() != null) {
+						values.put(name, f.stringValue());
+						break;
+					} else if (f.numericValue() != null) {
+						values.put(name, f.numericValue().toString());
+						break;
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	private Map<String, String> identifyingValues(ExtractedDocument ed) {
+		Map<String, String> values = new LinkedHashMap<>();
+		for (String name : identifyingFields) {
+			Object o = ed.getContentByFieldname().get(name);
+			if (o != null) {
+				values.put(name, o.toString());
+			}
+		}
+		return values;
+	}
+
+	private static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\' -> sb.append("\\\\");
+			case '\t' -> sb.append("\\t");
+			case '\n' -> sb.append("\\n");
+			case '\r' -> sb.append("\\r");
+			default -> sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String unescape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				c = s.charAt(++i);
+				sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * One failed document.
+	 */
+	public static class DeadLetter {
+		private final Map<String, String> identifyingValues;
+		private final String exception;
+
+		public DeadLetter(Map<String, String> identifyingValues, String exception) {
+			this.identifyingValues = Collections.unmodifiableMap(identifyingValues);
+			this.exception = exception;
+		}
+
+		/**
+		 * The values of the identifying fields, by field name
+		 *
+		 * @return the values
+		 */
+		public Map<String, String> getIdentifyingValues() {
+			return identifyingValues;
+		}
+
+		/**
+		 * The exception, as a string
+		 *
+		 * @return the exception
+		 */
+		public String getException() {
+			return exception;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package j.lucene.tutorial.load.impl;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * Named IndexWriterConfig settings for two kinds of load, set with
+ * {@link LuceneLoadingCollectorImpl#profile}. Without a profile, the writer
+ * uses Lucene's defaults.
+ *
+ */
+public enum IndexWriterProfile {
+
+	/**
+	 * For loading many documents at once, where only the time to load them all
+	 * matters. A large RAM buffer flushes fewer, larger segments. The merge
+	 * policy treats every segment under 64MB as the same size and allows more
+	 * segments per tier, so fewer merges run during the load, and these are
+	 * given up to half the processors (at most 4). Nothing searches the index
+	 * until the load is done, so it can then be merged down with
+	 * {@link LuceneLoadingCollectorImpl#forceMergeMaxSegments}.
+	 */
+	BULK_LOAD {
+		@Override
+		void apply(IndexWriterConfig iwc) {
+			iwc.setRAMBufferSizeMB(256);
+			int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+			ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+			cms.setMaxMergesAndThreads(threads + 5, threads);
+			iwc.setMergeScheduler(cms);
+			TieredMergePolicy tmp = new TieredMergePolicy();
+			tmp.setFloorSegmentMB(64);
+			tmp.setSegmentsPerTier(20);
+			iwc.setMergePolicy(tmp);
+		}
+	},
+
+	/**
+	 * For an index searched while it is loaded, with readers reopened from the
+	 * writer. A small RAM buffer keeps each flush, and so each reopen, quick.
+	 * Segments up to 32MB are written as compound files, so the many small
+	 * segments hold few files open; larger merged segments are not.
+	 */
+	NEAR_REAL_TIME {
+		@Override
+		void apply(IndexWriterConfig iwc) {
+			iwc.setRAMBufferSizeMB(4);
+			iwc.setUseCompoundFile(true);
+			TieredMergePolicy tmp = new TieredMergePolicy();
+			tmp.setNoCFSRatio(1.0);
+			tmp.setMaxCFSSegmentSizeMB(32);
+			iwc.setMergePolicy(tmp);
+		}
+	};
+
+	abstract void apply(IndexWriterConfig iwc);
+}
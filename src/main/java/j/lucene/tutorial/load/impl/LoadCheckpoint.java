@@ -0,0 +1,142 @@
+package j.lucene.tutorial.load.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * Tracks how far a load has got through its archive, so the loader can record
+ * the position in the user data of each commit. If the load is interrupted,
+ * {@link #read(IndexPhysicalLocation)} gives the position of the last commit,
+ * and the extraction can resume after it.
+ *
+ * Each extracted chapter is tracked before it is transformed, for instance with
+ * {@code stream.peek(checkpoint::track)}, and the loader is given
+ * {@link #userData()} as its
+ * {@link LuceneLoadingCollectorImpl#commitUserData}, with
+ * {@link LuceneLoadingCollectorImpl#rollbackOnClose} set. A commit then records
+ * the last chapter that was added, and on closing, anything added after it is
+ * rolled back. This only holds for a sequential stream, in extraction order. A
+ * parallel stream adds chapters in no particular order, so there is no
+ * position before which every chapter has been added.
+ *
+ */
+public class LoadCheckpoint {
+
+	/**
+	 * The commit user data key for the archive file name.
+	 */
+	public static final String SOURCE_KEY = "checkpoint.source";
+
+	/**
+	 * The commit user data key for the archive entry name.
+	 */
+	public static final String ENTRY_NAME_KEY = "checkpoint.entry_name";
+
+	private volatile Position position = null;
+
+	/**
+	 * Records the position of a chapter. Documents that do not know where they
+	 * came from leave the position as it was.
+	 *
+	 * @param ed the document about to be transformed and loaded
+	 */
+	public void track(ExtractedDocument ed) {
+		if (ed instanceof ExtractedChapter ec && ec.getEntryName() != null) {
+			this.position = new Position(ec.getSource(), ec.getEntryName());
+		}
+	}
+
+	/**
+	 * The last position tracked.
+	 *
+	 * @return the position, if any
+	 */
+	public Optional<Position> position() {
+		return Optional.ofNullable(position);
+	}
+
+	/**
+	 * The last position tracked, as commit user data.
+	 *
+	 * @return the user data, empty if nothing has been tracked
+	 */
+	public Map<String, String> userData() {
+		Position p = position;
+		if (p == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> userData = new HashMap<>();
+		userData.put(SOURCE_KEY, p.getSource());
+		userData.put(ENTRY_NAME_KEY, p.getEntryName());
+		return userData;
+	}
+
+	/**
+	 * Reads the position recorded by the latest commit of an index.
+	 *
+	 * @param location the index
+	 * @return the position, or empty if there is no index or it has no position
+	 */
+	public static Optional<Position> read(IndexPhysicalLocation location) {
+		try (Directory dir = FSDirectory.open(location.getLocationPath())) {
+			if (!DirectoryReader.indexExists(dir)) {
+				return Optional.empty();
+			}
+			Map<String, String> userData = SegmentInfos.readLatestCommit(dir).getUserData();
+			String entryName = userData.get(ENTRY_NAME_KEY);
+			if (entryName == null) {
+				return Optional.empty();
+			}
+			return Optional.of(new Position(userData.get(SOURCE_KEY), entryName));
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not read the last commit: " + location.getLocationPath(), e);
+		}
+	}
+
+	/**
+	 * A chapter's place in the extraction: the archive, and the entry within it.
+	 */
+	public static class Position {
+		private final String source;
+		private final String entryName;
+
+		public Position(String source, String entryName) {
+			this.source = source;
+			this.entryName = entryName;
+		}
+
+		/**
+		 * The archive file name
+		 *
+		 * @return the source
+		 */
+		public String getSource() {
+			return source;
+		}
+
+		/**
+		 * The archive entry name
+		 *
+		 * @return the entry name
+		 */
+		public String getEntryName() {
+			return entryName;
+		}
+
+		@Override
+		public String toString() {
+			return source + "!" + entryName;
+		}
+	}
+}
@@ -1,18 +1,32 @@
 package j.lucene.tutorial.load.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene95.Lucene95Codec;
+import org.apache.lucene.codecs.lucene95.Lucene95HnswVectorsFormat;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
@@ -22,23 +36,141 @@ import j.lucene.tutorial.transform.TransformedDocument;
 
 /**
  * Loads documents by deferring to Lucene's IndexWriter. Because the Lucene
- * IndexWriter is threadsafe, we expect to be able to use parallel streams with
- * this collector as well.
+ * IndexWriter is threadsafe, this collector is CONCURRENT and UNORDERED: a
+ * parallel stream creates one container, and every thread adds its documents
+ * to the same IndexWriter, which gives each thread its own in-memory segment.
+ * There is nothing to combine, and successful adds are tallied in per-thread
+ * cells, so threads do not contend on a shared counter.
+ *
+ * With {@link #batchSize} set, each thread instead buffers its documents and
+ * adds a batch at a time with IndexWriter#addDocuments, which pays the
+ * writer's per-call overhead once per batch. If a batch fails, its documents
+ * are retried one at a time, so only the bad ones are lost, and the first of
+ * them is reported as before. Buffered documents are indexed after the thread
+ * has transformed others, so they must not hold live TokenStreams or re-used
+ * Fields. A document that shares a Field, or a TokenStream, with one already in
+ * its thread's batch is rejected with an exception, as the batch would
+ * otherwise index the last document's values several times.
+ *
+ * By default, the finisher commits once, at the end. With
+ * {@link #commitEveryDocs} or {@link #commitEverySeconds} set, the loader also
+ * commits along the way, which bounds both the work lost if the load is
+ * interrupted and the memory held by segments not yet flushed. With
+ * {@link #commitUserData}, each commit records where the load had got to, for
+ * instance from a {@link LoadCheckpoint}. With {@link #rollbackOnClose}, a
+ * resumable load's {@link #preDestroy()} rolls back anything added since the
+ * last commit, rather than committing it past the recorded position.
+ *
+ * Only the first failure is kept in memory. To record every one, give the
+ * loader a {@link DeadLetterFile}, from which the failed documents can later
+ * be replayed.
  *
  */
 public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 
+	private static final Set<Characteristics> CHARACTERISTICS = Collections
+			.unmodifiableSet(EnumSet.of(Characteristics.CONCURRENT, Characteristics.UNORDERED));
+
 	private final IndexPhysicalLocation localDiskLocation;
-	private final AtomicLong counter;
+	private final LongAdder counter;
+	private final LongAdder failed;
+	private final LongAdder retried;
 	private final AtomicReference<LuceneLoadingCollectorFailure> firstFailure;
 
 	protected DocumentLoaderSupplierObj dlso;
 	public IndexWriterConfig iwc;
 
+	/**
+	 * If set, the index uses the default codec with this stored fields mode:
+	 * BEST_SPEED for faster retrieval, or BEST_COMPRESSION for a smaller index.
+	 */
+	public Lucene95Codec.Mode storedFieldsMode;
+
+	/**
+	 * If set, tunes the IndexWriterConfig for a kind of load.
+	 */
+	public IndexWriterProfile profile;
+
+	/**
+	 * If positive, the finisher merges the index down to at most this many
+	 * segments before committing.
+	 */
+	public int forceMergeMaxSegments;
+
+	/**
+	 * How many neighbors each vector is linked to in the HNSW graph. More give
+	 * better recall, at the cost of a larger index and slower indexing.
+	 */
+	public int hnswMaxConn = Lucene95HnswVectorsFormat.DEFAULT_MAX_CONN;
+
+	/**
+	 * How many candidate neighbors are considered when linking each vector into
+	 * the HNSW graph. More give better recall, at the cost of slower indexing.
+	 */
+	public int hnswBeamWidth = Lucene95HnswVectorsFormat.DEFAULT_BEAM_WIDTH;
+
+	/**
+	 * If more than 1, each thread adds its documents in batches of this many.
+	 */
+	public int batchSize = 1;
+
+	/**
+	 * If positive, when batching, a batch is also added once the values of its
+	 * documents come to about this many bytes.
+	 */
+	public long batchBytes;
+
+	/**
+	 * If positive, commit once this many documents have been loaded since the
+	 * last commit.
+	 */
+	public long commitEveryDocs;
+
+	/**
+	 * If positive, commit once a document is loaded this many seconds or more
+	 * after the last commit.
+	 */
+	public long commitEverySeconds;
+
+	/**
+	 * If set, supplies the user data recorded with each commit, including the
+	 * one made on closing, unless that is rolled back.
+	 */
+	public Supplier<Map<String, String>> commitUserData;
+
+	/**
+	 * If true, {@link #preDestroy()} rolls back anything not yet committed,
+	 * rather than committing it. A load that resumes from a
+	 * {@link LoadCheckpoint} needs this, as the documents added after the last
+	 * commit are loaded again.
+	 */
+	public boolean rollbackOnClose;
+
+	/**
+	 * If set, every document that fails to load is recorded here.
+	 */
+	public DeadLetterFile deadLetters;
+
+	private final ThreadLocal<Batch> batches;
+	private final Queue<Batch> allBatches;
+	private final AtomicLong uncommitted;
+	private final Object commitLock;
+	private volatile long lastCommitNanos;
+
 	public LuceneLoadingCollectorImpl(IndexPhysicalLocation localDiskLocation) {
 		this.localDiskLocation = localDiskLocation;
-		this.counter = new AtomicLong();
+		this.counter = new LongAdder();
+		this.failed = new LongAdder();
+		this.retried = new LongAdder();
 		this.firstFailure = new AtomicReference<>();
+		this.allBatches = new ConcurrentLinkedQueue<>();
+		this.uncommitted = new AtomicLong();
+		this.commitLock = new Object();
+		this.batches = ThreadLocal.withInitial(() -> {
+			Batch b = new Batch();
+			allBatches.add(b);
+			return b;
+		});
 	}
 
 	public void postConstruct() {
@@ -47,11 +179,27 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 		}
 		iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
 		iwc.setUseCompoundFile(false);
+		if (profile != null) {
+			profile.apply(iwc);
+		}
+		if (hnswMaxConn != Lucene95HnswVectorsFormat.DEFAULT_MAX_CONN
+				|| hnswBeamWidth != Lucene95HnswVectorsFormat.DEFAULT_BEAM_WIDTH) {
+			KnnVectorsFormat vectorsFormat = new Lucene95HnswVectorsFormat(hnswMaxConn, hnswBeamWidth);
+			iwc.setCodec(new Lucene95Codec(storedFieldsMode == null ? Lucene95Codec.Mode.BEST_SPEED : storedFieldsMode) {
+				@Override
+				public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+					return vectorsFormat;
+				}
+			});
+		} else if (storedFieldsMode != null) {
+			iwc.setCodec(new Lucene95Codec(storedFieldsMode));
+		}
 
 		try {
 			Directory dir = FSDirectory.open(localDiskLocation.getLocationPath());
 			IndexWriter iw = new IndexWriter(dir, iwc);
 			this.dlso = new DocumentLoaderSupplierObj(dir, iwc, iw);
+			this.lastCommitNanos = System.nanoTime();
 		} catch (Exception e) {
 			throw new LuceneTutorialException("Could not open directory location:" + localDiskLocation, e);
 		}
@@ -62,7 +210,15 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 		String msg = null;
 		Exception e1 = null;
 		try {
-			dlso.iw().close();
+			if (rollbackOnClose) {
+				dlso.iw().rollback();
+			} else {
+				addBatches(dlso.iw);
+				if (commitUserData != null) {
+					dlso.iw().setLiveCommitData(commitUserData.get().entrySet());
+				}
+				dlso.iw().close();
+			}
 		} catch (Exception e) {
 			msg = "Could not close index writer";
 			e1 = e;
@@ -81,6 +237,22 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 		}
 	}
 	
+	/**
+	 * Deletes documents, for instance prior versions of documents that are about
+	 * to be re-loaded. Like added documents, the deletes are committed by the
+	 * finisher.
+	 * 
+	 * @param queries matching the documents to delete
+	 */
+	public void deleteDocuments(Query... queries) {
+		check();
+		try {
+			dlso.iw().deleteDocuments(queries);
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not delete documents.", e);
+		}
+	}
+
 	public IndexPhysicalLocation localDiskLocation() {
 		return localDiskLocation;
 	}
@@ -94,6 +266,25 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 		return Optional.of(llcf);
 	}
 
+	/**
+	 * How many documents have failed to load.
+	 *
+	 * @return the number of failures
+	 */
+	public long failedDocuments() {
+		return failed.sum();
+	}
+
+	/**
+	 * How many documents were retried one at a time, after their batch failed.
+	 * See {@link #batchSize}.
+	 *
+	 * @return the number of retries
+	 */
+	public long retriedDocuments() {
+		return retried.sum();
+	}
+
 	private void check() {
 		if (dlso == null) {
 			throw new LuceneTutorialException("Must call 'postConstruct' before using.");
@@ -118,18 +309,29 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 
 			@Override
 			public void accept(DocumentLoaderSupplierObj t, TransformedDocument u) {
-				try {
-					t.iw.addDocument(u.getFields());
-					counter.incrementAndGet();
-				} catch (Exception e) {
-					firstFailure.updateAndGet(f -> f == null ? new LuceneLoadingCollectorFailure(u, e) : f);
+				if (batchSize <= 1) {
+					add(t.iw, u);
+				} else {
+					Batch b = batches.get();
+					synchronized (b) {
+						b.add(u);
+						if (b.docs.size() >= batchSize || (batchBytes > 0 && b.bytes >= batchBytes)) {
+							add(t.iw, b);
+						}
+					}
+				}
+				if (commitEveryDocs > 0 || commitEverySeconds > 0) {
+					checkpoint(t.iw);
 				}
-
 			}
 
 		};
 	}
 
+	/**
+	 * Only used if the stream is not collected concurrently; as there is only one
+	 * container, either is the result.
+	 */
 	@Override
 	public BinaryOperator<DocumentLoaderSupplierObj> combiner() {
 		return new BinaryOperator<DocumentLoaderSupplierObj>() {
@@ -148,12 +350,16 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 
 			@Override
 			public Long apply(DocumentLoaderSupplierObj t) {
-				try {
-					t.iw.commit();
-				} catch (Exception e) {
-					throw new LuceneTutorialException("Could not commit.", e);
+				addBatches(t.iw);
+				if (forceMergeMaxSegments > 0) {
+					try {
+						t.iw.forceMerge(forceMergeMaxSegments);
+					} catch (Exception e) {
+						throw new LuceneTutorialException("Could not force merge.", e);
+					}
 				}
-				return counter.get();
+				commit(t.iw);
+				return counter.sum();
 			}
 
 		};
@@ -161,7 +367,153 @@ public class LuceneLoadingCollectorImpl implements LuceneLoadingCollector {
 
 	@Override
 	public Set<Characteristics> characteristics() {
-		return Collections.emptySet();
+		return CHARACTERISTICS;
+	}
+
+	/**
+	 * Commits if enough documents, or enough time, have gone by since the last
+	 * commit. Any thread may commit, while the others carry on adding.
+	 */
+	private void checkpoint(IndexWriter iw) {
+		uncommitted.incrementAndGet();
+		if (!commitDue()) {
+			return;
+		}
+		synchronized (commitLock) {
+			// another thread may have committed while this one waited
+			if (commitDue()) {
+				addBatches(iw);
+				commit(iw);
+			}
+		}
+	}
+
+	private boolean commitDue() {
+		return (commitEveryDocs > 0 && uncommitted.get() >= commitEveryDocs) || (commitEverySeconds > 0
+				&& System.nanoTime() - lastCommitNanos >= TimeUnit.SECONDS.toNanos(commitEverySeconds));
+	}
+
+	/**
+	 * Documents accepted by other threads during the commit stay counted as
+	 * uncommitted, though some may have made it into the commit.
+	 */
+	private void commit(IndexWriter iw) {
+		long committing = uncommitted.get();
+		try {
+			if (commitUserData != null) {
+				iw.setLiveCommitData(commitUserData.get().entrySet());
+			}
+			iw.commit();
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not commit.", e);
+		}
+		uncommitted.addAndGet(-committing);
+		lastCommitNanos = System.nanoTime();
+	}
+
+	private void add(IndexWriter iw, TransformedDocument u) {
+		try {
+			iw.addDocument(u.getFields());
+			counter.increment();
+		} catch (Exception e) {
+			fail(u, e);
+		}
+	}
+
+	/**
+	 * If the batch fails, the documents added before the bad one are deleted, so
+	 * each is retried on its own, unless the writer can no longer index anything,
+	 * in which case they have all failed.
+	 */
+	private void add(IndexWriter iw, Batch b) {
+		if (b.docs.isEmpty()) {
+			return;
+		}
+		try {
+			iw.addDocuments(b.fields);
+			counter.add(b.docs.size());
+		} catch (Exception e) {
+			if (iw.getTragicException() != null || !iw.isOpen()) {
+				for (TransformedDocument u : b.docs) {
+					fail(u, e);
+				}
+			} else {
+				retried.add(b.docs.size());
+				for (TransformedDocument u : b.docs) {
+					add(iw, u);
+				}
+			}
+		}
+		b.clear();
+	}
+
+	/**
+	 * Adds what is left in every thread's batch. The stream has finished
+	 * accumulating, so the batches are no longer changing.
+	 */
+	private void addBatches(IndexWriter iw) {
+		for (Batch b : allBatches) {
+			synchronized (b) {
+				add(iw, b);
+			}
+		}
+	}
+
+	private void fail(TransformedDocument u, Exception e) {
+		failed.increment();
+		firstFailure.updateAndGet(f -> f == null ? new LuceneLoadingCollectorFailure(u, e) : f);
+		if (deadLetters != null) {
+			deadLetters.write(u, e);
+		}
+	}
+
+	/**
+	 * One thread's buffered documents, and the Fields and TokenStreams they hold,
+	 * by identity, so that none is buffered twice.
+	 */
+	private static class Batch {
+		final List<TransformedDocument> docs = new ArrayList<>();
+		final List<List<Field>> fields = new ArrayList<>();
+		final Set<Object> buffered = Collections.newSetFromMap(new IdentityHashMap<>());
+		long bytes;
+
+		/**
+		 * By the time a shared Field is found, the documents already buffered hold
+		 * the new document's values, so they are discarded along with it.
+		 */
+		void add(TransformedDocument u) {
+			for (Field f : u.getFields()) {
+				if (buffered.contains(f) || buffered.contains(f.tokenStreamValue())) {
+					clear();
+					throw new LuceneTutorialException("Cannot batch documents that share Fields or TokenStreams, "
+							+ "as a transformer re-using them produces. Field: " + f.name());
+				}
+			}
+			for (Field f : u.getFields()) {
+				buffered.add(f);
+				if (f.tokenStreamValue() != null) {
+					buffered.add(f.tokenStreamValue());
+				}
+			}
+			docs.add(u);
+			fields.add(u.getFields());
+			for (Field f : u.getFields()) {
+				if (f.stringValue() != null) {
+					bytes += 2L * f.stringValue().length();
+				} else if (f.binaryValue() != null) {
+					bytes += f.binaryValue().length;
+				} else {
+					bytes += Long.BYTES;
+				}
+			}
+		}
+
+		void clear() {
+			docs.clear();
+			fields.clear();
+			buffered.clear();
+			bytes = 0;
+		}
 	}
 
 }
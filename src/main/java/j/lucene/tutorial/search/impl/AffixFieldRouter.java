@@ -0,0 +1,81 @@
+package j.lucene.tutorial.search.impl;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+
+/**
+ * Routes prefix and wildcard patterns to the auxiliary fields created by
+ * {@link DocumentTransformerHtmlBibleImpl.Builder#indexAffixes(String...)},
+ * when every segment of the index has them:
+ *
+ * <ul>
+ * <li>A prefix of up to {@link DocumentTransformerHtmlBibleImpl#PREFIX_MAX_GRAM}
+ * chars is one term of the prefix field, rather than a union of every term
+ * that starts with it.</li>
+ * <li>A pattern that starts with a wildcard, but ends with a literal char, is
+ * reversed and run against the reversed field. The reversed pattern starts with
+ * literal chars, so only the terms with that prefix are enumerated, rather than
+ * the whole term dictionary.</li>
+ * </ul>
+ *
+ * Other patterns, and fields without affixes, are left as they are. Like the
+ * queries they replace, the routed queries give every match the same score.
+ */
+final class AffixFieldRouter {
+
+	private AffixFieldRouter() {
+	}
+
+	static Query prefixQuery(IndexReader reader, String field, String prefix) {
+		String prefixField = field + DocumentTransformerHtmlBibleImpl.PREFIX_FIELD_SUFFIX;
+		if (!prefix.isEmpty() && prefix.length() <= DocumentTransformerHtmlBibleImpl.PREFIX_MAX_GRAM
+				&& hasField(reader, prefixField)) {
+			return new ConstantScoreQuery(new TermQuery(new Term(prefixField, prefix)));
+		}
+		return new PrefixQuery(new Term(field, prefix));
+	}
+
+	static Query wildcardQuery(IndexReader reader, String field, String pattern) {
+		if (pattern.indexOf(WildcardQuery.WILDCARD_ESCAPE) < 0) {
+			int star = pattern.indexOf(WildcardQuery.WILDCARD_STRING);
+			if (star > 0 && star == pattern.length() - 1 && pattern.indexOf(WildcardQuery.WILDCARD_CHAR) < 0) {
+				return prefixQuery(reader, field, pattern.substring(0, star));
+			}
+			String reversedField = field + DocumentTransformerHtmlBibleImpl.REVERSED_FIELD_SUFFIX;
+			if (pattern.length() > 1 && isWildcard(pattern.charAt(0))
+					&& !isWildcard(pattern.charAt(pattern.length() - 1)) && hasField(reader, reversedField)) {
+				String reversed = new StringBuilder(pattern).reverse().toString();
+				return new WildcardQuery(new Term(reversedField, reversed));
+			}
+		}
+		return new WildcardQuery(new Term(field, pattern));
+	}
+
+	private static boolean isWildcard(char c) {
+		return c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR;
+	}
+
+	/**
+	 * A segment without the field might have been indexed without affixes, so
+	 * searching the field would miss its documents.
+	 */
+	private static boolean hasField(IndexReader reader, String field) {
+		if (reader.leaves().isEmpty()) {
+			return false;
+		}
+		for (LeafReaderContext leaf : reader.leaves()) {
+			if (leaf.reader().getFieldInfos().fieldInfo(field) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,106 @@
+package j.lucene.tutorial.search.impl;
+
+import java.util.Arrays;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.load.impl.LuceneLoadingCollectorImpl;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.search.SearchTutorial;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+import j.lucene.tutorial.transform.impl.TextEmbedder;
+
+/**
+ * Demonstrates approximate nearest neighbor search with the KnnFloatVectorQuery.
+ * The query text is embedded as a vector, and the chapters with the closest
+ * vectors are found by walking the HNSW graph that was built at index time.
+ * Unlike the lexical queries, every search returns results, however distant.
+ *
+ * The graph search keeps a queue of candidates; a longer queue visits more of
+ * the graph, giving better recall but slower searches. Here, the queue holds
+ * at least numCandidates, and the best maxResults are returned. How well
+ * connected the graph is, and so how good the recall is for a given queue, is
+ * set at index time; see {@link LuceneLoadingCollectorImpl#hnswMaxConn}.
+ *
+ * A filter, such as on the "book" field, is applied during the graph search,
+ * not to its results, so there are still as many results as asked for. When
+ * the filter matches few documents, Lucene compares them all exactly instead.
+ *
+ * The index must have been built with
+ * {@link DocumentTransformerHtmlBibleImpl.Builder#embedder(TextEmbedder)},
+ * using the same embedder as given here.
+ */
+public class KnnVectorQueryTutorial extends QueryTutorialBase implements SearchTutorial<String> {
+
+	private final TextEmbedder embedder;
+	private final int numCandidates;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param localDiskLocation the index
+	 * @param embedder          the embedder the index was built with
+	 * @param numCandidates     the least number of candidates to keep while
+	 *                          searching the graph
+	 */
+	public KnnVectorQueryTutorial(IndexPhysicalLocation localDiskLocation, TextEmbedder embedder,
+			int numCandidates) {
+		super(localDiskLocation);
+		this.embedder = embedder;
+		this.numCandidates = numCandidates;
+	}
+
+	/**
+	 * Takes plain text and returns the chapters whose text is nearest to it,
+	 * nearest first.
+	 */
+	@Override
+	public SearchResults query(String text, int maxResults) {
+		return query(text, null, maxResults);
+	}
+
+	/**
+	 * Like {@link #query(String, int)}, but only searches one book.
+	 *
+	 * @param text       plain text
+	 * @param book       the book to search, or null for all
+	 * @param maxResults the most results to return
+	 * @return the results
+	 */
+	public SearchResults query(String text, String book, int maxResults) {
+		float[] vector = embedder.embed(text);
+		if (vector == null) {
+			throw new LuceneTutorialException("The text has nothing to embed: " + text);
+		}
+		return query(vector, book, maxResults);
+	}
+
+	/**
+	 * Finds the nearest neighbors of a vector.
+	 *
+	 * @param vector     a vector from the same embedder
+	 * @param book       the book to search, or null for all
+	 * @param maxResults the most results to return
+	 * @return the results
+	 */
+	public SearchResults query(float[] vector, String book, int maxResults) {
+		check();
+		IndexSearcher is = new IndexSearcher(dr);
+		Query filter = book == null ? null : new TermQuery(new Term("book", book));
+		Query q = new KnnFloatVectorQuery(DocumentTransformerHtmlBibleImpl.TEXT_VECTOR_FIELD, vector,
+				Math.max(maxResults, numCandidates), filter);
+		try {
+			TopDocs docs = is.search(q, maxResults);
+			return toSearchResults(is, Arrays.asList(docs.scoreDocs), docs.totalHits);
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not execute query.", e);
+		}
+	}
+}
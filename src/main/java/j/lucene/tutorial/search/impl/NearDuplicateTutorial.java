@@ -0,0 +1,165 @@
+package j.lucene.tutorial.search.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.TotalHits.Relation;
+import org.apache.lucene.util.BytesRef;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.search.SearchTutorial;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+import j.lucene.tutorial.transform.impl.MinHashSignature;
+
+/**
+ * Demonstrates how to find and collapse near-duplicate documents, using the
+ * MinHash signatures computed when they were transformed. Candidates are found
+ * by a keyword lookup of the signature's bands, then confirmed by comparing
+ * full signatures, read from doc values. Nothing is re-analyzed at query time.
+ *
+ * The index must have been built with
+ * {@link DocumentTransformerHtmlBibleImpl.Builder#minHash(MinHashSignature)},
+ * using the same configuration as given here.
+ */
+public class NearDuplicateTutorial extends QueryTutorialBase implements SearchTutorial<int[]> {
+
+	private final MinHashSignature minHash;
+	private final double minSimilarity;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param localDiskLocation the index
+	 * @param minHash           the configuration the index was built with
+	 * @param minSimilarity     the estimated Jaccard similarity, from 0 to 1, at
+	 *                          which two documents are near-duplicates
+	 */
+	public NearDuplicateTutorial(IndexPhysicalLocation localDiskLocation, MinHashSignature minHash,
+			double minSimilarity) {
+		super(localDiskLocation);
+		this.minHash = minHash;
+		this.minSimilarity = minSimilarity;
+	}
+
+	/**
+	 * Takes a signature, for example from
+	 * {@link DocumentTransformerHtmlBibleImpl#textSignature(String)}, and returns
+	 * the near-duplicates of that text, most similar first. The total hits are
+	 * exact.
+	 */
+	@Override
+	public SearchResults query(int[] signature, int maxResults) {
+		check();
+		IndexSearcher is = new IndexSearcher(dr);
+		BooleanQuery.Builder candidates = new BooleanQuery.Builder();
+		for (BytesRef band : minHash.bands(signature)) {
+			candidates.add(new ConstantScoreQuery(
+					new TermQuery(new Term(DocumentTransformerHtmlBibleImpl.TEXT_MINHASH_BANDS_FIELD, band))),
+					Occur.SHOULD);
+		}
+		Query q = candidates.build();
+		try {
+			List<ScoreDoc> hits = new ArrayList<>();
+			TopDocs docs = is.search(q, Math.max(1, is.count(q)));
+			for (ScoreDoc sd : docs.scoreDocs) {
+				int[] other = signature(sd.doc);
+				if (other != null) {
+					double similarity = MinHashSignature.similarity(signature, other);
+					if (similarity >= minSimilarity) {
+						hits.add(new ScoreDoc(sd.doc, (float) similarity));
+					}
+				}
+			}
+			hits.sort(Comparator.comparingDouble((ScoreDoc sd) -> -sd.score).thenComparingInt(sd -> sd.doc));
+			return toSearchResults(is, hits.subList(0, Math.min(maxResults, hits.size())),
+					new TotalHits(hits.size(), Relation.EQUAL_TO));
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not execute query.", e);
+		}
+	}
+
+	/**
+	 * Runs the query, but returns only the highest-scoring document of each group
+	 * of near-duplicates. Hits are read a page at a time until there are enough
+	 * distinct documents. The total hits are those of the query, before
+	 * collapsing.
+	 *
+	 * @param q          the query
+	 * @param maxResults the most distinct documents to return
+	 * @return the results
+	 */
+	public SearchResults collapse(Query q, int maxResults) {
+		check();
+		IndexSearcher is = new IndexSearcher(dr);
+		try {
+			List<ScoreDoc> kept = new ArrayList<>(maxResults);
+			List<int[]> keptSignatures = new ArrayList<>(maxResults);
+			TotalHits totalHits = null;
+			ScoreDoc after = null;
+			boolean more = true;
+			while (more && kept.size() < maxResults) {
+				TopDocs page = is.searchAfter(after, q, maxResults);
+				if (totalHits == null) {
+					totalHits = page.totalHits;
+				}
+				for (ScoreDoc sd : page.scoreDocs) {
+					after = sd;
+					int[] signature = signature(sd.doc);
+					if (signature == null || !isNearDuplicate(signature, keptSignatures)) {
+						kept.add(sd);
+						if (signature != null) {
+							keptSignatures.add(signature);
+						}
+						if (kept.size() == maxResults) {
+							break;
+						}
+					}
+				}
+				more = page.scoreDocs.length == maxResults;
+			}
+			return toSearchResults(is, kept, totalHits);
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not execute query.", e);
+		}
+	}
+
+	private boolean isNearDuplicate(int[] signature, List<int[]> keptSignatures) {
+		for (int[] kept : keptSignatures) {
+			if (MinHashSignature.similarity(signature, kept) >= minSimilarity) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Doc values are read forwards only, but hits are in score order, so each
+	 * lookup uses a new iterator.
+	 */
+	private int[] signature(int doc) throws IOException {
+		List<LeafReaderContext> leaves = dr.leaves();
+		LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+		BinaryDocValues dv = leaf.reader().getBinaryDocValues(DocumentTransformerHtmlBibleImpl.TEXT_MINHASH_FIELD);
+		if (dv == null || !dv.advanceExact(doc - leaf.docBase)) {
+			return null;
+		}
+		return MinHashSignature.decode(dv.binaryValue());
+	}
+}
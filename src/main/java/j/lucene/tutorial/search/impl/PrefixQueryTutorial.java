@@ -1,13 +1,15 @@
 package j.lucene.tutorial.search.impl;
 
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.PrefixQuery;
-
 import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
 import j.lucene.tutorial.search.SearchResults;
 import j.lucene.tutorial.search.SearchTutorial;
 import j.lucene.tutorial.search.impl.PrefixQueryTutorial.PrefixInput;
 
+/**
+ * Demonstrates the PrefixQuery. A short prefix may match a great many terms. If
+ * the field's token prefixes were indexed, short prefixes are looked up as one
+ * term instead; see {@link AffixFieldRouter}.
+ */
 public class PrefixQueryTutorial extends QueryTutorialBase implements SearchTutorial<PrefixInput> {
 
 	protected PrefixQueryTutorial(IndexPhysicalLocation localDiskLocation) {
@@ -16,7 +18,8 @@ public class PrefixQueryTutorial extends QueryTutorialBase implements SearchTuto
 
 	@Override
 	public SearchResults query(PrefixInput queryFor, int maxResults) {
-		return executeSearch(new PrefixQuery(new Term(queryFor.field, queryFor.prefix)), maxResults);
+		check();
+		return executeSearch(AffixFieldRouter.prefixQuery(dr, queryFor.field, queryFor.prefix), maxResults);
 	}
 
 	public static class PrefixInput {
@@ -2,18 +2,23 @@ package j.lucene.tutorial.search.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.document.StoredValue;
 import org.apache.lucene.document.StoredValue.Type;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.TotalHits.Relation;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -69,26 +74,48 @@ public abstract class QueryTutorialBase {
 		TopDocs docs;
 		try {
 			docs = is.search(q, maxResults);
-			List<SearchResult> resultList = new ArrayList<>(maxResults);
-			for (ScoreDoc sd : docs.scoreDocs) {
-				Map<String, Object> fieldMap = new HashMap<>();
-				addStoredFieldsToMap(fieldMap, is, sd);
-				resultList.add(new SearchResult(fieldMap));
-			}
-			return new SearchResults(new SearchResults.Builder() //
-					.results(resultList) //
-					.totalHits(docs.totalHits.value) //
-					.totalApproximate(docs.totalHits.relation != Relation.EQUAL_TO) //
-			);
+			return toSearchResults(is, Arrays.asList(docs.scoreDocs), docs.totalHits);
 		} catch (Exception e) {
 			throw new LuceneTutorialException("Could not execute query.", e);
 		}
 	}
 
-	private void addStoredFieldsToMap(Map<String, Object> fieldMap, IndexSearcher is, ScoreDoc sd) throws IOException {
-		for (IndexableField field : is.storedFields().document(sd.doc)) {
+	protected SearchResults toSearchResults(IndexSearcher is, List<ScoreDoc> hits, TotalHits totalHits)
+			throws IOException {
+		List<SearchResult> resultList = new ArrayList<>(hits.size());
+		for (ScoreDoc sd : hits) {
+			resultList.add(new SearchResult(storedFieldsToMap(is, sd.doc, Set.of())));
+		}
+		return toSearchResults(resultList, totalHits);
+	}
+
+	protected SearchResults toSearchResults(List<SearchResult> resultList, TotalHits totalHits) {
+		return new SearchResults(new SearchResults.Builder() //
+				.results(resultList) //
+				.totalHits(totalHits.value) //
+				.totalApproximate(totalHits.relation != Relation.EQUAL_TO) //
+		);
+	}
+
+	/**
+	 * Reads a document's stored fields into a map of displayable values. Excluded
+	 * fields are skipped by the stored fields visitor, so they are never
+	 * materialized.
+	 */
+	protected Map<String, Object> storedFieldsToMap(IndexSearcher is, int doc, Set<String> excludedFields)
+			throws IOException {
+		DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor() {
+			@Override
+			public Status needsField(FieldInfo fieldInfo) {
+				return excludedFields.contains(fieldInfo.name) ? Status.NO : Status.YES;
+			}
+		};
+		is.storedFields().document(doc, visitor);
+		Map<String, Object> fieldMap = new HashMap<>();
+		for (IndexableField field : visitor.getDocument()) {
 			addDisplayableValueToMap(fieldMap, field.name(), storedValueToObject(field.storedValue()));
 		}
+		return fieldMap;
 	}
 
 	private Object storedValueToObject(StoredValue sv) {
@@ -0,0 +1,157 @@
+package j.lucene.tutorial.search.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.uhighlight.CustomSeparatorBreakIterator;
+import org.apache.lucene.search.uhighlight.Passage;
+import org.apache.lucene.search.uhighlight.PassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.search.SearchResult;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.search.SearchTutorial;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+
+/**
+ * Demonstrates how to return snippets, the best few passages of a large text
+ * field with the query terms highlighted, rather than the whole field. Lucene's
+ * UnifiedHighlighter finds the passages. When the field was indexed with
+ * offsets in its postings, see
+ * {@link DocumentTransformerHtmlBibleImpl.Builder#indexOffsets(String...)}, it
+ * reads the matches' offsets straight from the index. Otherwise, it must
+ * re-analyze the whole stored text of each hit.
+ *
+ * The passages come from the field's stored value. For the "text" field of the
+ * Bible, this should be built with
+ * {@link DocumentTransformerHtmlBibleImpl.Builder#storeStrippedText(boolean)},
+ * or the snippets would contain HTML.
+ *
+ * A passage is one line of the stored text, which for a stripped chapter is
+ * one verse. The highlighter's default, a sentence, does not work here: verse
+ * numbers follow the previous full stop, so the sentence iterator finds no
+ * breaks, and the whole chapter would be a single passage.
+ */
+public class SnippetTutorial extends QueryTutorialBase implements SearchTutorial<Query> {
+
+	/**
+	 * The key of each result's snippets, a List of Strings.
+	 */
+	public static final String SNIPPETS = "snippets";
+
+	private static final String PRE_TAG = "<b>";
+	private static final String POST_TAG = "</b>";
+
+	/**
+	 * Only this many chars of each stored text are searched for passages, which
+	 * is several times the longest chapter.
+	 */
+	private static final int MAX_LENGTH = 100_000;
+
+	private final String fieldname;
+	private final int maxPassages;
+	private final Analyzer indexAnalyzer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param localDiskLocation the index
+	 * @param fieldname         the stored text field to take snippets from
+	 * @param maxPassages       the most snippets per hit
+	 * @param indexAnalyzer     the Analyzer the field was indexed with, only used
+	 *                          if its postings have no offsets
+	 */
+	public SnippetTutorial(IndexPhysicalLocation localDiskLocation, String fieldname, int maxPassages,
+			Analyzer indexAnalyzer) {
+		super(localDiskLocation);
+		this.fieldname = fieldname;
+		this.maxPassages = maxPassages;
+		this.indexAnalyzer = indexAnalyzer;
+	}
+
+	/**
+	 * Takes any query. Each result has the stored fields other than the snippet
+	 * field, plus up to maxPassages {@link #SNIPPETS}, in the order they occur in
+	 * the text, with matching terms in bold.
+	 */
+	@Override
+	public SearchResults query(Query q, int maxResults) {
+		check();
+		IndexSearcher is = new IndexSearcher(dr);
+		try {
+			TopDocs docs = is.search(q, maxResults);
+			int[] docIds = new int[docs.scoreDocs.length];
+			for (int i = 0; i < docIds.length; i++) {
+				docIds[i] = docs.scoreDocs[i].doc;
+			}
+			PassageHighlighter highlighter = new PassageHighlighter(UnifiedHighlighter.builder(is, indexAnalyzer) //
+					.withBreakIterator(() -> new CustomSeparatorBreakIterator('\n')) //
+					.withMaxLength(MAX_LENGTH) //
+					.withFormatter(new PassagesFormatter()));
+			Object[] snippets = highlighter.passages(fieldname, q, docIds, maxPassages);
+			List<SearchResult> resultList = new ArrayList<>(docIds.length);
+			for (int i = 0; i < docIds.length; i++) {
+				Map<String, Object> fieldMap = storedFieldsToMap(is, docIds[i], Set.of(fieldname));
+				fieldMap.put(SNIPPETS, snippets[i] == null ? List.of() : List.of((String[]) snippets[i]));
+				resultList.add(new SearchResult(fieldMap));
+			}
+			return toSearchResults(resultList, docs.totalHits);
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not execute query.", e);
+		}
+	}
+
+	/**
+	 * Exposes the highlighter's per-passage results, as formatted by
+	 * {@link PassagesFormatter}, rather than one String per document.
+	 */
+	private static class PassageHighlighter extends UnifiedHighlighter {
+
+		PassageHighlighter(Builder builder) {
+			super(builder);
+		}
+
+		Object[] passages(String field, Query q, int[] docIds, int maxPassages) throws IOException {
+			return highlightFieldsAsObjects(new String[] { field }, q, docIds, new int[] { maxPassages }).get(field);
+		}
+	}
+
+	/**
+	 * Formats each passage as its own String, with the matches in bold. Matches
+	 * that overlap are merged.
+	 */
+	private static class PassagesFormatter extends PassageFormatter {
+
+		@Override
+		public Object format(Passage[] passages, String content) {
+			String[] formatted = new String[passages.length];
+			for (int p = 0; p < passages.length; p++) {
+				Passage passage = passages[p];
+				StringBuilder sb = new StringBuilder();
+				int pos = passage.getStartOffset();
+				for (int i = 0; i < passage.getNumMatches(); i++) {
+					int start = passage.getMatchStarts()[i];
+					int end = passage.getMatchEnds()[i];
+					while (i + 1 < passage.getNumMatches() && passage.getMatchStarts()[i + 1] < end) {
+						end = Math.max(end, passage.getMatchEnds()[++i]);
+					}
+					end = Math.min(end, passage.getEndOffset());
+					sb.append(content, pos, start).append(PRE_TAG).append(content, start, end).append(POST_TAG);
+					pos = end;
+				}
+				sb.append(content, pos, Math.max(pos, passage.getEndOffset()));
+				formatted[p] = sb.toString().strip();
+			}
+			return formatted;
+		}
+	}
+}
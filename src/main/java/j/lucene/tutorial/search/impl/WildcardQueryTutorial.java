@@ -1,13 +1,16 @@
 package j.lucene.tutorial.search.impl;
 
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.WildcardQuery;
-
 import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
 import j.lucene.tutorial.search.SearchResults;
 import j.lucene.tutorial.search.SearchTutorial;
 import j.lucene.tutorial.search.impl.WildcardQueryTutorial.WildcardInput;
 
+/**
+ * Demonstrates the WildcardQuery. A pattern that starts with a wildcard must
+ * otherwise check every term of the field. If the field's reversed tokens were
+ * indexed, such patterns run against them instead; see
+ * {@link AffixFieldRouter}.
+ */
 public class WildcardQueryTutorial extends QueryTutorialBase implements SearchTutorial<WildcardInput> {
 
 	protected WildcardQueryTutorial(IndexPhysicalLocation localDiskLocation) {
@@ -16,7 +19,8 @@ public class WildcardQueryTutorial extends QueryTutorialBase implements SearchTu
 
 	@Override
 	public SearchResults query(WildcardInput queryFor, int maxResults) {
-		return executeSearch(new WildcardQuery(new Term(queryFor.field, queryFor.value)), maxResults);
+		check();
+		return executeSearch(AffixFieldRouter.wildcardQuery(dr, queryFor.field, queryFor.value), maxResults);
 	}
 
 	public static class WildcardInput {
@@ -0,0 +1,337 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedRecord;
+
+/**
+ * Declares the fields of a kind of document: each field's name, type, how it
+ * is indexed, stored and kept in doc values, and for text, its analyzer. The
+ * schema is validated once, when it is built, and then compiled by
+ * {@link SchemaDocumentTransformer}. A new corpus can then be indexed by
+ * declaring its schema, rather than writing a transformer.
+ *
+ * A schema is built in code, or loaded from a properties file with
+ * {@link #load(Path)}, which needs no code at all. The file lists the field
+ * names, in order, then gives each field's type and options:
+ *
+ * <pre>
+ * fields = chapter, book, text
+ * chapter.type = INT
+ * chapter.options = INDEXED, STORED, DOC_VALUES
+ * book.type = STRING
+ * book.options = INDEXED, STORED, DOC_VALUES
+ * text.type = HTML_TEXT
+ * text.options = INDEXED, STORED
+ * </pre>
+ *
+ * The same, in code:
+ *
+ * <pre>
+ * new DocumentSchema(new DocumentSchema.Builder() //
+ * 		.field("chapter", FieldType.INT, Option.INDEXED, Option.STORED, Option.DOC_VALUES) //
+ * 		.field("book", FieldType.STRING, Option.INDEXED, Option.STORED, Option.DOC_VALUES) //
+ * 		.field("text", FieldType.HTML_TEXT, Option.INDEXED, Option.STORED));
+ * </pre>
+ *
+ * Text fields in a file are analyzed with StandardAnalyzer. To use other
+ * Analyzers, read the file with {@link Builder#fields(Properties)} and add
+ * them with {@link Builder#analyzer(String, Analyzer)}.
+ * 
+ * {@link #bible()} is the schema of a Bible chapter, loaded from
+ * "bible-schema.properties" alongside this class.
+ *
+ */
+public class DocumentSchema {
+
+	/**
+	 * The type of a field, and so the type of value it takes.
+	 */
+	public enum FieldType {
+		/** An Integer; indexed as a point. */
+		INT,
+		/** A Long; indexed as a point. */
+		LONG,
+		/** A ZonedDateTime, kept as epoch milliseconds; indexed as a point. */
+		TIMESTAMP,
+		/** Any value, as one un-analyzed String. */
+		STRING,
+		/** A String[], each trimmed and kept as one un-analyzed String. */
+		KEYWORDS,
+		/** A String, analyzed. */
+		TEXT,
+		/** A String of HTML, analyzed with the markup removed. */
+		HTML_TEXT;
+
+		boolean analyzed() {
+			return this == TEXT || this == HTML_TEXT;
+		}
+	}
+
+	/**
+	 * How a field's values are kept.
+	 */
+	public enum Option {
+		/** Searchable: as points for numbers, otherwise as terms. */
+		INDEXED,
+		/** Retrievable with search results. */
+		STORED,
+		/** Available for sorting, faceting and the like. */
+		DOC_VALUES
+	}
+
+	/**
+	 * One declared field.
+	 */
+	public static class FieldDefinition {
+		private final String name;
+		private final FieldType type;
+		private final Set<Option> options;
+		private final Analyzer analyzer;
+
+		FieldDefinition(String name, FieldType type, Set<Option> options, Analyzer analyzer) {
+			this.name = name;
+			this.type = type;
+			this.options = options;
+			this.analyzer = analyzer;
+		}
+
+		/**
+		 * @return the field name
+		 */
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * @return the type of its values
+		 */
+		public FieldType type() {
+			return type;
+		}
+
+		/**
+		 * @return how its values are kept
+		 */
+		public Set<Option> options() {
+			return options;
+		}
+
+		/**
+		 * @return its analyzer, or null for the default
+		 */
+		public Analyzer analyzer() {
+			return analyzer;
+		}
+
+		/**
+		 * @param option an option
+		 * @return whether the field has it
+		 */
+		public boolean has(Option option) {
+			return options.contains(option);
+		}
+	}
+
+	private static final String BIBLE_SCHEMA = "bible-schema.properties";
+
+	private final List<FieldDefinition> fields;
+	private final List<String> fieldNames;
+
+	public DocumentSchema(Builder b) {
+		Map<String, Analyzer> analyzers = new HashMap<>(b.analyzers);
+		Set<String> names = new HashSet<>();
+		List<FieldDefinition> fl = new ArrayList<>(b.fields.size());
+		for (FieldDefinition f : b.fields) {
+			if (f.name() == null || f.name().isEmpty()) {
+				throw new LuceneTutorialException("Each field must have a name.");
+			}
+			if (!names.add(f.name())) {
+				throw new LuceneTutorialException("The field is declared more than once: " + f.name());
+			}
+			if (f.type() == null) {
+				throw new LuceneTutorialException("The field has no type: " + f.name());
+			}
+			if (f.options().isEmpty()) {
+				throw new LuceneTutorialException(
+						"The field is neither indexed, stored nor in doc values: " + f.name());
+			}
+			if (f.type().analyzed() && f.has(Option.DOC_VALUES)) {
+				throw new LuceneTutorialException("Analyzed text cannot be in doc values: " + f.name());
+			}
+			Analyzer a = analyzers.remove(f.name());
+			if (a != null && !(f.type().analyzed() && f.has(Option.INDEXED))) {
+				throw new LuceneTutorialException("Only indexed text fields have an analyzer: " + f.name());
+			}
+			fl.add(new FieldDefinition(f.name(), f.type(), f.options(), a));
+		}
+		if (!analyzers.isEmpty()) {
+			throw new LuceneTutorialException("An analyzer is given for undeclared fields: " + analyzers.keySet());
+		}
+		this.fields = Collections.unmodifiableList(fl);
+		this.fieldNames = fl.stream().map(FieldDefinition::name).toList();
+	}
+
+	/**
+	 * Loads a schema from a properties file, in the format described above.
+	 *
+	 * @param path the file, in UTF-8
+	 * @return the schema
+	 */
+	public static DocumentSchema load(Path path) {
+		try (Reader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return load(r);
+		} catch (LuceneTutorialException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not load schema: " + path, e);
+		}
+	}
+
+	/**
+	 * The fields of a Bible chapter, as {@link DocumentTransformerHtmlBibleImpl}
+	 * creates them.
+	 *
+	 * @return the schema
+	 */
+	public static DocumentSchema bible() {
+		try (InputStream in = DocumentSchema.class.getResourceAsStream(BIBLE_SCHEMA)) {
+			if (in == null) {
+				throw new LuceneTutorialException("Could not find schema: " + BIBLE_SCHEMA);
+			}
+			return load(new InputStreamReader(in, StandardCharsets.UTF_8));
+		} catch (LuceneTutorialException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new LuceneTutorialException("Could not load schema: " + BIBLE_SCHEMA, e);
+		}
+	}
+
+	private static DocumentSchema load(Reader r) throws IOException {
+		Properties p = new Properties();
+		p.load(r);
+		return new DocumentSchema(new Builder().fields(p));
+	}
+
+	/**
+	 * @return the fields, in the order declared
+	 */
+	public List<FieldDefinition> fields() {
+		return fields;
+	}
+
+	/**
+	 * The field names, in the order declared. Records for this schema share this
+	 * list, which lets {@link SchemaDocumentTransformer} read their values by
+	 * position.
+	 *
+	 * @return the field names
+	 */
+	public List<String> fieldNames() {
+		return fieldNames;
+	}
+
+	/**
+	 * Creates a record for this schema.
+	 *
+	 * @param values the raw data, in the order the fields were declared, with null
+	 *               for no value
+	 * @return the record
+	 */
+	public ExtractedRecord newRecord(Object... values) {
+		return new ExtractedRecord(fieldNames, values);
+	}
+
+	public static class Builder {
+		private final List<FieldDefinition> fields = new ArrayList<>();
+		private final Map<String, Analyzer> analyzers = new HashMap<>();
+
+		/**
+		 * Declares a field.
+		 *
+		 * @param name    the field name
+		 * @param type    the type of its values
+		 * @param options how its values are kept
+		 * @return this
+		 */
+		public Builder field(String name, FieldType type, Option... options) {
+			Set<Option> os = EnumSet.noneOf(Option.class);
+			Collections.addAll(os, options);
+			fields.add(new FieldDefinition(name, type, Collections.unmodifiableSet(os), null));
+			return this;
+		}
+
+		/**
+		 * Declares the fields listed in properties, in the format described for
+		 * {@link DocumentSchema}.
+		 *
+		 * @param properties the "fields" property, and the "type" and "options" of
+		 *                   each field
+		 * @return this
+		 */
+		public Builder fields(Properties properties) {
+			String names = properties.getProperty("fields");
+			if (names == null || names.isBlank()) {
+				throw new LuceneTutorialException("The schema does not list its fields.");
+			}
+			Set<String> keys = new HashSet<>(properties.stringPropertyNames());
+			keys.remove("fields");
+			for (String name : names.split(",")) {
+				name = name.trim();
+				String type = properties.getProperty(name + ".type");
+				if (type == null) {
+					throw new LuceneTutorialException("The field has no type: " + name);
+				}
+				String options = properties.getProperty(name + ".options", "");
+				List<Option> os = new ArrayList<>();
+				try {
+					for (String o : options.split(",")) {
+						if (!o.isBlank()) {
+							os.add(Option.valueOf(o.trim()));
+						}
+					}
+					field(name, FieldType.valueOf(type.trim()), os.toArray(new Option[0]));
+				} catch (IllegalArgumentException e) {
+					throw new LuceneTutorialException("Invalid type or options for field: " + name, e);
+				}
+				keys.remove(name + ".type");
+				keys.remove(name + ".options");
+			}
+			if (!keys.isEmpty()) {
+				throw new LuceneTutorialException("The schema has properties for no listed field: " + keys);
+			}
+			return this;
+		}
+
+		/**
+		 * Analyzes an indexed text field with the given Analyzer, rather than with
+		 * StandardAnalyzer. The caller remains responsible for closing it.
+		 *
+		 * @param name     the field name
+		 * @param analyzer the Analyzer
+		 * @return this
+		 */
+		public Builder analyzer(String name, Analyzer analyzer) {
+			analyzers.put(name, analyzer);
+			return this;
+		}
+	}
+}
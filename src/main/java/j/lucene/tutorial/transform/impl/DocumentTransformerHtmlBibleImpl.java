@@ -2,28 +2,41 @@ package j.lucene.tutorial.transform.impl;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.charfilter.HTMLStripCharFilter;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.reverse.ReverseStringFilter;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.KeywordField;
+import org.apache.lucene.document.KnnFloatVectorField;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.Version;
 
 import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedChapter;
 import j.lucene.tutorial.extract.ExtractedDocument;
 import j.lucene.tutorial.transform.DocumentTransformer;
 import j.lucene.tutorial.transform.TransformedDocument;
@@ -32,24 +45,256 @@ import j.lucene.tutorial.transform.TransformedDocument;
  * This Document Transformer takes an HTML Bible Chapter and transforms it to
  * Lucene Fields.
  * 
+ * By default, text fields are analyzed as they are transformed, and each
+ * TextField holds a live TokenStream. The Analyzer re-uses one TokenStream per
+ * thread, so each document must be indexed before the same thread transforms
+ * the next one. With {@link Builder#deferAnalysis(boolean)}, text fields
+ * instead hold their String value and are analyzed by the IndexWriter. This
+ * mode is safe to use concurrently, and transformed documents may be buffered
+ * before indexing. The IndexWriter must then be configured with
+ * {@link #indexAnalyzer()}, which strips HTML from the "text" field.
+ * 
+ * With {@link Builder#tokenCache(Path)}, text fields are analyzed once and the
+ * tokens are kept on disk. Re-transforming unchanged text replays the cached
+ * tokens. This mode also is safe to use concurrently.
+ * 
+ * With {@link Builder#reuseFields(boolean)}, each thread re-populates its own
+ * set of Field instances for each {@link ExtractedChapter}, rather than
+ * allocating new ones. The returned document is then only valid until the same
+ * thread transforms another, so it must be indexed straight away, as the
+ * loading collector does unless batching, which it then refuses.
+ * 
+ * By default, the "text" field stores the raw HTML. With
+ * {@link Builder#storeStrippedText(boolean)}, it stores only the text, which is
+ * much smaller. The HTML is then stripped once, into a re-usable buffer per
+ * thread, which supplies both the stored text and the text to analyze, so token
+ * offsets refer to the stored text. With
+ * {@link Builder#storeOffsets(boolean)}, a mapping from those offsets back to
+ * the raw HTML is stored in {@link #TEXT_OFFSETS_FIELD}.
+ * 
+ * With {@link Builder#minHash(MinHashSignature)}, the analyzed "text" field
+ * also gets a MinHash signature, stored as a binary doc value in
+ * {@link #TEXT_MINHASH_FIELD}, with its bands indexed as keywords in
+ * {@link #TEXT_MINHASH_BANDS_FIELD}. Near-duplicates can then be found or
+ * collapsed at query time without re-analyzing anything. This analyzes the text
+ * a second time.
+ * 
+ * With {@link Builder#indexOffsets(String...)}, the given text fields are
+ * indexed with offsets in their postings, so that search results can be
+ * highlighted without re-analyzing the text.
+ * 
+ * With {@link Builder#indexAffixes(String...)}, the given text fields also
+ * get two auxiliary fields, which only record which documents have each term:
+ * the leading edge n-grams of each token, so a short prefix is one term, and
+ * each token reversed, so a leading wildcard becomes a prefix.
+ * 
+ * With {@link Builder#embedder(TextEmbedder)}, the "text" field, without its
+ * markup, is also embedded as a vector, indexed in {@link #TEXT_VECTOR_FIELD}
+ * for approximate nearest neighbor search. Unless the stored text is already
+ * stripped, this strips the HTML a second time.
+ * 
  */
 public class DocumentTransformerHtmlBibleImpl implements DocumentTransformer, AutoCloseable {
 
-	private final Map<String, FromSomethingFieldProducer> fieldMapping;
+	/**
+	 * Stores the offset mapping for stripped text; see
+	 * {@link StrippedHtml#originalOffset(org.apache.lucene.util.BytesRef, int)}.
+	 */
+	public static final String TEXT_OFFSETS_FIELD = "text_offsets";
+
+	/**
+	 * Holds the "text" field's MinHash signature as a binary doc value; see
+	 * {@link MinHashSignature#decode(BytesRef)}.
+	 */
+	public static final String TEXT_MINHASH_FIELD = "text_minhash";
+
+	/**
+	 * Indexes the bands of the "text" field's MinHash signature; see
+	 * {@link MinHashSignature#bands(int[])}.
+	 */
+	public static final String TEXT_MINHASH_BANDS_FIELD = "text_minhash_bands";
+
+	/**
+	 * Indexes the "text" field's vector, for nearest neighbor search; see
+	 * {@link TextEmbedder}.
+	 */
+	public static final String TEXT_VECTOR_FIELD = "text_vector";
+
+	/**
+	 * Appended to a text field's name for the field of its tokens' leading edge
+	 * n-grams; see {@link Builder#indexAffixes(String...)}.
+	 */
+	public static final String PREFIX_FIELD_SUFFIX = "_prefix";
+
+	/**
+	 * Appended to a text field's name for the field of its tokens reversed; see
+	 * {@link Builder#indexAffixes(String...)}.
+	 */
+	public static final String REVERSED_FIELD_SUFFIX = "_reversed";
+
+	/**
+	 * The longest prefix indexed as an n-gram. Longer prefixes match few enough
+	 * terms that enumerating them is cheap.
+	 */
+	public static final int PREFIX_MAX_GRAM = 5;
+
+	/**
+	 * The most fields created for a chapter with 5 keywords, used to size lists.
+	 */
+	private static final int FIELDS_PER_CHAPTER = 19;
+
+	/**
+	 * Like {@link TextField#TYPE_NOT_STORED}, but with offsets in the postings.
+	 */
+	private static final FieldType TEXT_WITH_OFFSETS;
+
+	static {
+		TEXT_WITH_OFFSETS = new FieldType(TextField.TYPE_NOT_STORED);
+		TEXT_WITH_OFFSETS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		TEXT_WITH_OFFSETS.freeze();
+	}
+
+	/**
+	 * For prefixes and reversed tokens, which only need to find documents.
+	 */
+	private static final FieldType AFFIXES;
 
-	private boolean closed = false;
+	static {
+		AFFIXES = new FieldType(TextField.TYPE_NOT_STORED);
+		AFFIXES.setIndexOptions(IndexOptions.DOCS);
+		AFFIXES.setOmitNorms(true);
+		AFFIXES.freeze();
+	}
+
+	/**
+	 * Identifies the analysis for the token cache. Change this if the analysis
+	 * changes.
+	 */
+	private static final String ANALYSIS_ID = "StandardAnalyzer;HTMLStripCharFilter(text);lucene-"
+			+ Version.LATEST;
+
+	private final FromIntegerIntProducer chapter;
+	private final FromZonedDateTimeLongProducer addTimestamp;
+	private final FromObjectStringFieldProducer book;
+	private final FromObjectStringFieldProducer source;
+	private final FromPlainTextFieldProvider synopsis;
+	private final FromHtmlTextFieldProducer text;
+	private final FromStringArrayKeywordsProducer keywords;
+	private final FromSomethingFieldProducer[] producers;
+
+	private final boolean deferAnalysis;
+	private final boolean storeStrippedText;
+	private final boolean storeOffsets;
+	private final Set<String> offsetFieldnames;
+	private final Set<String> affixFieldnames;
+	private final Analyzer indexAnalyzer;
+	private final PreAnalyzedTokenCache tokenCache;
+	private final MinHashSignature minHash;
+	private final TextEmbedder embedder;
+	private final int fieldsPerChapter;
+	private final CloseableThreadLocal<ChapterFieldTemplate> templates;
+	private final CloseableThreadLocal<HtmlStripper> strippers;
+
+	private volatile boolean closed = false;
 
 	public DocumentTransformerHtmlBibleImpl() {
-		List<FromSomethingFieldProducer> fl = new ArrayList<>();
-		fl.add(new FromIntegerIntProducer("chapter"));
-		fl.add(new FromZonedDateTimeLongProducer("add_timestamp"));
-		fl.add(new FromObjectStringFieldProducer("book"));
-		fl.add(new FromObjectStringFieldProducer("source"));
-		fl.add(new FromPlainTextFieldProvider("synopsis"));
-		fl.add(new FromHtmlTextFieldProducer("text"));
-		fl.add(new FromStringArrayKeywordsProducer("keywords"));
-		this.fieldMapping = fl.stream()
-				.collect(Collectors.toUnmodifiableMap(FromSomethingFieldProducer::name, Function.identity()));
+		this(new Builder());
+	}
+
+	public DocumentTransformerHtmlBibleImpl(Builder b) {
+		this.deferAnalysis = b.deferAnalysis || b.tokenCacheDirectory != null;
+		this.storeStrippedText = b.storeStrippedText;
+		this.storeOffsets = b.storeStrippedText && b.storeOffsets;
+		this.offsetFieldnames = b.offsetFieldnames;
+		this.affixFieldnames = b.affixFieldnames;
+		this.indexAnalyzer = new HtmlStripAnalyzerWrapper(storeStrippedText ? Set.of()
+				: Set.of("text", "text" + PREFIX_FIELD_SUFFIX, "text" + REVERSED_FIELD_SUFFIX));
+		this.tokenCache = b.tokenCacheDirectory == null ? null
+				: new PreAnalyzedTokenCache(b.tokenCacheDirectory, indexAnalyzer,
+						storeStrippedText ? ANALYSIS_ID + ";stripped" : ANALYSIS_ID);
+		this.minHash = b.minHash;
+		this.embedder = b.embedder;
+		this.fieldsPerChapter = FIELDS_PER_CHAPTER + (minHash == null ? 0 : 1 + minHash.bands())
+				+ (embedder == null ? 0 : 1) + 2 * affixFieldnames.size();
+		this.chapter = new FromIntegerIntProducer("chapter");
+		this.addTimestamp = new FromZonedDateTimeLongProducer("add_timestamp");
+		this.book = new FromObjectStringFieldProducer("book");
+		this.source = new FromObjectStringFieldProducer("source");
+		this.synopsis = new FromPlainTextFieldProvider("synopsis");
+		this.text = new FromHtmlTextFieldProducer("text");
+		this.keywords = new FromStringArrayKeywordsProducer("keywords");
+		this.producers = new FromSomethingFieldProducer[] { chapter, addTimestamp, book, source, synopsis, text,
+				keywords };
+		for (String fieldname : offsetFieldnames) {
+			if (!fieldname.equals(synopsis.name) && !fieldname.equals(text.name)) {
+				throw new LuceneTutorialException("Only text fields can be indexed with offsets: " + fieldname);
+			}
+		}
+		for (String fieldname : affixFieldnames) {
+			if (!fieldname.equals(synopsis.name) && !fieldname.equals(text.name)) {
+				throw new LuceneTutorialException("Only text fields can have affixes indexed: " + fieldname);
+			}
+		}
+		this.templates = !b.reuseFields ? null : new CloseableThreadLocal<>() {
+			@Override
+			protected ChapterFieldTemplate initialValue() {
+				return new ChapterFieldTemplate();
+			}
+		};
+		this.strippers = !storeStrippedText ? null : new CloseableThreadLocal<>() {
+			@Override
+			protected HtmlStripper initialValue() {
+				return new HtmlStripper();
+			}
+		};
+	}
+
+	/**
+	 * The Analyzer to configure the IndexWriter with. This is required when
+	 * analysis is deferred, and harmless otherwise, as pre-analyzed fields do not
+	 * use it. When storing stripped text, it does not strip HTML. It is closed
+	 * along with this transformer.
+	 * 
+	 * @return an analyzer equivalent to the one used at transform time
+	 */
+	public Analyzer indexAnalyzer() {
+		return indexAnalyzer;
+	}
+
+	/**
+	 * @return the token cache, if one was configured
+	 */
+	public Optional<PreAnalyzedTokenCache> tokenCache() {
+		return Optional.ofNullable(tokenCache);
+	}
+
+	/**
+	 * @return the MinHash configuration, if signatures are computed
+	 */
+	public Optional<MinHashSignature> minHash() {
+		return Optional.ofNullable(minHash);
+	}
+
+	/**
+	 * @return the embedder, if vectors are computed
+	 */
+	public Optional<TextEmbedder> embedder() {
+		return Optional.ofNullable(embedder);
+	}
+
+	/**
+	 * Computes the MinHash signature that a chapter with this HTML would get, for
+	 * example to look up its near-duplicates before indexing it.
+	 * 
+	 * @param html the chapter's HTML
+	 * @return the signature
+	 */
+	public int[] textSignature(String html) {
+		if (minHash == null) {
+			throw new LuceneTutorialException("MinHash signatures are not configured.");
+		}
+		String indexedText = storeStrippedText ? StrippedHtml.strip(html, false).text() : html;
+		return minHash.compute(indexAnalyzer, text.name, indexedText);
 	}
 
 	@Override
@@ -57,69 +302,542 @@ public class DocumentTransformerHtmlBibleImpl implements DocumentTransformer, Au
 		if (closed) {
 			throw new LuceneTutorialException("Cannot use this once it has been closed.");
 		}
-		List<Field> luceneFields = new ArrayList<>(in.getContentByFieldname().size());
-		for (Map.Entry<String, Object> entry : in.getContentByFieldname().entrySet()) {
-			FromSomethingFieldProducer producer = fieldMapping.get(entry.getKey());
-			if (producer != null) {
-				producer.addFields(entry.getValue(), luceneFields);
+		if (in instanceof ExtractedChapter c) {
+			return templates == null ? transformChapter(c) : templates.get().populate(c);
+		}
+		Map<String, Object> content = in.getContentByFieldname();
+		List<Field> luceneFields = new ArrayList<>(fieldsPerChapter);
+		for (FromSomethingFieldProducer producer : producers) {
+			Object value = content.get(producer.name);
+			if (value != null) {
+				producer.addFields(value, luceneFields);
 			}
 		}
 		return new TransformedDocument(luceneFields);
 	}
 
+	/**
+	 * With the typed chapter, each value goes straight to its producer, without
+	 * map lookups, casts or boxing.
+	 */
+	private TransformedDocument transformChapter(ExtractedChapter c) {
+		List<Field> luceneFields = new ArrayList<>(fieldsPerChapter);
+		chapter.addInt(c.getChapter(), luceneFields);
+		addTimestamp.addEpochMilli(c.getAddTimestampMillis(), luceneFields);
+		if (c.getBook() != null) {
+			book.addFields(c.getBook(), luceneFields);
+		}
+		if (c.getSource() != null) {
+			source.addFields(c.getSource(), luceneFields);
+		}
+		if (c.getSynopsis() != null) {
+			synopsis.addFields(c.getSynopsis(), luceneFields);
+		}
+		String t = c.getText();
+		if (t != null) {
+			text.addFields(t, luceneFields);
+		}
+		if (c.getKeywords() != null) {
+			keywords.addFields(c.getKeywords(), luceneFields);
+		}
+		return new TransformedDocument(luceneFields);
+	}
+
 	@Override
-	public void close() throws Exception {
+	public void close() {
 		closed = true;
 
-		for (FromSomethingFieldProducer p : fieldMapping.values()) {
-			if (p instanceof AutoCloseable ac) {
-				ac.close();
+		for (FromSomethingFieldProducer p : producers) {
+			if (p instanceof FromTextFieldProducer tp) {
+				tp.close();
 			}
 		}
+		indexAnalyzer.close();
+		if (templates != null) {
+			templates.close();
+		}
+		if (strippers != null) {
+			strippers.close();
+		}
 	}
 
-	private class FromHtmlTextFieldProducer extends FromSomethingFieldProducer implements AutoCloseable {
-		final Analyzer a;
+	public static class Builder {
+		private boolean deferAnalysis;
+		private Path tokenCacheDirectory;
+		private boolean reuseFields;
+		private boolean storeStrippedText;
+		private boolean storeOffsets;
+		private MinHashSignature minHash;
+		private Set<String> offsetFieldnames = Set.of();
+		private TextEmbedder embedder;
+		private Set<String> affixFieldnames = Set.of();
+
+		/**
+		 * Leave text analysis to the IndexWriter, making this transformer safe to
+		 * call from multiple threads.
+		 * 
+		 * @param deferAnalysis true to index text fields from their String values
+		 * @return this
+		 */
+		public Builder deferAnalysis(boolean deferAnalysis) {
+			this.deferAnalysis = deferAnalysis;
+			return this;
+		}
+
+		/**
+		 * Keep analyzed tokens on disk, keyed by a hash of the text, and replay them
+		 * when the same text is transformed again.
+		 * 
+		 * @param tokenCacheDirectory where to keep the tokens
+		 * @return this
+		 */
+		public Builder tokenCache(Path tokenCacheDirectory) {
+			this.tokenCacheDirectory = tokenCacheDirectory;
+			return this;
+		}
+
+		/**
+		 * Re-use one set of Fields per thread for typed chapters. Each transformed
+		 * document must be indexed before the same thread transforms another.
+		 * 
+		 * @param reuseFields true to re-use Fields
+		 * @return this
+		 */
+		public Builder reuseFields(boolean reuseFields) {
+			this.reuseFields = reuseFields;
+			return this;
+		}
+
+		/**
+		 * Store the "text" field with its HTML stripped, rather than as raw HTML.
+		 * 
+		 * @param storeStrippedText true to store only the text
+		 * @return this
+		 */
+		public Builder storeStrippedText(boolean storeStrippedText) {
+			this.storeStrippedText = storeStrippedText;
+			return this;
+		}
+
+		/**
+		 * When storing stripped text, also store the mapping from offsets in the text
+		 * to offsets in the raw HTML.
+		 * 
+		 * @param storeOffsets true to store the offset mapping
+		 * @return this
+		 */
+		public Builder storeOffsets(boolean storeOffsets) {
+			this.storeOffsets = storeOffsets;
+			return this;
+		}
+
+		/**
+		 * Compute a MinHash signature of the analyzed "text" field, for finding
+		 * near-duplicates.
+		 * 
+		 * @param minHash the signature configuration, or null for none
+		 * @return this
+		 */
+		public Builder minHash(MinHashSignature minHash) {
+			this.minHash = minHash;
+			return this;
+		}
+
+		/**
+		 * Index these text fields with offsets in their postings, for highlighting.
+		 * 
+		 * @param fieldnames "synopsis" and/or "text"
+		 * @return this
+		 */
+		public Builder indexOffsets(String... fieldnames) {
+			this.offsetFieldnames = Set.of(fieldnames);
+			return this;
+		}
+
+		/**
+		 * Embed the "text" field as a vector, for nearest neighbor search.
+		 * 
+		 * @param embedder computes the vector, or null for none
+		 * @return this
+		 */
+		public Builder embedder(TextEmbedder embedder) {
+			this.embedder = embedder;
+			return this;
+		}
+
+		/**
+		 * Also index these text fields' token prefixes and reversed tokens, for fast
+		 * prefix and leading wildcard queries.
+		 * 
+		 * @param fieldnames "synopsis" and/or "text"
+		 * @return this
+		 */
+		public Builder indexAffixes(String... fieldnames) {
+			this.affixFieldnames = Set.of(fieldnames);
+			return this;
+		}
+	}
+
+	/**
+	 * Analyzes like StandardAnalyzer, but first removes HTML from the given
+	 * fields. Prefix fields get each token's leading edge n-grams, and reversed
+	 * fields each token reversed. As the auxiliary fields of one document may be
+	 * analyzed at the same time, each field re-uses its own TokenStream.
+	 */
+	private static class HtmlStripAnalyzerWrapper extends AnalyzerWrapper {
+		private final Analyzer delegate;
+		private final Set<String> htmlFieldnames;
+
+		HtmlStripAnalyzerWrapper(Set<String> htmlFieldnames) {
+			super(PER_FIELD_REUSE_STRATEGY);
+			this.delegate = new StandardAnalyzer();
+			this.htmlFieldnames = htmlFieldnames;
+		}
+
+		@Override
+		protected Analyzer getWrappedAnalyzer(String fieldName) {
+			return delegate;
+		}
+
+		@Override
+		protected Reader wrapReader(String fieldName, Reader reader) {
+			return htmlFieldnames.contains(fieldName) ? new HTMLStripCharFilter(reader) : reader;
+		}
+
+		@Override
+		protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+			if (fieldName.endsWith(PREFIX_FIELD_SUFFIX)) {
+				return new TokenStreamComponents(components.getSource(),
+						new EdgeNGramTokenFilter(components.getTokenStream(), 1, PREFIX_MAX_GRAM, false));
+			}
+			if (fieldName.endsWith(REVERSED_FIELD_SUFFIX)) {
+				return new TokenStreamComponents(components.getSource(),
+						new ReverseStringFilter(components.getTokenStream()));
+			}
+			return components;
+		}
+
+		@Override
+		public void close() {
+			super.close();
+			delegate.close();
+		}
+	}
+
+	/**
+	 * One thread's Fields, re-populated for each chapter. Produces the same
+	 * fields as {@link DocumentTransformerHtmlBibleImpl#transformChapter}.
+	 */
+	private class ChapterFieldTemplate {
+		final List<Field> fields = new ArrayList<>(fieldsPerChapter);
+		final TransformedDocument document = new TransformedDocument(fields);
+
+		final IntPoint chapterPoint = new IntPoint(chapter.name, 0);
+		final StoredField chapterStored = new StoredField(chapter.name, 0);
+		final NumericDocValuesField chapterDocValues = new NumericDocValuesField(chapter.name, 0L);
+		final LongPoint addTimestampPoint = new LongPoint(addTimestamp.name, 0L);
+		final StoredField addTimestampStored = new StoredField(addTimestamp.name, 0L);
+		final NumericDocValuesField addTimestampDocValues = new NumericDocValuesField(addTimestamp.name, 0L);
+		final StringField bookString = new StringField(book.name, "", Store.YES);
+		final SortedDocValuesField bookDocValues = new SortedDocValuesField(book.name, new BytesRef());
+		final StringField sourceString = new StringField(source.name, "", Store.YES);
+		final SortedDocValuesField sourceDocValues = new SortedDocValuesField(source.name, new BytesRef());
+		final StoredField synopsisStored = new StoredField(synopsis.name, "");
+		final StoredField textStored = new StoredField(text.name, "");
+		final StoredField textOffsetsStored = new StoredField(TEXT_OFFSETS_FIELD, new BytesRef());
+		final BinaryDocValuesField textMinHashDocValues = new BinaryDocValuesField(TEXT_MINHASH_FIELD, new BytesRef());
+		final List<StringField> textMinHashBands = new ArrayList<>();
+		final KnnFloatVectorField textVector = embedder == null ? null
+				: new KnnFloatVectorField(TEXT_VECTOR_FIELD, new float[embedder.dimension()], embedder.similarity());
+		final List<KeywordField> keywordFields = new ArrayList<>();
+		Field synopsisText;
+		Field textText;
+		final Field[] synopsisAffixes = new Field[2];
+		final Field[] textAffixes = new Field[2];
+
+		TransformedDocument populate(ExtractedChapter c) {
+			fields.clear();
+			chapterPoint.setIntValue(c.getChapter());
+			chapterStored.setIntValue(c.getChapter());
+			chapterDocValues.setLongValue(c.getChapter());
+			add(chapterPoint, chapterStored, chapterDocValues);
+			addTimestampPoint.setLongValue(c.getAddTimestampMillis());
+			addTimestampStored.setLongValue(c.getAddTimestampMillis());
+			addTimestampDocValues.setLongValue(c.getAddTimestampMillis());
+			add(addTimestampPoint, addTimestampStored, addTimestampDocValues);
+			if (c.getBook() != null) {
+				populateString(bookString, bookDocValues, c.getBook());
+			}
+			if (c.getSource() != null) {
+				populateString(sourceString, sourceDocValues, c.getSource());
+			}
+			String syn = c.getSynopsis();
+			if (syn != null) {
+				synopsisText = populateText(synopsis, synopsisText, synopsisStored, syn, synopsis.tokenStream(syn));
+				populateAffixes(synopsis, synopsisAffixes, syn);
+			}
+			String t = c.getText();
+			if (t != null && storeStrippedText) {
+				HtmlStripper stripper = strippers.get();
+				stripper.strip(t);
+				String stripped = stripper.text();
+				textText = populateText(text, textText, textStored, stripped, text.strippedTokenStream(stripper, stripped));
+				populateAffixes(text, textAffixes, stripped);
+				if (storeOffsets) {
+					textOffsetsStored.setBytesValue(stripper.offsets());
+					add(textOffsetsStored);
+				}
+				populateSignature(stripped);
+				populateVector(stripped);
+			} else if (t != null) {
+				textText = populateText(text, textText, textStored, t, text.tokenStream(t));
+				populateAffixes(text, textAffixes, t);
+				populateSignature(t);
+				if (embedder != null) {
+					populateVector(StrippedHtml.strip(t, false).text());
+				}
+			}
+			if (c.getKeywords() != null) {
+				String[] kw = c.getKeywords();
+				for (int i = 0; i < kw.length; i++) {
+					if (i == keywordFields.size()) {
+						keywordFields.add(new KeywordField(keywords.name, kw[i].trim(), Store.YES));
+					} else {
+						keywordFields.get(i).setStringValue(kw[i].trim());
+					}
+					fields.add(keywordFields.get(i));
+				}
+			}
+			return document;
+		}
+
+		private void add(Field... fa) {
+			for (Field f : fa) {
+				fields.add(f);
+			}
+		}
+
+		private void populateString(StringField sf, SortedDocValuesField dv, String str) {
+			sf.setStringValue(str);
+			dv.setBytesValue(sf.binaryValue());
+			add(sf, dv);
+		}
+
+		private void populateSignature(String indexedText) {
+			if (minHash == null) {
+				return;
+			}
+			int[] signature = minHash.compute(indexAnalyzer, text.name, indexedText);
+			textMinHashDocValues.setBytesValue(MinHashSignature.encode(signature));
+			add(textMinHashDocValues);
+			BytesRef[] bands = minHash.bands(signature);
+			for (int i = 0; i < bands.length; i++) {
+				if (i == textMinHashBands.size()) {
+					textMinHashBands.add(new StringField(TEXT_MINHASH_BANDS_FIELD, bands[i], Store.NO));
+				} else {
+					textMinHashBands.get(i).setBytesValue(bands[i]);
+				}
+				fields.add(textMinHashBands.get(i));
+			}
+		}
+
+		private void populateAffixes(FromTextFieldProducer p, Field[] affixes, String str) {
+			if (p.affixNames == null) {
+				return;
+			}
+			for (int i = 0; i < affixes.length; i++) {
+				if (affixes[i] == null) {
+					affixes[i] = p.newAffixField(p.affixNames[i], str);
+				} else if (deferAnalysis) {
+					affixes[i].setStringValue(str);
+				} else {
+					affixes[i].setTokenStream(indexAnalyzer.tokenStream(p.affixNames[i], str));
+				}
+				fields.add(affixes[i]);
+			}
+		}
+
+		private void populateVector(String plainText) {
+			if (embedder == null) {
+				return;
+			}
+			float[] vector = embedder.embed(plainText);
+			if (vector != null) {
+				textVector.setVectorValue(vector);
+				add(textVector);
+			}
+		}
+
+		/**
+		 * The text Field is created on first use, as it either takes a TokenStream or
+		 * a String, depending on how it is analyzed.
+		 */
+		private Field populateText(FromTextFieldProducer p, Field tf, StoredField stored, String str,
+				TokenStream ts) {
+			if (tf == null) {
+				tf = p.newField(str, ts);
+			} else if (ts == null) {
+				tf.setStringValue(str);
+			} else {
+				tf.setTokenStream(ts);
+			}
+			stored.setStringValue(str);
+			add(tf, stored);
+			return tf;
+		}
+	}
+
+	private class FromHtmlTextFieldProducer extends FromTextFieldProducer {
 
 		FromHtmlTextFieldProducer(String name) {
 			super(name);
-			this.a = new StandardAnalyzer();
 		}
 
 		@Override
 		void addFields(Object strVal, List<Field> luceneFields) {
-			String str = (String) strVal;
-			Reader r = new HTMLStripCharFilter(new StringReader(str));
-			luceneFields.add(new TextField(name, a.tokenStream(name, r)));
-			luceneFields.add(new StoredField(name, str));
+			if (!storeStrippedText) {
+				super.addFields(strVal, luceneFields);
+				addSignature((String) strVal, luceneFields);
+				if (embedder != null) {
+					addVector(StrippedHtml.strip((String) strVal, false).text(), luceneFields);
+				}
+				return;
+			}
+			HtmlStripper stripper = strippers.get();
+			stripper.strip((String) strVal);
+			String stripped = stripper.text();
+			addFields(stripped, strippedTokenStream(stripper, stripped), luceneFields);
+			if (storeOffsets) {
+				luceneFields.add(new StoredField(TEXT_OFFSETS_FIELD, stripper.offsets()));
+			}
+			addSignature(stripped, luceneFields);
+			addVector(stripped, luceneFields);
+		}
+
+		/**
+		 * The signature is computed with the index analyzer, which strips HTML if the
+		 * indexed text still has it.
+		 */
+		void addSignature(String indexedText, List<Field> luceneFields) {
+			if (minHash == null) {
+				return;
+			}
+			int[] signature = minHash.compute(indexAnalyzer, name, indexedText);
+			luceneFields.add(new BinaryDocValuesField(TEXT_MINHASH_FIELD, MinHashSignature.encode(signature)));
+			for (BytesRef band : minHash.bands(signature)) {
+				luceneFields.add(new StringField(TEXT_MINHASH_BANDS_FIELD, band, Store.NO));
+			}
+		}
+
+		void addVector(String plainText, List<Field> luceneFields) {
+			if (embedder == null) {
+				return;
+			}
+			float[] vector = embedder.embed(plainText);
+			if (vector != null) {
+				luceneFields.add(new KnnFloatVectorField(TEXT_VECTOR_FIELD, vector, embedder.similarity()));
+			}
+		}
+
+		/**
+		 * When analyzing now, the analyzer reads the stripper's buffer directly. The
+		 * buffer, like the analyzer's TokenStream, is re-used by this thread's next
+		 * document.
+		 */
+		TokenStream strippedTokenStream(HtmlStripper stripper, String stripped) {
+			if (tokenCache != null) {
+				return tokenCache.tokenStream(name, stripped);
+			}
+			return a == null ? null : a.tokenStream(name, stripper.reader());
 		}
 
 		@Override
-		public void close() throws Exception {
-			a.close();
+		TokenStream analyze(String str) {
+			return a.tokenStream(name, new HTMLStripCharFilter(new StringReader(str)));
 		}
 	}
 
-	private class FromPlainTextFieldProvider extends FromSomethingFieldProducer implements AutoCloseable {
-		final Analyzer a;
+	private class FromPlainTextFieldProvider extends FromTextFieldProducer {
 
 		FromPlainTextFieldProvider(String name) {
 			super(name);
-			this.a = new StandardAnalyzer();
+		}
+
+		@Override
+		TokenStream analyze(String str) {
+			return a.tokenStream(name, str);
+		}
+	}
+
+	/**
+	 * Indexes text with a TokenStream, which is analyzed now, replayed from the
+	 * token cache, or with analysis deferred, null. Also stores the text.
+	 */
+	private abstract class FromTextFieldProducer extends FromSomethingFieldProducer implements AutoCloseable {
+		final Analyzer a;
+		final FieldType type;
+		final String[] affixNames;
+
+		FromTextFieldProducer(String name) {
+			super(name);
+			this.a = deferAnalysis ? null : new StandardAnalyzer();
+			this.type = offsetFieldnames.contains(name) ? TEXT_WITH_OFFSETS : null;
+			this.affixNames = !affixFieldnames.contains(name) ? null
+					: new String[] { name + PREFIX_FIELD_SUFFIX, name + REVERSED_FIELD_SUFFIX };
+		}
+
+		abstract TokenStream analyze(String str);
+
+		TokenStream tokenStream(String str) {
+			if (tokenCache != null) {
+				return tokenCache.tokenStream(name, str);
+			}
+			return a == null ? null : analyze(str);
 		}
 
 		@Override
 		void addFields(Object strVal, List<Field> luceneFields) {
 			String str = (String) strVal;
-			luceneFields.add(new TextField(name, a.tokenStream(name, str)));
+			addFields(str, tokenStream(str), luceneFields);
+		}
+
+		void addFields(String str, TokenStream ts, List<Field> luceneFields) {
+			luceneFields.add(newField(str, ts));
 			luceneFields.add(new StoredField(name, str));
+			if (affixNames != null) {
+				for (String affixName : affixNames) {
+					luceneFields.add(newAffixField(affixName, str));
+				}
+			}
 		}
 
-		@Override
-		public void close() throws Exception {
-			a.close();
+		/**
+		 * The affixes are always analyzed by the index analyzer, now or, with
+		 * analysis deferred, by the IndexWriter.
+		 */
+		Field newAffixField(String affixName, String str) {
+			if (deferAnalysis) {
+				return new Field(affixName, str, AFFIXES);
+			}
+			return new Field(affixName, indexAnalyzer.tokenStream(affixName, str), AFFIXES);
+		}
+
+		/**
+		 * A TextField, unless indexing offsets, which TextField does not.
+		 */
+		Field newField(String str, TokenStream ts) {
+			if (type == null) {
+				return ts == null ? new TextField(name, str, Store.NO) : new TextField(name, ts);
+			}
+			return ts == null ? new Field(name, str, type) : new Field(name, ts, type);
 		}
 
+		@Override
+		public void close() {
+			if (a != null) {
+				a.close();
+			}
+		}
 	}
 
 	private class FromZonedDateTimeLongProducer extends FromSomethingFieldProducer {
@@ -130,7 +848,10 @@ public class DocumentTransformerHtmlBibleImpl implements DocumentTransformer, Au
 
 		@Override
 		void addFields(Object zdtVal, List<Field> luceneFields) {
-			long epochMilli = ((ZonedDateTime) zdtVal).toInstant().toEpochMilli();
+			addEpochMilli(((ZonedDateTime) zdtVal).toInstant().toEpochMilli(), luceneFields);
+		}
+
+		void addEpochMilli(long epochMilli, List<Field> luceneFields) {
 			luceneFields.add(new LongPoint(name, epochMilli));
 			luceneFields.add(new StoredField(name, epochMilli));
 			luceneFields.add(new NumericDocValuesField(name, epochMilli));
@@ -146,9 +867,13 @@ public class DocumentTransformerHtmlBibleImpl implements DocumentTransformer, Au
 
 		@Override
 		void addFields(Object integerVal, List<Field> luceneFields) {
-			luceneFields.add(new IntPoint(name, (Integer) integerVal));
-			luceneFields.add(new StoredField(name, (Integer) integerVal));
-			luceneFields.add(new NumericDocValuesField(name, ((Number) integerVal).longValue()));
+			addInt((Integer) integerVal, luceneFields);
+		}
+
+		void addInt(int intVal, List<Field> luceneFields) {
+			luceneFields.add(new IntPoint(name, intVal));
+			luceneFields.add(new StoredField(name, intVal));
+			luceneFields.add(new NumericDocValuesField(name, intVal));
 		}
 
 	}
@@ -188,10 +913,6 @@ public class DocumentTransformerHtmlBibleImpl implements DocumentTransformer, Au
 			this.name = name;
 		}
 
-		String name() {
-			return name;
-		}
-
 		abstract void addFields(Object data, List<Field> luceneFields);
 	}
 
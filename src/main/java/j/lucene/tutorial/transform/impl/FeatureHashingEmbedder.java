@@ -0,0 +1,104 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.VectorSimilarityFunction;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * Embeds text by feature hashing: each analyzed term is hashed to one of the
+ * vector's dimensions, and to a sign, and its count is added there. The vector
+ * is then scaled to unit length, so the dot product of two vectors is their
+ * cosine similarity. Texts that share many terms get close vectors.
+ *
+ * This needs no model, and is deterministic, so it is a stand-in for a real
+ * embedding model: it only finds texts with words in common, and unrelated
+ * terms that hash to the same dimension add noise. Fewer dimensions make more
+ * collisions.
+ *
+ * This class is immutable and thread-safe, as long as the Analyzer is.
+ *
+ */
+public final class FeatureHashingEmbedder implements TextEmbedder {
+
+	public static final int DEFAULT_DIMENSION = 256;
+
+	private final Analyzer analyzer;
+	private final int dimension;
+
+	/**
+	 * Constructor, with {@link #DEFAULT_DIMENSION}.
+	 *
+	 * @param analyzer splits text into terms; the caller remains responsible for
+	 *                 closing it
+	 */
+	public FeatureHashingEmbedder(Analyzer analyzer) {
+		this(analyzer, DEFAULT_DIMENSION);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param analyzer  splits text into terms; the caller remains responsible for
+	 *                  closing it
+	 * @param dimension the length of the vectors
+	 */
+	public FeatureHashingEmbedder(Analyzer analyzer, int dimension) {
+		if (dimension < 1) {
+			throw new LuceneTutorialException("Invalid dimension: " + dimension);
+		}
+		this.analyzer = analyzer;
+		this.dimension = dimension;
+	}
+
+	@Override
+	public int dimension() {
+		return dimension;
+	}
+
+	/**
+	 * Vectors have unit length, so they are compared by dot product, which is the
+	 * fastest.
+	 */
+	@Override
+	public VectorSimilarityFunction similarity() {
+		return VectorSimilarityFunction.DOT_PRODUCT;
+	}
+
+	@Override
+	public float[] embed(String text) {
+		float[] vector = new float[dimension];
+		boolean any = false;
+		try (TokenStream ts = analyzer.tokenStream("", text)) {
+			CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				long h = TermHash.hash(term);
+				vector[(int) ((h >>> 1) % dimension)] += (h & 1) == 0 ? 1f : -1f;
+				any = true;
+			}
+			ts.end();
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not analyze text.", e);
+		}
+		if (!any) {
+			return null;
+		}
+		double norm = 0;
+		for (float v : vector) {
+			norm += v * v;
+		}
+		if (norm == 0) {
+			return null;
+		}
+		float scale = (float) (1 / Math.sqrt(norm));
+		for (int i = 0; i < dimension; i++) {
+			vector[i] *= scale;
+		}
+		return vector;
+	}
+}
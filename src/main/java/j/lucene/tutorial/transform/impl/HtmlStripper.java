@@ -0,0 +1,120 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.charfilter.HTMLStripCharFilter;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * Strips HTML once into a re-usable char buffer. The same buffer then supplies
+ * both the text to store, as a String, and the text to analyze, as a Reader,
+ * so the HTML is never parsed twice.
+ *
+ * Not thread-safe: each thread should have its own. The buffer, and any Reader
+ * over it, is only valid until the next call to {@link #strip(String)}.
+ *
+ */
+final class HtmlStripper {
+
+	private final BufferReader reader = new BufferReader();
+	private HTMLStripCharFilter filter;
+	private char[] buffer = new char[8192];
+	private int length;
+
+	/**
+	 * Removes the markup from the HTML, replacing the previous contents of the
+	 * buffer.
+	 *
+	 * @param html the original HTML
+	 */
+	void strip(String html) {
+		filter = new HTMLStripCharFilter(new StringReader(html));
+		length = 0;
+		try {
+			for (int n = 0; n != -1; n = filter.read(buffer, length, buffer.length - length)) {
+				length += n;
+				if (length == buffer.length) {
+					buffer = ArrayUtil.grow(buffer, length + 1);
+				}
+			}
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not strip HTML.", e);
+		}
+		reader.pos = 0;
+	}
+
+	/**
+	 * @return the stripped text
+	 */
+	String text() {
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * @return a Reader over the stripped text in the buffer, without copying it
+	 */
+	Reader reader() {
+		return reader;
+	}
+
+	/**
+	 * Encodes the mapping from offsets in the stripped text to offsets in the
+	 * HTML, as each offset at which the correction changes, with the change in
+	 * the correction. See
+	 * {@link StrippedHtml#originalOffset(BytesRef, int)}.
+	 *
+	 * @return the encoded mapping
+	 */
+	BytesRef offsets() {
+		try {
+			ByteBuffersDataOutput points = new ByteBuffersDataOutput();
+			int count = 0;
+			int lastPoint = 0;
+			int lastDiff = 0;
+			for (int i = 0; i <= length; i++) {
+				int diff = filter.correctOffset(i) - i;
+				if (diff != lastDiff) {
+					points.writeVInt(i - lastPoint);
+					points.writeZInt(diff - lastDiff);
+					count++;
+					lastPoint = i;
+					lastDiff = diff;
+				}
+			}
+			ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+			out.writeVInt(count);
+			points.copyTo(out);
+			return new BytesRef(out.toArrayCopy());
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not encode offsets.", e);
+		}
+	}
+
+	/**
+	 * Reads the buffer. Closing it does nothing, as it is re-used.
+	 */
+	private class BufferReader extends Reader {
+		int pos;
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (pos >= length) {
+				return -1;
+			}
+			int n = Math.min(len, length - pos);
+			System.arraycopy(buffer, pos, cbuf, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.BytesRef;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * Computes a MinHash signature over the shingles (runs of consecutive terms) of
+ * analyzed text. The fraction of equal positions in two signatures estimates
+ * the Jaccard similarity of the two sets of shingles, so near-duplicate
+ * documents have mostly equal signatures.
+ *
+ * For fast lookup, the signature is also split into bands. Documents sharing
+ * any band are candidates, which are then compared by their full signatures.
+ * With the defaults, 16 bands of 4 rows, documents that are 80% similar share
+ * a band with near certainty, and those 30% similar rarely do.
+ *
+ * Signatures are deterministic, so they may be compared across runs. This class
+ * is immutable and thread-safe.
+ *
+ */
+public final class MinHashSignature {
+
+	public static final int DEFAULT_HASHES = 64;
+	public static final int DEFAULT_BANDS = 16;
+	public static final int DEFAULT_SHINGLE_SIZE = 3;
+
+	private static final VarHandle BE_INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle BE_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	private final int bands;
+	private final int shingleSize;
+	private final long[] seeds;
+
+	public MinHashSignature() {
+		this(DEFAULT_HASHES, DEFAULT_BANDS, DEFAULT_SHINGLE_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param hashes      the length of the signature
+	 * @param bands       how many bands to split the signature into; must divide
+	 *                    the number of hashes
+	 * @param shingleSize how many consecutive terms make a shingle
+	 */
+	public MinHashSignature(int hashes, int bands, int shingleSize) {
+		if (hashes < 1 || bands < 1 || hashes % bands != 0 || shingleSize < 1) {
+			throw new LuceneTutorialException("Invalid MinHash configuration: " + hashes + " hashes, " + bands
+					+ " bands, shingles of " + shingleSize);
+		}
+		this.bands = bands;
+		this.shingleSize = shingleSize;
+		this.seeds = new long[hashes];
+		for (int i = 0; i < hashes; i++) {
+			seeds[i] = TermHash.mix(0x9E3779B97F4A7C15L * (i + 1));
+		}
+	}
+
+	/**
+	 * Analyzes the text and computes its signature. Text with fewer terms than
+	 * the shingle size is treated as one shingle; text with no terms at all has
+	 * a signature of {@link Integer#MAX_VALUE}s.
+	 *
+	 * @param analyzer  the analyzer to use
+	 * @param fieldName the field to analyze for
+	 * @param text      the text
+	 * @return the signature
+	 */
+	public int[] compute(Analyzer analyzer, String fieldName, String text) {
+		int[] signature = new int[seeds.length];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+		long[] window = new long[shingleSize];
+		int terms = 0;
+		try (TokenStream ts = analyzer.tokenStream(fieldName, text)) {
+			CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				window[terms++ % shingleSize] = TermHash.hash(term);
+				if (terms >= shingleSize) {
+					update(signature, shingle(window, terms));
+				}
+			}
+			ts.end();
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not analyze field: " + fieldName, e);
+		}
+		if (terms > 0 && terms < shingleSize) {
+			update(signature, shingle(window, terms));
+		}
+		return signature;
+	}
+
+	/**
+	 * One term per band, each identifying the band's position and the hash of
+	 * its rows, to index as keywords.
+	 *
+	 * @param signature a signature from {@link #compute(Analyzer, String, String)}
+	 * @return the band terms
+	 */
+	public BytesRef[] bands(int[] signature) {
+		BytesRef[] terms = new BytesRef[bands];
+		int rows = signature.length / bands;
+		for (int b = 0; b < bands; b++) {
+			long h = b;
+			for (int r = b * rows; r < (b + 1) * rows; r++) {
+				h = TermHash.mix(h * 31 + signature[r]);
+			}
+			byte[] bytes = new byte[Integer.BYTES + Long.BYTES];
+			BE_INT.set(bytes, 0, b);
+			BE_LONG.set(bytes, Integer.BYTES, h);
+			terms[b] = new BytesRef(bytes);
+		}
+		return terms;
+	}
+
+	/**
+	 * @return the number of bands
+	 */
+	public int bands() {
+		return bands;
+	}
+
+	/**
+	 * Estimates the Jaccard similarity of two documents from their signatures.
+	 *
+	 * @param a a signature
+	 * @param b another signature, of the same length
+	 * @return the fraction of equal positions, from 0 to 1
+	 */
+	public static double similarity(int[] a, int[] b) {
+		int equal = 0;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] == b[i]) {
+				equal++;
+			}
+		}
+		return (double) equal / a.length;
+	}
+
+	/**
+	 * Encodes a signature, to store as a binary doc value.
+	 *
+	 * @param signature the signature
+	 * @return 4 bytes per hash
+	 */
+	public static BytesRef encode(int[] signature) {
+		byte[] bytes = new byte[signature.length * Integer.BYTES];
+		for (int i = 0; i < signature.length; i++) {
+			BE_INT.set(bytes, i * Integer.BYTES, signature[i]);
+		}
+		return new BytesRef(bytes);
+	}
+
+	/**
+	 * Decodes a signature from {@link #encode(int[])}.
+	 *
+	 * @param bytes the encoded signature
+	 * @return the signature
+	 */
+	public static int[] decode(BytesRef bytes) {
+		int[] signature = new int[bytes.length / Integer.BYTES];
+		for (int i = 0; i < signature.length; i++) {
+			signature[i] = (int) BE_INT.get(bytes.bytes, bytes.offset + i * Integer.BYTES);
+		}
+		return signature;
+	}
+
+	private void update(int[] signature, long shingle) {
+		for (int i = 0; i < seeds.length; i++) {
+			int h = (int) (TermHash.mix(shingle ^ seeds[i]) >>> 32);
+			if (h < signature[i]) {
+				signature[i] = h;
+			}
+		}
+	}
+
+	/**
+	 * Combines the hashes of the last terms, oldest first.
+	 */
+	private long shingle(long[] window, int terms) {
+		int n = Math.min(terms, shingleSize);
+		long h = n;
+		for (int i = terms - n; i < terms; i++) {
+			h = h * 31 + window[i % shingleSize];
+		}
+		return h;
+	}
+}
@@ -0,0 +1,272 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * Keeps the result of analysis on disk, so that re-indexing unchanged text
+ * replays the tokens rather than re-running char filters and analyzers. Each
+ * entry holds the terms, position increments and offsets for one field value,
+ * and is keyed by a SHA-256 hash of the analysis id, the field name and the
+ * text. Changing the analysis id invalidates every entry.
+ *
+ * This class is thread-safe. Entries are written to a temporary file and then
+ * moved into place, so concurrent writers of the same entry do no harm.
+ *
+ */
+public class PreAnalyzedTokenCache {
+
+	private static final int FORMAT_VERSION = 1;
+	private static final String SUFFIX = ".tok";
+
+	private final Path directory;
+	private final Analyzer analyzer;
+	private final String analysisId;
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory  where to keep the entries
+	 * @param analyzer   analyzes text not already in the cache
+	 * @param analysisId identifies the analyzer's configuration; change this
+	 *                   whenever the analysis changes
+	 */
+	public PreAnalyzedTokenCache(Path directory, Analyzer analyzer, String analysisId) {
+		this.directory = directory;
+		this.analyzer = analyzer;
+		this.analysisId = analysisId;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the tokens for the text, replaying them from the cache if present.
+	 * Otherwise, the text is analyzed and the tokens are added to the cache. Each
+	 * call returns a new TokenStream, which may be held until the document is
+	 * indexed.
+	 *
+	 * @param fieldName the field to analyze for
+	 * @param text      the field value
+	 * @return a TokenStream over the analyzed tokens
+	 */
+	public TokenStream tokenStream(String fieldName, String text) {
+		String key = key(fieldName, text);
+		Path entry = directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+		Tokens tokens = read(entry);
+		if (tokens != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			tokens = analyze(fieldName, text);
+			write(entry, tokens);
+		}
+		return new ReplayTokenStream(tokens);
+	}
+
+	/**
+	 * @return how many field values were replayed from the cache
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return how many field values had to be analyzed
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	private String key(String fieldName, String text) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(analysisId.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(fieldName.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(text.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new LuceneTutorialException("SHA-256 is not available.", e);
+		}
+	}
+
+	private Tokens analyze(String fieldName, String text) {
+		List<String> terms = new ArrayList<>();
+		List<int[]> attributes = new ArrayList<>();
+		try (TokenStream ts = analyzer.tokenStream(fieldName, text)) {
+			CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+			PositionIncrementAttribute posInc = ts.addAttribute(PositionIncrementAttribute.class);
+			OffsetAttribute offset = ts.addAttribute(OffsetAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				terms.add(term.toString());
+				attributes.add(
+						new int[] { posInc.getPositionIncrement(), offset.startOffset(), offset.endOffset() });
+			}
+			ts.end();
+			Tokens tokens = new Tokens(terms.size(), offset.endOffset(), posInc.getPositionIncrement());
+			for (int i = 0; i < tokens.count; i++) {
+				int[] a = attributes.get(i);
+				tokens.set(i, terms.get(i), a[0], a[1], a[2]);
+			}
+			return tokens;
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not analyze field: " + fieldName, e);
+		}
+	}
+
+	/**
+	 * Reads an entry, returning null if it does not exist or cannot be read, in
+	 * which case it will be re-analyzed and re-written.
+	 */
+	private Tokens read(Path entry) {
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(entry);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not read cached tokens: " + entry, e);
+		}
+		try {
+			ByteArrayDataInput in = new ByteArrayDataInput(bytes);
+			if (in.readVInt() != FORMAT_VERSION) {
+				return null;
+			}
+			int count = in.readVInt();
+			if (count > bytes.length) {
+				return null;
+			}
+			Tokens tokens = new Tokens(count, in.readVInt(), in.readVInt());
+			int start = 0;
+			for (int i = 0; i < tokens.count; i++) {
+				String term = in.readString();
+				int posInc = in.readVInt();
+				start += in.readZInt();
+				tokens.set(i, term, posInc, start, start + in.readVInt());
+			}
+			return in.eof() ? tokens : null;
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private void write(Path entry, Tokens tokens) {
+		try {
+			Files.createDirectories(entry.getParent());
+			Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+			try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp))) {
+				DataOutput out = new OutputStreamDataOutput(os);
+				out.writeVInt(FORMAT_VERSION);
+				out.writeVInt(tokens.count);
+				out.writeVInt(tokens.finalOffset);
+				out.writeVInt(tokens.finalPositionIncrement);
+				int start = 0;
+				for (int i = 0; i < tokens.count; i++) {
+					out.writeString(tokens.terms[i]);
+					out.writeVInt(tokens.positionIncrements[i]);
+					out.writeZInt(tokens.startOffsets[i] - start);
+					out.writeVInt(tokens.endOffsets[i] - tokens.startOffsets[i]);
+					start = tokens.startOffsets[i];
+				}
+			}
+			Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not write cached tokens: " + entry, e);
+		}
+	}
+
+	private static class Tokens {
+		final int count;
+		final int finalOffset;
+		final int finalPositionIncrement;
+		final String[] terms;
+		final int[] positionIncrements;
+		final int[] startOffsets;
+		final int[] endOffsets;
+
+		Tokens(int count, int finalOffset, int finalPositionIncrement) {
+			this.count = count;
+			this.finalOffset = finalOffset;
+			this.finalPositionIncrement = finalPositionIncrement;
+			this.terms = new String[count];
+			this.positionIncrements = new int[count];
+			this.startOffsets = new int[count];
+			this.endOffsets = new int[count];
+		}
+
+		void set(int i, String term, int positionIncrement, int startOffset, int endOffset) {
+			terms[i] = term;
+			positionIncrements[i] = positionIncrement;
+			startOffsets[i] = startOffset;
+			endOffsets[i] = endOffset;
+		}
+	}
+
+	/**
+	 * Replays tokens without any tokenizing or filtering.
+	 */
+	private static class ReplayTokenStream extends TokenStream {
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private final PositionIncrementAttribute posInc = addAttribute(PositionIncrementAttribute.class);
+		private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+		private final Tokens tokens;
+		private int i;
+
+		ReplayTokenStream(Tokens tokens) {
+			this.tokens = tokens;
+		}
+
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			i = 0;
+		}
+
+		@Override
+		public boolean incrementToken() {
+			if (i >= tokens.count) {
+				return false;
+			}
+			clearAttributes();
+			term.setEmpty().append(tokens.terms[i]);
+			posInc.setPositionIncrement(tokens.positionIncrements[i]);
+			offset.setOffset(tokens.startOffsets[i], tokens.endOffsets[i]);
+			i++;
+			return true;
+		}
+
+		@Override
+		public void end() throws IOException {
+			super.end();
+			posInc.setPositionIncrement(tokens.finalPositionIncrement);
+			offset.setOffset(tokens.finalOffset, tokens.finalOffset);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.Reader;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.charfilter.HTMLStripCharFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.KeywordField;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.extract.ExtractedRecord;
+import j.lucene.tutorial.transform.DocumentTransformer;
+import j.lucene.tutorial.transform.TransformedDocument;
+
+/**
+ * Transforms documents as declared by a {@link DocumentSchema}. The schema is
+ * compiled once, into an array with one producer per field, each of which
+ * already knows which Fields to create. Transforming a document is then a loop
+ * over that array, with no decisions left to make per field.
+ *
+ * Records created by {@link DocumentSchema#newRecord(Object...)} are read by
+ * position. Other documents are read from their map, with one lookup per
+ * declared field; undeclared values are ignored.
+ *
+ * Text is indexed from its String value, so the IndexWriter must be configured
+ * with {@link #indexAnalyzer()}. This transformer holds no per-document state,
+ * so it is safe to use concurrently, and transformed documents may be buffered
+ * before indexing.
+ *
+ */
+public class SchemaDocumentTransformer implements DocumentTransformer, AutoCloseable {
+
+	private final FieldProducer[] producers;
+	private final List<String> fieldNames;
+	private final int fieldsPerDocument;
+	private final Analyzer defaultAnalyzer;
+	private final Analyzer indexAnalyzer;
+
+	/**
+	 * Compiles the schema.
+	 *
+	 * @param schema the schema
+	 */
+	public SchemaDocumentTransformer(DocumentSchema schema) {
+		this.fieldNames = schema.fieldNames();
+		this.producers = new FieldProducer[fieldNames.size()];
+		this.defaultAnalyzer = new StandardAnalyzer();
+		Map<String, Analyzer> analyzers = new HashMap<>();
+		Set<String> htmlFieldnames = new HashSet<>();
+		int fieldCount = 0;
+		for (int i = 0; i < producers.length; i++) {
+			DocumentSchema.FieldDefinition f = schema.fields().get(i);
+			producers[i] = compile(f);
+			fieldCount += f.options().size();
+			if (f.type().analyzed()) {
+				analyzers.put(f.name(), f.analyzer() == null ? defaultAnalyzer : f.analyzer());
+				if (f.type() == DocumentSchema.FieldType.HTML_TEXT) {
+					htmlFieldnames.add(f.name());
+				}
+			}
+		}
+		this.fieldsPerDocument = fieldCount;
+		this.indexAnalyzer = new SchemaAnalyzerWrapper(analyzers, htmlFieldnames, defaultAnalyzer);
+	}
+
+	/**
+	 * The Analyzer to configure the IndexWriter with. It analyzes each text field
+	 * as declared, removing markup from HTML, and other fields with
+	 * StandardAnalyzer. It is closed along with this transformer.
+	 *
+	 * @return the analyzer
+	 */
+	public Analyzer indexAnalyzer() {
+		return indexAnalyzer;
+	}
+
+	@Override
+	public TransformedDocument transformExtractedDocument(ExtractedDocument in) {
+		List<Field> luceneFields = new ArrayList<>(fieldsPerDocument);
+		if (in instanceof ExtractedRecord r && r.getFieldNames() == fieldNames) {
+			for (int i = 0; i < producers.length; i++) {
+				Object value = r.getValue(i);
+				if (value != null) {
+					producers[i].addFields(value, luceneFields);
+				}
+			}
+		} else {
+			Map<String, Object> content = in.getContentByFieldname();
+			for (int i = 0; i < producers.length; i++) {
+				Object value = content.get(fieldNames.get(i));
+				if (value != null) {
+					producers[i].addFields(value, luceneFields);
+				}
+			}
+		}
+		return new TransformedDocument(luceneFields);
+	}
+
+	@Override
+	public void close() {
+		indexAnalyzer.close();
+		defaultAnalyzer.close();
+	}
+
+	/**
+	 * Decides, once, which Fields a declared field produces.
+	 */
+	private static FieldProducer compile(DocumentSchema.FieldDefinition f) {
+		String name = f.name();
+		boolean indexed = f.has(DocumentSchema.Option.INDEXED);
+		boolean stored = f.has(DocumentSchema.Option.STORED);
+		boolean docValues = f.has(DocumentSchema.Option.DOC_VALUES);
+		switch (f.type()) {
+		case INT -> {
+			List<FieldPart<Integer>> ip = new ArrayList<>(3);
+			if (indexed) {
+				ip.add((v, l) -> l.add(new IntPoint(name, v)));
+			}
+			if (stored) {
+				ip.add((v, l) -> l.add(new StoredField(name, v)));
+			}
+			if (docValues) {
+				ip.add((v, l) -> l.add(new NumericDocValuesField(name, v)));
+			}
+			return producer(v -> (Integer) v, ip);
+		}
+		case LONG, TIMESTAMP -> {
+			List<FieldPart<Long>> lp = new ArrayList<>(3);
+			if (indexed) {
+				lp.add((v, l) -> l.add(new LongPoint(name, v)));
+			}
+			if (stored) {
+				lp.add((v, l) -> l.add(new StoredField(name, v)));
+			}
+			if (docValues) {
+				lp.add((v, l) -> l.add(new NumericDocValuesField(name, v)));
+			}
+			if (f.type() == DocumentSchema.FieldType.TIMESTAMP) {
+				return producer(v -> ((ZonedDateTime) v).toInstant().toEpochMilli(), lp);
+			}
+			return producer(v -> (Long) v, lp);
+		}
+		case STRING -> {
+			List<FieldPart<String>> sp = new ArrayList<>(3);
+			Store store = stored ? Store.YES : Store.NO;
+			if (indexed) {
+				sp.add((v, l) -> l.add(new StringField(name, v, store)));
+			} else if (stored) {
+				sp.add((v, l) -> l.add(new StoredField(name, v)));
+			}
+			if (docValues) {
+				sp.add((v, l) -> l.add(new SortedDocValuesField(name, new BytesRef(v))));
+			}
+			return producer(Object::toString, sp);
+		}
+		case KEYWORDS -> {
+			Store store = stored ? Store.YES : Store.NO;
+			FieldPart<String> kp;
+			if (indexed && docValues) {
+				kp = (v, l) -> l.add(new KeywordField(name, v, store));
+			} else {
+				List<FieldPart<String>> each = new ArrayList<>(3);
+				if (indexed) {
+					each.add((v, l) -> l.add(new StringField(name, v, store)));
+				} else if (stored) {
+					each.add((v, l) -> l.add(new StoredField(name, v)));
+				}
+				if (docValues) {
+					each.add((v, l) -> l.add(new SortedSetDocValuesField(name, new BytesRef(v))));
+				}
+				kp = combine(each);
+			}
+			return (v, l) -> {
+				for (String str : (String[]) v) {
+					kp.add(str.trim(), l);
+				}
+			};
+		}
+		case TEXT, HTML_TEXT -> {
+			List<FieldPart<String>> tp = new ArrayList<>(2);
+			if (indexed) {
+				tp.add((v, l) -> l.add(new TextField(name, v, Store.NO)));
+			}
+			if (stored) {
+				tp.add((v, l) -> l.add(new StoredField(name, v)));
+			}
+			return producer(v -> (String) v, tp);
+		}
+		default -> throw new LuceneTutorialException("Unsupported field type: " + f.type());
+		}
+	}
+
+	private static <T> FieldProducer producer(Function<Object, T> convert, List<FieldPart<T>> parts) {
+		FieldPart<T> combined = combine(parts);
+		return (v, l) -> combined.add(convert.apply(v), l);
+	}
+
+	private static <T> FieldPart<T> combine(List<FieldPart<T>> parts) {
+		if (parts.size() == 1) {
+			return parts.get(0);
+		}
+		List<FieldPart<T>> copy = List.copyOf(parts);
+		return (v, l) -> {
+			for (FieldPart<T> p : copy) {
+				p.add(v, l);
+			}
+		};
+	}
+
+	/**
+	 * Adds all the Fields for one declared field's value.
+	 */
+	private interface FieldProducer {
+		void addFields(Object value, List<Field> luceneFields);
+	}
+
+	/**
+	 * Adds one kind of Field for a converted value.
+	 */
+	private interface FieldPart<T> {
+		void add(T value, List<Field> luceneFields);
+	}
+
+	/**
+	 * Analyzes each text field with its own Analyzer, removing markup first from
+	 * HTML fields.
+	 */
+	private static class SchemaAnalyzerWrapper extends AnalyzerWrapper {
+		private final Map<String, Analyzer> analyzers;
+		private final Set<String> htmlFieldnames;
+		private final Analyzer defaultAnalyzer;
+
+		SchemaAnalyzerWrapper(Map<String, Analyzer> analyzers, Set<String> htmlFieldnames, Analyzer defaultAnalyzer) {
+			super(PER_FIELD_REUSE_STRATEGY);
+			this.analyzers = analyzers;
+			this.htmlFieldnames = htmlFieldnames;
+			this.defaultAnalyzer = defaultAnalyzer;
+		}
+
+		@Override
+		protected Analyzer getWrappedAnalyzer(String fieldName) {
+			return analyzers.getOrDefault(fieldName, defaultAnalyzer);
+		}
+
+		@Override
+		protected Reader wrapReader(String fieldName, Reader reader) {
+			return htmlFieldnames.contains(fieldName) ? new HTMLStripCharFilter(reader) : reader;
+		}
+	}
+}
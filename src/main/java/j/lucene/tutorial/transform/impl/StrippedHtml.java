@@ -0,0 +1,87 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+
+import j.lucene.tutorial.LuceneTutorialException;
+
+/**
+ * The text of an HTML document, with markup removed by HTMLStripCharFilter,
+ * and optionally a compact mapping from offsets in the text back to offsets in
+ * the original HTML.
+ *
+ * The mapping is a list of points where the difference between the two offsets
+ * changes, encoded as variable-length ints. It can be stored alongside the text
+ * and used with {@link #originalOffset(BytesRef, int)}.
+ *
+ * The transformer itself strips into a re-usable buffer per thread.
+ *
+ */
+public final class StrippedHtml {
+
+	private final String text;
+	private final BytesRef offsets;
+
+	private StrippedHtml(String text, BytesRef offsets) {
+		this.text = text;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Removes the markup from the HTML.
+	 *
+	 * @param html        the original HTML
+	 * @param withOffsets whether to also build the offset mapping
+	 * @return the stripped text
+	 */
+	public static StrippedHtml strip(String html, boolean withOffsets) {
+		HtmlStripper stripper = new HtmlStripper();
+		stripper.strip(html);
+		return new StrippedHtml(stripper.text(), withOffsets ? stripper.offsets() : null);
+	}
+
+	/**
+	 * Finds the offset in the original HTML that corresponds to an offset in the
+	 * stripped text.
+	 *
+	 * @param offsets        an encoded mapping, from {@link #offsets()}
+	 * @param strippedOffset an offset in the stripped text
+	 * @return the offset in the original HTML
+	 */
+	public static int originalOffset(BytesRef offsets, int strippedOffset) {
+		ByteArrayDataInput in = new ByteArrayDataInput(offsets.bytes, offsets.offset, offsets.length);
+		try {
+			int points = in.readVInt();
+			int point = 0;
+			int diff = 0;
+			for (int i = 0; i < points; i++) {
+				int nextPoint = point + in.readVInt();
+				if (nextPoint > strippedOffset) {
+					break;
+				}
+				point = nextPoint;
+				diff += in.readZInt();
+			}
+			return strippedOffset + diff;
+		} catch (IOException e) {
+			throw new LuceneTutorialException("Could not read offsets.", e);
+		}
+	}
+
+	/**
+	 * @return the text, without markup
+	 */
+	public String text() {
+		return text;
+	}
+
+	/**
+	 * @return the encoded offset mapping, or null if it was not requested
+	 */
+	public BytesRef offsets() {
+		return offsets;
+	}
+
+}
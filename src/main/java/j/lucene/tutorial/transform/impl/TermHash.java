@@ -0,0 +1,42 @@
+package j.lucene.tutorial.transform.impl;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Hashes analyzed terms to 64 bits, for {@link MinHashSignature} and
+ * {@link FeatureHashingEmbedder}.
+ *
+ */
+final class TermHash {
+
+	private TermHash() {
+	}
+
+	/**
+	 * FNV-1a over the term's chars, then {@link #mix(long)}, so every bit of the
+	 * hash depends on every char.
+	 * 
+	 * @param term the term
+	 * @return the hash
+	 */
+	static long hash(CharTermAttribute term) {
+		long h = 0xCBF29CE484222325L;
+		char[] buffer = term.buffer();
+		for (int i = 0; i < term.length(); i++) {
+			h = (h ^ buffer[i]) * 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * The finalizer of SplitMix64, which spreads every input bit over the output.
+	 * 
+	 * @param z the value
+	 * @return the mixed value
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,34 @@
+package j.lucene.tutorial.transform.impl;
+
+import org.apache.lucene.index.VectorSimilarityFunction;
+
+/**
+ * Computes a fixed-dimension vector from plain text, for approximate nearest
+ * neighbor search. Texts with similar meaning, by whatever measure the
+ * implementation uses, should get vectors that are close under
+ * {@link #similarity()}. The same embedder must be used to index documents and
+ * to embed queries.
+ *
+ * Implementations must be thread-safe.
+ *
+ */
+public interface TextEmbedder {
+
+	/**
+	 * @return the length of every vector
+	 */
+	int dimension();
+
+	/**
+	 * @return how vectors are compared
+	 */
+	VectorSimilarityFunction similarity();
+
+	/**
+	 * Embeds the text.
+	 *
+	 * @param text plain text, without markup
+	 * @return the vector, or null if the text has nothing to embed
+	 */
+	float[] embed(String text);
+}
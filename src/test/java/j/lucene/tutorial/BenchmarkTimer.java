@@ -0,0 +1,134 @@
+package j.lucene.tutorial;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.TestReporter;
+
+/**
+ * Times a task for the benchmarks. These are tests tagged "benchmark", which
+ * the build leaves out; run them with
+ * {@code mvn test -Dgroups=benchmark -DexcludedTestGroups=}. They publish
+ * their numbers through the TestReporter rather than asserting on them, as
+ * timings depend on the machine. Allocation is measured with the per-thread
+ * counters of HotSpot's ThreadMXBean, so only counts the calling thread.
+ *
+ */
+public final class BenchmarkTimer {
+
+	/**
+	 * Each task is run at least this many times first, so the JIT has compiled
+	 * it.
+	 */
+	public static final int WARMUPS = 10;
+
+	/**
+	 * And for at least this long, as on few cores the compiler threads compete
+	 * with the task for a while.
+	 */
+	public static final long WARMUP_NANOS = 5_000_000_000L;
+
+	/**
+	 * Then it is timed this many times, and the fastest run is taken.
+	 */
+	public static final int RUNS = 5;
+
+	/**
+	 * A unit of work to time.
+	 */
+	@FunctionalInterface
+	public interface Task {
+		/**
+		 * Does the work once.
+		 *
+		 * @return how many operations were done, e.g. documents extracted
+		 * @throws Exception if the work fails
+		 */
+		long run() throws Exception;
+	}
+
+	private BenchmarkTimer() {
+	}
+
+	/**
+	 * Times a task, after warming it up.
+	 *
+	 * @param task the task
+	 * @return the operations per second of the fastest run
+	 * @throws Exception if the task fails
+	 */
+	public static double perSecond(Task task) throws Exception {
+		warmUp(task);
+		double best = 0;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			long ops = task.run();
+			best = Math.max(best, ops / ((System.nanoTime() - start) / 1e9));
+		}
+		return best;
+	}
+
+	/**
+	 * Times a task, and publishes the rate as e.g. "12,345 docs/sec".
+	 *
+	 * @param reporter the test's reporter
+	 * @param name     what was timed
+	 * @param unit     what the operations are, e.g. "docs"
+	 * @param task     the task
+	 * @return the operations per second of the fastest run
+	 * @throws Exception if the task fails
+	 */
+	public static double report(TestReporter reporter, String name, String unit, Task task) throws Exception {
+		double perSecond = perSecond(task);
+		reporter.publishEntry(name, String.format("%,.0f %s/sec", perSecond, unit));
+		return perSecond;
+	}
+
+	private static void warmUp(Task task) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < WARMUPS || System.nanoTime() - start < WARMUP_NANOS; i++) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Measures what a task allocates on the calling thread, after warming it up.
+	 *
+	 * @param task the task
+	 * @return the fewest bytes allocated per operation in any run, or -1 if the
+	 *         JVM does not count allocations
+	 * @throws Exception if the task fails
+	 */
+	public static double bytesPerOperation(Task task) throws Exception {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean mx)
+				|| !mx.isThreadAllocatedMemorySupported()) {
+			return -1;
+		}
+		mx.setThreadAllocatedMemoryEnabled(true);
+		warmUp(task);
+		long thread = Thread.currentThread().getId();
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = mx.getThreadAllocatedBytes(thread);
+			long ops = task.run();
+			best = Math.min(best, (mx.getThreadAllocatedBytes(thread) - start) / (double) ops);
+		}
+		return best;
+	}
+
+	/**
+	 * Measures what a task allocates, and publishes it as e.g. "1,234 bytes/doc".
+	 *
+	 * @param reporter the test's reporter
+	 * @param name     what was measured
+	 * @param unit     what one operation is, e.g. "doc"
+	 * @param task     the task
+	 * @return the bytes allocated per operation, or -1 if not known
+	 * @throws Exception if the task fails
+	 */
+	public static double reportAllocation(TestReporter reporter, String name, String unit, Task task)
+			throws Exception {
+		double bytes = bytesPerOperation(task);
+		reporter.publishEntry(name, bytes < 0 ? "not measured" : String.format("%,.0f bytes/%s", bytes, unit));
+		return bytes;
+	}
+}
@@ -0,0 +1,75 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import j.lucene.tutorial.BenchmarkTimer;
+import j.lucene.tutorial.extract.DocumentExtractor;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+/**
+ * Extracts a Bible-sized archive by streaming it from start to finish, and
+ * through the central directory, both sequentially and in parallel, and
+ * reports chapters per second. The parallel stream can only gain with more
+ * than one processor. Also compares eager with lazy text, both for a pass that
+ * reads the text and for one that only needs the other fields.
+ */
+@Tag("benchmark")
+class DocumentExtractorBibleZipFileImplBenchmarkTest {
+
+	private Path tempDir;
+	private Path zipPath;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.zipPath = tempDir.resolve("large.zip");
+		SyntheticBibleZip.writeLarge(zipPath, 1189, 26);
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test(TestReporter reporter) throws Exception {
+		reporter.publishEntry("processors", String.valueOf(Runtime.getRuntime().availableProcessors()));
+		DocumentExtractorBibleZipImpl streaming = new DocumentExtractorBibleZipImpl();
+		DocumentExtractorBibleZipFileImpl split = new DocumentExtractorBibleZipFileImpl();
+		BenchmarkTimer.report(reporter, "streaming", "docs", () -> extract(streaming, false));
+		BenchmarkTimer.report(reporter, "central directory, sequential", "docs", () -> extract(split, false));
+		BenchmarkTimer.report(reporter, "central directory, parallel", "docs", () -> extract(split, true));
+	}
+
+	@Test
+	void testLazyText(TestReporter reporter) throws Exception {
+		DocumentExtractorBibleZipFileImpl eager = new DocumentExtractorBibleZipFileImpl(false);
+		DocumentExtractorBibleZipFileImpl lazy = new DocumentExtractorBibleZipFileImpl(true);
+		BenchmarkTimer.report(reporter, "eager, with text", "docs", () -> extract(eager, false));
+		BenchmarkTimer.report(reporter, "lazy, with text", "docs", () -> extract(lazy, false));
+		BenchmarkTimer.report(reporter, "eager, without text", "docs", () -> count(eager));
+		BenchmarkTimer.report(reporter, "lazy, without text", "docs", () -> count(lazy));
+	}
+
+	private long count(DocumentExtractor extractor) {
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zipPath)) {
+			return s.filter(d -> d.getContentByFieldname().get("synopsis") != null).count();
+		}
+	}
+
+	private long extract(DocumentExtractor extractor, boolean parallel) {
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zipPath)) {
+			return (parallel ? s.parallel() : s).filter(d -> d.getContentByFieldname().get("text") != null).count();
+		}
+	}
+}
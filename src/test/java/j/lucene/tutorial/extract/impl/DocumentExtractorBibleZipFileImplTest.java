@@ -0,0 +1,90 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+class DocumentExtractorBibleZipFileImplTest {
+
+	private DocumentExtractorBibleZipFileImpl cii;
+	private Path zipPath;
+
+	@BeforeEach
+	void before() {
+		this.cii = new DocumentExtractorBibleZipFileImpl();
+
+		this.zipPath = Paths.get(".").toAbsolutePath().normalize().resolve("src").resolve("test").resolve("resources")
+				.resolve("kj_new.zip");
+	}
+
+	@Test
+	void testSized() {
+		try (Stream<ExtractedDocument> s = cii.documentsFromFilePath(zipPath)) {
+			Spliterator<ExtractedDocument> spliterator = s.spliterator();
+			assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED), "The stream should know its size.");
+			assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED), "Splits should know their size.");
+			assertEquals(1189, spliterator.estimateSize(), "The size should be exact, one per Bible chapter.");
+
+			Spliterator<ExtractedDocument> prefix = spliterator.trySplit();
+			assertEquals(1189, prefix.estimateSize() + spliterator.estimateSize(),
+					"Splitting should divide the chapters between the two halves.");
+		}
+	}
+
+	@Test
+	void testParallelMatchesSequential() {
+		Set<String> sequential;
+		try (Stream<ExtractedDocument> s = new DocumentExtractorBibleZipImpl().documentsFromFilePath(zipPath)) {
+			sequential = s.map(this::bookChapterSynopsis).collect(Collectors.toSet());
+		}
+		Set<String> parallel;
+		try (Stream<ExtractedDocument> s = cii.documentsFromFilePath(zipPath)) {
+			parallel = s.parallel().map(this::bookChapterSynopsis).collect(Collectors.toSet());
+		}
+		assertEquals(1189, parallel.size(), "There should be 1,189 distinct chapters.");
+		assertEquals(sequential, parallel, "Both extractors should produce the same documents.");
+	}
+
+	@Test
+	void testLazyText() {
+		List<String> eager;
+		try (Stream<ExtractedDocument> s = cii.documentsFromFilePath(zipPath)) {
+			eager = s.limit(100).map(this::bookChapterSynopsisText).toList();
+		}
+		List<ExtractedDocument> lazyDocs;
+		try (Stream<ExtractedDocument> s = new DocumentExtractorBibleZipFileImpl(true).documentsFromFilePath(zipPath)) {
+			lazyDocs = s.toList();
+			assertEquals(eager, lazyDocs.stream().limit(100).map(this::bookChapterSynopsisText).toList(),
+					"The lazy text should be the same as the eager text, when requested.");
+		}
+		assertEquals(50l, lazyDocs.stream().filter(d -> "Genesis".equals(d.getContentByFieldname().get("book")))
+				.count(), "The other fields should be available without reading the text.");
+		assertTrue(lazyDocs.get(500).getContentByFieldname().containsKey("text"),
+				"The document should have a text field.");
+		assertThrows(LuceneTutorialException.class, () -> lazyDocs.get(500).getContentByFieldname().get("text"),
+				"The text is not read until requested, by which time the archive is closed.");
+	}
+
+	private String bookChapterSynopsisText(ExtractedDocument doc) {
+		return bookChapterSynopsis(doc) + "-" + doc.getContentByFieldname().get("text");
+	}
+
+	private String bookChapterSynopsis(ExtractedDocument doc) {
+		return doc.getContentByFieldname().get("book") + "-" + doc.getContentByFieldname().get("chapter") + "-"
+				+ doc.getContentByFieldname().get("synopsis");
+	}
+}
@@ -0,0 +1,251 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+class DocumentExtractorBibleZipIncrementalImplTest {
+
+	private Path tempDir;
+	private Path zipPath;
+	private Path manifestPath;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.zipPath = tempDir.resolve("synthetic.zip");
+		this.manifestPath = tempDir.resolve("manifest.tsv");
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 5; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "original"));
+		}
+		SyntheticBibleZip.write(zipPath, htmlByChapter);
+
+		DocumentExtractorBibleZipIncrementalImpl first = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		assertEquals(Set.of(1, 2, 3, 4, 5), chapters(first),
+				"With no manifest, every chapter should be extracted.");
+		assertTrue(first.documentsToDelete().isEmpty(), "With no manifest, there is nothing to delete.");
+		first.saveManifest();
+
+		DocumentExtractorBibleZipIncrementalImpl unchanged = new DocumentExtractorBibleZipIncrementalImpl(
+				manifestPath);
+		assertTrue(chapters(unchanged).isEmpty(), "Nothing has changed, so nothing should be extracted.");
+		assertTrue(unchanged.documentsToDelete().isEmpty(), "Nothing has changed, so nothing should be deleted.");
+
+		htmlByChapter.put(2, SyntheticBibleZip.chapterHtml("Genesis, Chapter 2", "edited"));
+		htmlByChapter.put(3, SyntheticBibleZip.chapterHtml("Genesis, Chapter 3", "edited"));
+		htmlByChapter.remove(4);
+		htmlByChapter.put(6, SyntheticBibleZip.chapterHtml("Genesis, Chapter 6", "added"));
+		SyntheticBibleZip.write(zipPath, htmlByChapter);
+
+		DocumentExtractorBibleZipIncrementalImpl delta = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		assertEquals(Set.of(2, 3, 6), chapters(delta), "Only the changed and added chapters should be extracted.");
+		assertEquals(Set.of(2, 3, 4),
+				delta.documentsToDelete().stream().map(d -> d.getContentByFieldname().get("chapter"))
+						.collect(Collectors.toSet()),
+				"The prior versions of changed chapters, and the removed chapter, should be deleted.");
+		for (ExtractedDocument d : delta.documentsToDelete()) {
+			assertEquals("Genesis", d.getContentByFieldname().get("book"), "Deletes should identify the book.");
+			assertEquals("synthetic.zip", d.getContentByFieldname().get("source"),
+					"Deletes should identify the source.");
+		}
+		delta.saveManifest();
+
+		assertEquals(Set.of("kj/01/1.htm", "kj/01/2.htm", "kj/01/3.htm", "kj/01/5.htm", "kj/01/6.htm"),
+				ExtractionManifest.read(manifestPath).getEntriesByName("synthetic.zip").keySet(),
+				"The manifest should list the current chapters.");
+	}
+
+	/**
+	 * Once a book is gone, the archive's index no longer names it, so the
+	 * deletes take the book from the manifest.
+	 */
+	@Test
+	void testBookRemoved() throws Exception {
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 3; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "original"));
+		}
+		SyntheticBibleZip.write(zipPath, htmlByChapter);
+		DocumentExtractorBibleZipIncrementalImpl first = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		chapters(first);
+		first.saveManifest();
+		assertTrue(Files.readAllLines(manifestPath).stream().allMatch(l -> l.endsWith("\tGenesis\tsynthetic.zip")),
+				"The manifest should record each chapter's book.");
+
+		SyntheticBibleZip.write(zipPath, Map.of(), "");
+		DocumentExtractorBibleZipIncrementalImpl delta = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		assertTrue(chapters(delta).isEmpty(), "There is nothing left to extract.");
+		assertEquals(Set.of(1, 2, 3),
+				delta.documentsToDelete().stream().map(d -> d.getContentByFieldname().get("chapter"))
+						.collect(Collectors.toSet()),
+				"Every chapter of the removed book should be deleted.");
+		for (ExtractedDocument d : delta.documentsToDelete()) {
+			assertEquals("Genesis", d.getContentByFieldname().get("book"), "Deletes should identify the book.");
+		}
+	}
+
+	/**
+	 * An older manifest has no book or archive columns, and is still read. Its
+	 * entries are taken to be those of the archive next extracted, and are
+	 * replaced by that archive's entries when the manifest is saved.
+	 */
+	@Test
+	void testManifestWithoutBookOrSource() throws Exception {
+		Files.writeString(manifestPath, "kj/01/1.htm\t1\t2\t3\nkj/01/2.htm\t4\t5\t6\tGenesis\n");
+		Map<String, ExtractionManifest.Entry> entries = ExtractionManifest.read(manifestPath).getEntriesByName(null);
+		assertNull(entries.get("kj/01/1.htm").getBook(), "A line without a book should have none.");
+		assertEquals(new ExtractionManifest.Entry(1, 2, 3), entries.get("kj/01/1.htm"),
+				"The version should be read.");
+		assertEquals("Genesis", entries.get("kj/01/2.htm").getBook(), "The book should be read.");
+
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 3; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "original"));
+		}
+		SyntheticBibleZip.write(zipPath, htmlByChapter);
+		DocumentExtractorBibleZipIncrementalImpl first = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		chapters(first);
+		first.saveManifest();
+		List<String> legacy = Files.readAllLines(manifestPath).stream()
+				.map(l -> l.substring(0, l.lastIndexOf('\t', l.lastIndexOf('\t') - 1))).toList();
+		Files.write(manifestPath, legacy);
+
+		DocumentExtractorBibleZipIncrementalImpl unchanged = new DocumentExtractorBibleZipIncrementalImpl(
+				manifestPath);
+		assertTrue(chapters(unchanged).isEmpty(), "The old manifest's entries should be used.");
+		unchanged.saveManifest();
+		assertEquals(Set.of("synthetic.zip"), ExtractionManifest.read(manifestPath).getEntriesBySource().keySet(),
+				"Once saved, the entries should belong to the archive.");
+	}
+
+	/**
+	 * Archives sharing a manifest keep their own entries, even where the entry
+	 * names are the same.
+	 */
+	@Test
+	void testSharedManifest() throws Exception {
+		Path archives = Files.createDirectory(tempDir.resolve("archives"));
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 3; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "original"));
+		}
+		SyntheticBibleZip.write(archives.resolve("a.zip"), htmlByChapter);
+		SyntheticBibleZip.write(archives.resolve("b.zip"), htmlByChapter);
+
+		DocumentExtractorBibleZipIncrementalImpl first = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		assertEquals(6, sourcesAndChapters(first, archives).size(), "Every chapter of both should be extracted.");
+		first.saveManifest();
+		assertEquals(Set.of("a.zip", "b.zip"), ExtractionManifest.read(manifestPath).getEntriesBySource().keySet(),
+				"Both archives should be in the manifest.");
+
+		htmlByChapter.put(2, SyntheticBibleZip.chapterHtml("Genesis, Chapter 2", "edited"));
+		SyntheticBibleZip.write(archives.resolve("b.zip"), htmlByChapter);
+		DocumentExtractorBibleZipIncrementalImpl delta = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		assertEquals(Set.of("b.zip 2"), sourcesAndChapters(delta, archives),
+				"Only the chapter changed in one archive should be extracted.");
+		assertEquals(List.of("b.zip 2"),
+				delta.documentsToDelete().stream().map(d -> d.getContentByFieldname().get("source") + " "
+						+ d.getContentByFieldname().get("chapter")).toList(),
+				"Only that chapter's prior version should be deleted.");
+		delta.saveManifest();
+
+		DocumentExtractorBibleZipIncrementalImpl onlyA = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		assertTrue(chapters(onlyA, archives.resolve("a.zip")).isEmpty(), "Nothing has changed in the one archive.");
+		onlyA.saveManifest();
+		assertEquals(3, ExtractionManifest.read(manifestPath).getEntriesByName("b.zip").size(),
+				"Saving one archive should keep the other's entries.");
+	}
+
+	/**
+	 * Resuming skips every chapter up to the last one extracted, in archive
+	 * order, even if that chapter would not have been extracted again, and
+	 * does not delete the prior versions of those chapters.
+	 */
+	@Test
+	void testResume() throws Exception {
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 5; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "original"));
+		}
+		SyntheticBibleZip.write(zipPath, htmlByChapter);
+
+		DocumentExtractorBibleZipFileImpl full = new DocumentExtractorBibleZipFileImpl();
+		try (Stream<ExtractedDocument> s = full.documentsFromFilePath(zipPath)) {
+			assertEquals(List.of("kj/01/1.htm", "kj/01/2.htm", "kj/01/3.htm", "kj/01/4.htm", "kj/01/5.htm"),
+					s.map(d -> ((ExtractedChapter) d).getEntryName()).toList(),
+					"Each chapter should know its entry name.");
+		}
+		try (Stream<ExtractedDocument> s = full.documentsFromFilePath(zipPath, "kj/01/3.htm")) {
+			assertEquals(List.of(4, 5), s.map(d -> d.getContentByFieldname().get("chapter")).toList(),
+					"Only the chapters after the last one extracted should be extracted.");
+		}
+		try (Stream<ExtractedDocument> s = full.documentsFromFilePath(zipPath, "kj/01/5.htm")) {
+			assertEquals(0, s.count(), "After the last chapter, there is nothing left to extract.");
+		}
+		assertThrows(LuceneTutorialException.class, () -> full.documentsFromFilePath(zipPath, "kj/01/9.htm"),
+				"A chapter that is not in the archive cannot be resumed after.");
+
+		DocumentExtractorBibleZipIncrementalImpl first = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		chapters(first);
+		first.saveManifest();
+		htmlByChapter.put(2, SyntheticBibleZip.chapterHtml("Genesis, Chapter 2", "edited"));
+		htmlByChapter.put(5, SyntheticBibleZip.chapterHtml("Genesis, Chapter 5", "edited"));
+		SyntheticBibleZip.write(zipPath, htmlByChapter);
+		DocumentExtractorBibleZipIncrementalImpl delta = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		try (Stream<ExtractedDocument> s = delta.documentsFromFilePath(zipPath, "kj/01/3.htm")) {
+			assertEquals(List.of(5), s.map(d -> d.getContentByFieldname().get("chapter")).toList(),
+					"An unchanged chapter can be resumed after.");
+		}
+		assertEquals(List.of(5),
+				delta.documentsToDelete().stream().map(d -> d.getContentByFieldname().get("chapter")).toList(),
+				"A changed chapter before the resume point was already re-loaded, so should not be deleted again.");
+	}
+
+	private Set<Object> chapters(DocumentExtractorBibleZipIncrementalImpl extractor) {
+		return chapters(extractor, zipPath);
+	}
+
+	private Set<Object> chapters(DocumentExtractorBibleZipIncrementalImpl extractor, Path zip) {
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+			return s.map(d -> d.getContentByFieldname().get("chapter")).collect(Collectors.toSet());
+		}
+	}
+
+	private Set<String> sourcesAndChapters(DocumentExtractorBibleZipIncrementalImpl extractor, Path directory) {
+		DocumentExtractorMultiArchiveImpl multi = new DocumentExtractorMultiArchiveImpl(extractor, "*.zip", 2, 10);
+		try (Stream<ExtractedDocument> s = multi.documentsFromFilePath(directory)) {
+			return s.map(d -> d.getContentByFieldname().get("source") + " " + d.getContentByFieldname().get("chapter"))
+					.collect(Collectors.toSet());
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+class DocumentExtractorBibleZipMappedImplTest {
+
+	private DocumentExtractorBibleZipMappedImpl cii;
+	private Path zipPath;
+	private Path tempDir;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.cii = new DocumentExtractorBibleZipMappedImpl();
+
+		this.zipPath = Paths.get(".").toAbsolutePath().normalize().resolve("src").resolve("test").resolve("resources")
+				.resolve("kj_new.zip");
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void testMatchesStreamingExtractor() {
+		List<String> expected;
+		try (Stream<ExtractedDocument> s = new DocumentExtractorBibleZipImpl().documentsFromFilePath(zipPath)) {
+			expected = s.map(this::withoutTimestamp).toList();
+		}
+		List<String> actual;
+		try (Stream<ExtractedDocument> s = cii.documentsFromFilePath(zipPath)) {
+			actual = s.parallel().map(this::withoutTimestamp).toList();
+		}
+		assertEquals(1189, actual.size(), "There should be 1,189 documents corresponding to each Bible chapter.");
+		assertEquals(expected, actual, "The mapped extractor should produce the same documents, in the same order.");
+	}
+
+	@Test
+	void testStoredAndDeflatedEntries() throws Exception {
+		Path synthetic = tempDir.resolve("synthetic.zip");
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 4; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter,
+					"<span>In the beginning</span>"));
+		}
+		SyntheticBibleZip.write(synthetic, htmlByChapter);
+
+		List<ExtractedDocument> docs;
+		try (Stream<ExtractedDocument> s = cii.documentsFromFilePath(synthetic)) {
+			docs = s.toList();
+		}
+		assertEquals(4, docs.size(), "There should be a document for each chapter.");
+		for (int i = 0; i < docs.size(); i++) {
+			Map<String, Object> m = docs.get(i).getContentByFieldname();
+			String msg = i + ": both stored and deflated entries should be read";
+			assertEquals(i + 1, m.get("chapter"), msg);
+			assertEquals("Genesis", m.get("book"), msg);
+			assertEquals("Genesis", m.get("synopsis"), msg);
+			assertEquals("synthetic.zip", m.get("source"), msg);
+			assertEquals(htmlByChapter.get(i + 1), m.get("text"), msg);
+		}
+	}
+
+	/**
+	 * A stored entry is not inflated, so only its CRC-32 shows that it has been
+	 * changed.
+	 */
+	@Test
+	void testCorruptEntry() throws Exception {
+		Path synthetic = tempDir.resolve("synthetic.zip");
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 2; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter,
+					"<span>In the beginning</span>"));
+		}
+		SyntheticBibleZip.write(synthetic, htmlByChapter);
+		String zip = new String(Files.readAllBytes(synthetic), StandardCharsets.ISO_8859_1);
+		// Only the stored chapter 2 has its text in the clear.
+		Files.write(synthetic, zip.replace("beginning", "Beginning").getBytes(StandardCharsets.ISO_8859_1));
+
+		LuceneTutorialException lte = assertThrows(LuceneTutorialException.class, () -> {
+			try (Stream<ExtractedDocument> s = cii.documentsFromFilePath(synthetic)) {
+				s.toList();
+			}
+		}, "A changed entry should not be extracted.");
+		assertTrue(lte.getMessage().contains("kj/01/2.htm"), "The corrupt entry should be named: " + lte.getMessage());
+	}
+
+	private String withoutTimestamp(ExtractedDocument doc) {
+		Map<String, Object> m = new TreeMap<>(doc.getContentByFieldname());
+		m.remove("add_timestamp");
+		m.put("keywords", String.join("|", (String[]) m.get("keywords")));
+		return m.toString();
+	}
+}
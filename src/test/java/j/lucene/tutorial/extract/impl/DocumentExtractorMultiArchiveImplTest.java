@@ -0,0 +1,97 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+class DocumentExtractorMultiArchiveImplTest {
+
+	private Path tempDir;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 50; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "text"));
+		}
+		for (int i = 0; i < 6; i++) {
+			SyntheticBibleZip.write(tempDir.resolve("archive" + i + ".zip"), htmlByChapter);
+		}
+		Files.writeString(tempDir.resolve("notes.txt"), "not an archive");
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() {
+		DocumentExtractorMultiArchiveImpl extractor = new DocumentExtractorMultiArchiveImpl(
+				new DocumentExtractorBibleZipFileImpl(), "*.zip", 3, 4);
+		Map<Object, Long> countBySource;
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(tempDir)) {
+			countBySource = s.collect(
+					Collectors.groupingBy(d -> d.getContentByFieldname().get("source"), Collectors.counting()));
+		}
+		assertEquals(6, countBySource.size(), "Every archive, and only the archives, should be extracted.");
+		for (int i = 0; i < 6; i++) {
+			assertEquals(50l, countBySource.get("archive" + i + ".zip"),
+					i + ": each document should keep the source of its own archive.");
+		}
+	}
+
+	@Test
+	void testLazyText() throws Exception {
+		DocumentExtractorMultiArchiveImpl extractor = new DocumentExtractorMultiArchiveImpl(
+				new DocumentExtractorBibleZipFileImpl(true), "*.zip", 3, 400);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(tempDir)) {
+			List<ExtractedDocument> docs = s.collect(Collectors.toList());
+			DocumentExtractorPrefetchingImplTest.joinThreads("archive-extractor-");
+			for (ExtractedDocument d : docs) {
+				assertTrue(((String) d.getContentByFieldname().get("text")).contains("text"),
+						d.getContentByFieldname().get("source") + ": lazy text should be readable once every archive "
+								+ "has been extracted.");
+			}
+			assertEquals(300, docs.size(), "Every chapter of every archive should be extracted.");
+		}
+	}
+
+	@Test
+	void testEarlyClose() {
+		DocumentExtractorMultiArchiveImpl extractor = new DocumentExtractorMultiArchiveImpl(
+				new DocumentExtractorBibleZipFileImpl(), "*.zip", 2, 1);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(tempDir)) {
+			assertEquals(3, s.limit(3).count(), "The consumer may stop before all archives are read.");
+		}
+	}
+
+	@Test
+	void testFailure() throws Exception {
+		Files.writeString(tempDir.resolve("corrupt.zip"), "not a zip");
+		DocumentExtractorMultiArchiveImpl extractor = new DocumentExtractorMultiArchiveImpl(
+				new DocumentExtractorBibleZipFileImpl(), "*.zip", 3, 4);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(tempDir)) {
+			assertThrows(LuceneTutorialException.class, () -> s.count(),
+					"A failure extracting any archive should be re-thrown to the consumer.");
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+
+class DocumentExtractorPrefetchingImplTest {
+
+	private Path tempDir;
+	private Path zip;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.zip = tempDir.resolve("synthetic.zip");
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 100; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "text " + chapter));
+		}
+		SyntheticBibleZip.write(zip, htmlByChapter);
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() {
+		List<Object> expected;
+		try (Stream<ExtractedDocument> s = new DocumentExtractorBibleZipFileImpl().documentsFromFilePath(zip)) {
+			expected = s.map(d -> d.getContentByFieldname().get("text")).collect(Collectors.toList());
+		}
+		List<Object> actual;
+		DocumentExtractorPrefetchingImpl extractor = new DocumentExtractorPrefetchingImpl(
+				new DocumentExtractorBibleZipFileImpl(), 8);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+			actual = s.map(d -> d.getContentByFieldname().get("text")).collect(Collectors.toList());
+		}
+		assertEquals(expected, actual, "Prefetching should return the same documents in the same order.");
+	}
+
+	@Test
+	void testLazyText() throws Exception {
+		List<Object> expected;
+		try (Stream<ExtractedDocument> s = new DocumentExtractorBibleZipFileImpl().documentsFromFilePath(zip)) {
+			expected = s.map(d -> d.getContentByFieldname().get("text")).collect(Collectors.toList());
+		}
+		DocumentExtractorPrefetchingImpl extractor = new DocumentExtractorPrefetchingImpl(
+				new DocumentExtractorBibleZipFileImpl(true), 200);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+			List<ExtractedDocument> docs = s.collect(Collectors.toList());
+			joinThreads("prefetching-extractor-");
+			List<Object> actual = docs.stream().map(d -> d.getContentByFieldname().get("text"))
+					.collect(Collectors.toList());
+			assertEquals(expected, actual, "Lazy text should be readable after the background thread is done.");
+		}
+	}
+
+	@Test
+	void testEarlyClose() {
+		DocumentExtractorPrefetchingImpl extractor = new DocumentExtractorPrefetchingImpl(
+				new DocumentExtractorBibleZipFileImpl(), 1);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+			assertEquals(3, s.limit(3).count(), "The consumer may stop before the archive is read.");
+		}
+	}
+
+	@Test
+	void testFailure() throws Exception {
+		Path corrupt = tempDir.resolve("corrupt.zip");
+		Files.writeString(corrupt, "not a zip");
+		DocumentExtractorPrefetchingImpl extractor = new DocumentExtractorPrefetchingImpl(
+				new DocumentExtractorBibleZipFileImpl(), 8);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(corrupt)) {
+			assertThrows(LuceneTutorialException.class, () -> s.count(),
+					"A failure in the background should be re-thrown to the consumer.");
+		}
+	}
+
+	/**
+	 * Waits for the background threads to finish.
+	 */
+	static void joinThreads(String namePrefix) throws InterruptedException {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().startsWith(namePrefix)) {
+				t.join();
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import j.lucene.tutorial.BenchmarkTimer;
+
+/**
+ * Decodes the chapters of a Bible-sized archive, already in memory, with one
+ * re-used decoder, with a new decoder for each chapter, and as before the
+ * decoder, by reading all the bytes into a new array. Reports chapters per
+ * second and the bytes allocated per chapter.
+ */
+@Tag("benchmark")
+class EntryDecoderBenchmarkTest {
+
+	private List<byte[]> chapters;
+
+	@BeforeEach
+	void before() {
+		this.chapters = SyntheticBibleZip.largeHtmlByChapter(1189, 26).values().stream()
+				.map(html -> html.getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList());
+	}
+
+	@Test
+	void test(TestReporter reporter) throws Exception {
+		EntryDecoder reused = new EntryDecoder(StandardCharsets.UTF_8);
+		BenchmarkTimer.Task readAllBytes = () -> {
+			long chars = 0;
+			for (byte[] chapter : chapters) {
+				chars += new String(new ByteArrayInputStream(chapter).readAllBytes(), StandardCharsets.UTF_8).length();
+			}
+			return chars > 0 ? chapters.size() : 0;
+		};
+		BenchmarkTimer.Task newDecoder = () -> {
+			long chars = 0;
+			for (byte[] chapter : chapters) {
+				chars += new EntryDecoder(StandardCharsets.UTF_8).decode(new ByteArrayInputStream(chapter)).length();
+			}
+			return chars > 0 ? chapters.size() : 0;
+		};
+		BenchmarkTimer.Task reusedDecoder = () -> {
+			long chars = 0;
+			for (byte[] chapter : chapters) {
+				chars += reused.decode(new ByteArrayInputStream(chapter)).length();
+			}
+			return chars > 0 ? chapters.size() : 0;
+		};
+		BenchmarkTimer.report(reporter, "readAllBytes", "docs", readAllBytes);
+		BenchmarkTimer.report(reporter, "new decoder", "docs", newDecoder);
+		BenchmarkTimer.report(reporter, "re-used decoder", "docs", reusedDecoder);
+		BenchmarkTimer.reportAllocation(reporter, "readAllBytes", "doc", readAllBytes);
+		BenchmarkTimer.reportAllocation(reporter, "new decoder", "doc", newDecoder);
+		BenchmarkTimer.reportAllocation(reporter, "re-used decoder", "doc", reusedDecoder);
+	}
+}
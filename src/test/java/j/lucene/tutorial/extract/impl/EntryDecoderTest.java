@@ -0,0 +1,33 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class EntryDecoderTest {
+
+	@Test
+	void test() throws Exception {
+		EntryDecoder decoder = new EntryDecoder(StandardCharsets.UTF_8);
+		for (int size : new int[] { 10, 100_000, 1 }) {
+			String text = "Génèse € ".repeat(size);
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			assertEquals(text, decoder.decode(new ByteArrayInputStream(bytes)),
+					size + ": the buffers should grow as needed, and be reused for smaller entries.");
+			assertEquals(text, decoder.decode(ByteBuffer.wrap(bytes)),
+					size + ": a buffer should decode the same as a stream.");
+		}
+	}
+
+	@Test
+	void testMalformed() throws Exception {
+		EntryDecoder decoder = new EntryDecoder(StandardCharsets.UTF_8);
+		byte[] bytes = new byte[] { 'a', (byte) 0xC3, 'b' };
+		assertEquals(new String(bytes, StandardCharsets.UTF_8), decoder.decode(new ByteArrayInputStream(bytes)),
+				"Malformed input should be replaced, as with new String(bytes, charset).");
+	}
+}
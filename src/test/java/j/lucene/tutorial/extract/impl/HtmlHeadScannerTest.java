@@ -0,0 +1,62 @@
+package j.lucene.tutorial.extract.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class HtmlHeadScannerTest {
+
+	@Test
+	void test() {
+		HtmlHeadScanner.Head head = HtmlHeadScanner.scan("""
+				<html>
+				<head>
+				<title>Psalms 23, The Lord is my shepherd, KJV</title>
+				<meta name="keywords" content="Audio, Bible, Holy, Old testament" />
+				</head>
+				<body>
+				</body>
+				</html>
+				""");
+		assertEquals("Psalms 23, The Lord is my shepherd", head.synopsis,
+				"The synopsis should be the title up to the last comma.");
+		assertArrayEquals(new String[] { "Bible", "Holy", "Old testament" }, head.keywords,
+				"The keyword 'Audio' should be stripped out.");
+	}
+
+	@Test
+	void testStopsAtEndOfHead() {
+		HtmlHeadScanner.Head head = HtmlHeadScanner.scan("""
+				<html>
+				<head>
+				<title>The Gospel According to John</title>
+				</head>
+				<body>
+				<title>Not, a title</title>
+				<meta name="keywords" content="Not, keywords" />
+				</body>
+				</html>
+				""");
+		assertNull(head.synopsis, "A title without a comma has no synopsis.");
+		assertNull(head.keywords, "Nothing after the head section should be examined.");
+	}
+
+	@Test
+	void testAudioBooks() {
+		HtmlHeadScanner.Head head = HtmlHeadScanner.scan("""
+				<html>
+				<head>
+				<title>Audio Books: the Book of John - Chapter 11 Raising of Lazarus</title>
+				</head>
+				</html>
+				""");
+		assertEquals("Raising of Lazarus", head.synopsis,
+				"An Audio Books title has the synopsis after the chapter number, even without a comma.");
+
+		head = HtmlHeadScanner
+				.scan("<head>\n<title>Audio Books: the Book of Job - Chapter d Job answered</title>\n</head>");
+		assertNull(head.synopsis, "Without a chapter number, an Audio Books title has no synopsis.");
+	}
+}
@@ -0,0 +1,104 @@
+package j.lucene.tutorial.extract.impl;
+
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes archives in the same format as the Bible zip, all chapters
+ * belonging to "Genesis". Even-numbered chapters are stored rather than
+ * deflated, so both kinds of entries are covered.
+ */
+public class SyntheticBibleZip {
+
+	private static final long ENTRY_TIME = 1_000_000_000_000L;
+
+	/**
+	 * The book name index, listing only Genesis.
+	 */
+	public static final String INDEX_HTML = "<a title=\"[1] Genesis\" href=\"01/1.htm\">Genesis</a>\n";
+
+	private static final String[] WORDS = { "and", "the", "of", "that", "he", "unto", "lord", "shall", "his", "they",
+			"in", "him", "them", "land", "god", "said", "was", "for", "with", "thou", "all", "which", "ye", "house",
+			"son", "king", "people", "came", "day", "upon", "israel", "thee", "hand", "went", "children", "before" };
+
+	public static String chapterHtml(String title, String body) {
+		return "<html>\n<head>\n<title>" + title + "</title>\n</head>\n<body>" + body + "</body>\n</html>";
+	}
+
+	public static void write(Path zip, Map<Integer, String> htmlByChapter) throws Exception {
+		write(zip, htmlByChapter, INDEX_HTML);
+	}
+
+	/**
+	 * Writes an archive about the size of the Bible, for the benchmarks. The
+	 * verses are words drawn from a fixed seed, about a sixth of them names
+	 * from a larger vocabulary, so analysis sees a realistic mix of terms.
+	 *
+	 * @param zip      the archive
+	 * @param chapters how many chapters, 1,189 in the Bible
+	 * @param verses   how many verses in each, about 26 on average
+	 * @throws Exception if it cannot be written
+	 */
+	public static void writeLarge(Path zip, int chapters, int verses) throws Exception {
+		write(zip, largeHtmlByChapter(chapters, verses));
+	}
+
+	/**
+	 * The chapters of {@link #writeLarge(Path, int, int)}, for benchmarks that
+	 * start from the HTML.
+	 *
+	 * @param chapters how many chapters
+	 * @param verses   how many verses in each
+	 * @return the HTML by chapter number
+	 */
+	public static Map<Integer, String> largeHtmlByChapter(int chapters, int verses) {
+		Random r = new Random(chapters);
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= chapters; chapter++) {
+			StringBuilder body = new StringBuilder();
+			for (int verse = 1; verse <= verses; verse++) {
+				body.append("<p>").append(verse);
+				for (int w = 0; w < 25; w++) {
+					body.append(' ');
+					if (r.nextInt(6) == 0) {
+						body.append("name").append(r.nextInt(2_000));
+					} else {
+						body.append(WORDS[r.nextInt(WORDS.length)]);
+					}
+				}
+				body.append(".</p>\n");
+			}
+			htmlByChapter.put(chapter, chapterHtml("Genesis, Chapter " + chapter, body.toString()));
+		}
+		return htmlByChapter;
+	}
+
+	public static void write(Path zip, Map<Integer, String> htmlByChapter, String indexHtml) throws Exception {
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip.toFile()))) {
+			zos.putNextEntry(new ZipEntry("kj/index.htm"));
+			zos.write(indexHtml.getBytes());
+			zos.closeEntry();
+			for (Map.Entry<Integer, String> e : htmlByChapter.entrySet()) {
+				byte[] html = e.getValue().getBytes();
+				ZipEntry ze = new ZipEntry("kj/01/" + e.getKey() + ".htm");
+				ze.setTime(ENTRY_TIME);
+				if (e.getKey() % 2 == 0) {
+					CRC32 crc = new CRC32();
+					crc.update(html);
+					ze.setMethod(ZipEntry.STORED);
+					ze.setSize(html.length);
+					ze.setCrc(crc.getValue());
+				}
+				zos.putNextEntry(ze);
+				zos.write(html);
+				zos.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package j.lucene.tutorial.load.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.transform.DocumentTransformer;
+import j.lucene.tutorial.transform.TransformedDocument;
+
+class DeadLetterFileTest {
+
+	private Path tempDir;
+	private DeadLetterFile dlf;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.dlf = new DeadLetterFile(tempDir.resolve("dead-letters.tsv"));
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		assertTrue(dlf.read().isEmpty(), "Before any failure, there are no dead letters.");
+		dlf.write(new TransformedDocument(List.of(new StringField("book", "Song\tof\\Songs", Store.YES),
+				new IntField("chapter", 3, Store.YES), new StringField("text", "not identifying", Store.NO))),
+				new IllegalArgumentException("bad\nterm"));
+		dlf.write(new TransformedDocument(List.of(new StringField("source", "kj_new.zip", Store.YES))),
+				new IllegalStateException("closed"));
+
+		List<DeadLetterFile.DeadLetter> letters = dlf.read();
+		assertEquals(2, letters.size(), "Every failure should be recorded.");
+		assertEquals(Map.of("book", "Song\tof\\Songs", "chapter", "3"), letters.get(0).getIdentifyingValues(),
+				"Only the identifying values should be recorded, unchanged by escaping.");
+		assertEquals("java.lang.IllegalArgumentException: bad\nterm", letters.get(0).getException(),
+				"The exception should be recorded.");
+		assertEquals(Map.of("source", "kj_new.zip"), letters.get(1).getIdentifyingValues(),
+				"Missing identifying fields should be left out.");
+		assertEquals(2, Files.readAllLines(dlf.getPath()).size(), "Each failure should be one line.");
+	}
+
+	/**
+	 * Loads documents, some of which fail until the transformer is fixed, then
+	 * replays the failures.
+	 */
+	@Test
+	void testReplay() throws Exception {
+		List<ExtractedDocument> extracted = new ArrayList<>();
+		for (int chapter = 1; chapter <= 50; chapter++) {
+			String book = chapter % 10 == 0 ? "Bad" : "Good";
+			extracted.add(new ExtractedDocument(Map.of("book", book, "chapter", chapter)));
+		}
+		BreakableTransformer transformer = new BreakableTransformer();
+		Path dir = tempDir.resolve("index");
+
+		LuceneLoadingCollectorImpl loader = loader(dir);
+		loader.batchSize = 8;
+		assertEquals(45L, extracted.stream().map(transformer::transformExtractedDocument).collect(loader),
+				"The bad documents should fail.");
+		assertEquals(5, loader.failedDocuments(), "Every failure should be counted.");
+		assertTrue(loader.retriedDocuments() >= 5, "The failed batches should have been retried.");
+		loader.preDestroy();
+		assertEquals(List.of("10", "20", "30", "40", "50"),
+				dlf.read().stream().map(dl -> dl.getIdentifyingValues().get("chapter")).sorted().toList(),
+				"Every failure should be recorded.");
+		assertEquals(5, dlf.failed(extracted.stream()).count(), "The failed documents should be found again.");
+
+		transformer.broken = false;
+		LuceneLoadingCollectorImpl replayer = loader(dir);
+		assertEquals(5L, dlf.replay(extracted.stream(), transformer, replayer), "The failures should be loaded.");
+		assertEquals(0, replayer.failedDocuments(), "Nothing should fail once fixed.");
+		replayer.preDestroy();
+		assertTrue(dlf.read().isEmpty(), "Nothing failed again.");
+		assertTrue(Files.exists(tempDir.resolve("dead-letters.tsv.replayed")), "The replayed file should be kept.");
+		try (Directory d = FSDirectory.open(dir); DirectoryReader r = DirectoryReader.open(d)) {
+			assertEquals(50, r.numDocs(), "Every document should now be loaded.");
+			assertEquals(IntStream.rangeClosed(1, 50).boxed().collect(Collectors.toSet()),
+					IntStream.range(0, r.maxDoc()).mapToObj(i -> chapter(r, i)).collect(Collectors.toSet()),
+					"Every chapter should be loaded once.");
+		}
+		assertFalse(dlf.failed(extracted.stream()).findAny().isPresent(), "There are no failures left.");
+	}
+
+	private LuceneLoadingCollectorImpl loader(Path dir) {
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir));
+		loader.deadLetters = dlf;
+		loader.postConstruct();
+		return loader;
+	}
+
+	private static int chapter(DirectoryReader r, int doc) {
+		try {
+			return r.storedFields().document(doc).getField("chapter").numericValue().intValue();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * While broken, gives the "Bad" book a term too long to index.
+	 */
+	private static class BreakableTransformer implements DocumentTransformer {
+		boolean broken = true;
+
+		@Override
+		public TransformedDocument transformExtractedDocument(ExtractedDocument in) {
+			String book = (String) in.getContentByFieldname().get("book");
+			List<Field> fields = new ArrayList<>();
+			fields.add(new StringField("book", book, Store.YES));
+			fields.add(new IntField("chapter", (Integer) in.getContentByFieldname().get("chapter"), Store.YES));
+			if (broken && book.equals("Bad")) {
+				fields.add(new StringField("text", "x".repeat(IndexWriter.MAX_TERM_LENGTH + 1), Store.NO));
+			}
+			return new TransformedDocument(fields);
+		}
+	}
+}
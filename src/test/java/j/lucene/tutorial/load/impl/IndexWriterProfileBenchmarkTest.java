@@ -0,0 +1,160 @@
+package j.lucene.tutorial.load.impl;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+/**
+ * Loads the same documents with each profile, and reports docs/sec, peak heap
+ * and the final segment count. The documents are generated from a fixed seed,
+ * so the runs are reproducible, although timings depend on the machine. Nothing
+ * is asserted, as both the timings and the segments left by concurrent merges
+ * vary from run to run.
+ *
+ * This takes a few minutes, so it is left out of the build. To run it:
+ * {@code mvn test -Dgroups=benchmark -DexcludedTestGroups=}
+ */
+@Tag("benchmark")
+class IndexWriterProfileBenchmarkTest {
+
+	private static final int DOCS = 100_000;
+
+	/**
+	 * While loading with NRT, a reader is reopened from the writer this often.
+	 */
+	private static final int REOPEN_EVERY_DOCS = 1_000;
+
+	private Path tempDir;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test(TestReporter reporter) throws Exception {
+		List<Report> reports = new ArrayList<>();
+		reports.add(load("default", null, 0, 0));
+		reports.add(load("bulk", IndexWriterProfile.BULK_LOAD, 0, 0));
+		reports.add(load("bulk + forceMerge(1)", IndexWriterProfile.BULK_LOAD, 1, 0));
+		reports.add(load("default, reopened", null, 0, REOPEN_EVERY_DOCS));
+		reports.add(load("nrt, reopened", IndexWriterProfile.NEAR_REAL_TIME, 0, REOPEN_EVERY_DOCS));
+		for (Report r : reports) {
+			reporter.publishEntry(r.name, r.toString());
+		}
+	}
+
+	private Report load(String name, IndexWriterProfile profile, int forceMergeMaxSegments, int reopenEveryDocs)
+			throws Exception {
+		Path dir = tempDir.resolve(name);
+		List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(p -> p.getType() == MemoryType.HEAP).toList();
+		System.gc();
+		heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+		LuceneLoadingCollectorImpl llc = loader(dir, profile, forceMergeMaxSegments);
+		long reopenNanos = 0;
+		long start = System.nanoTime();
+		try {
+			if (reopenEveryDocs > 0) {
+				DirectoryReader reader = DirectoryReader.open(llc.dlso.iw());
+				for (int from = 0; from < DOCS; from += reopenEveryDocs) {
+					IntStream.range(from, Math.min(DOCS, from + reopenEveryDocs))
+							.mapToObj(IndexWriterProfileTest::document).forEach(td -> llc.accumulator().accept(llc.dlso, td));
+					long reopenStart = System.nanoTime();
+					DirectoryReader newReader = DirectoryReader.openIfChanged(reader, llc.dlso.iw());
+					reopenNanos += System.nanoTime() - reopenStart;
+					if (newReader != null) {
+						reader.close();
+						reader = newReader;
+					}
+				}
+				reader.close();
+				llc.finisher().apply(llc.dlso);
+			} else {
+				IntStream.range(0, DOCS).mapToObj(IndexWriterProfileTest::document).collect(llc);
+			}
+		} finally {
+			llc.preDestroy();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long peakHeap = heap.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+
+		try (Directory d = FSDirectory.open(dir)) {
+			List<Segment> segments = new ArrayList<>();
+			for (SegmentCommitInfo sci : SegmentInfos.readLatestCommit(d)) {
+				segments.add(new Segment(sci.sizeInBytes(), sci.info.getUseCompoundFile()));
+			}
+			return new Report(name, DOCS / seconds, peakHeap, segments,
+					reopenEveryDocs > 0 ? reopenNanos / 1e6 / (DOCS / reopenEveryDocs) : 0);
+		}
+	}
+
+	private LuceneLoadingCollectorImpl loader(Path dir, IndexWriterProfile profile, int forceMergeMaxSegments) {
+		LuceneLoadingCollectorImpl llc = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir));
+		llc.profile = profile;
+		llc.forceMergeMaxSegments = forceMergeMaxSegments;
+		llc.postConstruct();
+		return llc;
+	}
+
+	private static class Segment {
+		final long sizeInBytes;
+		final boolean compound;
+
+		Segment(long sizeInBytes, boolean compound) {
+			this.sizeInBytes = sizeInBytes;
+			this.compound = compound;
+		}
+	}
+
+	private static class Report {
+		final String name;
+		final double docsPerSecond;
+		final long peakHeap;
+		final List<Segment> segments;
+		final double meanReopenMillis;
+
+		Report(String name, double docsPerSecond, long peakHeap, List<Segment> segments,
+				double meanReopenMillis) {
+			this.name = name;
+			this.docsPerSecond = docsPerSecond;
+			this.peakHeap = peakHeap;
+			this.segments = segments;
+			this.meanReopenMillis = meanReopenMillis;
+		}
+
+		@Override
+		public String toString() {
+			long compound = segments.stream().filter(s -> s.compound).count();
+			long largest = segments.stream().mapToLong(s -> s.sizeInBytes).max().orElse(0);
+			return String.format(
+					"%.0f docs/sec, peak heap %dMB, %d segments (%d compound, largest %dMB), mean reopen %.1fms",
+					docsPerSecond, peakHeap / (1024 * 1024), segments.size(), compound, largest / (1024 * 1024),
+					meanReopenMillis);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package j.lucene.tutorial.load.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.transform.TransformedDocument;
+
+/**
+ * Checks the settings each profile applies, and loads a few documents with
+ * them. {@link IndexWriterProfileBenchmarkTest} compares the profiles on a
+ * larger load.
+ */
+class IndexWriterProfileTest {
+
+	private static final int DOCS = 2_000;
+
+	private Path tempDir;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		Path dir = tempDir.resolve("bulk");
+		LuceneLoadingCollectorImpl llc = loader(dir, IndexWriterProfile.BULK_LOAD, 1);
+		// With a small RAM buffer, the load flushes several segments for the force merge to merge.
+		llc.iwc.setRAMBufferSizeMB(1);
+		try {
+			assertEquals((long) DOCS, IntStream.range(0, DOCS).mapToObj(IndexWriterProfileTest::document).collect(llc),
+					"Every document should be loaded.");
+		} finally {
+			llc.preDestroy();
+		}
+		try (Directory d = FSDirectory.open(dir)) {
+			SegmentInfos sis = SegmentInfos.readLatestCommit(d);
+			assertEquals(1, sis.size(), "The bulk load should be merged to one segment.");
+			assertEquals(DOCS, sis.totalMaxDoc(), "The segment should hold every document.");
+		}
+
+		dir = tempDir.resolve("default");
+		llc = loader(dir, null, 0);
+		try {
+			IntStream.range(0, DOCS).mapToObj(IndexWriterProfileTest::document).collect(llc);
+		} finally {
+			llc.preDestroy();
+		}
+		try (Directory d = FSDirectory.open(dir)) {
+			for (SegmentCommitInfo sci : SegmentInfos.readLatestCommit(d)) {
+				assertFalse(sci.info.getUseCompoundFile(), "By default, the loader does not write compound files.");
+			}
+		}
+	}
+
+	@Test
+	void testSettings() throws Exception {
+		LuceneLoadingCollectorImpl llc = loader(tempDir.resolve("settings"), IndexWriterProfile.BULK_LOAD, 0);
+		try {
+			assertEquals(256.0, llc.iwc.getRAMBufferSizeMB(), "The bulk load should buffer more.");
+			TieredMergePolicy tmp = (TieredMergePolicy) llc.iwc.getMergePolicy();
+			assertEquals(64.0, tmp.getFloorSegmentMB(), "The bulk load should raise the floor segment size.");
+			assertEquals(20.0, tmp.getSegmentsPerTier(), "The bulk load should allow more segments per tier.");
+		} finally {
+			llc.preDestroy();
+		}
+		llc = loader(tempDir.resolve("nrt-settings"), IndexWriterProfile.NEAR_REAL_TIME, 0);
+		try {
+			assertEquals(4.0, llc.iwc.getRAMBufferSizeMB(), "NRT should flush small segments.");
+			assertTrue(llc.iwc.getUseCompoundFile(), "NRT should write compound files.");
+		} finally {
+			llc.preDestroy();
+		}
+	}
+
+	private LuceneLoadingCollectorImpl loader(Path dir, IndexWriterProfile profile, int forceMergeMaxSegments) {
+		LuceneLoadingCollectorImpl llc = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir));
+		llc.profile = profile;
+		llc.forceMergeMaxSegments = forceMergeMaxSegments;
+		llc.postConstruct();
+		return llc;
+	}
+
+	/**
+	 * A chapter-sized document of words drawn from a fixed vocabulary.
+	 */
+	static TransformedDocument document(int i) {
+		Random r = new Random(i);
+		StringBuilder text = new StringBuilder();
+		for (int w = 0; w < 200; w++) {
+			text.append("word").append(r.nextInt(20_000)).append(' ');
+		}
+		List<Field> fields = new ArrayList<>();
+		fields.add(new IntField("chapter", i, Store.YES));
+		fields.add(new StringField("book", "book" + (i % 66), Store.YES));
+		fields.add(new TextField("text", text.toString(), Store.YES));
+		return new TransformedDocument(fields);
+	}
+}
@@ -0,0 +1,118 @@
+package j.lucene.tutorial.load.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.TextField;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import j.lucene.tutorial.BenchmarkTimer;
+import j.lucene.tutorial.transform.TransformedDocument;
+
+/**
+ * Loads small documents, already transformed, into a new index on disk, and
+ * reports documents per second. Each run opens, fills and closes its own
+ * index, so the commit is timed too. On one core, the JIT was still compiling
+ * the IndexWriter after the usual warm-up, which slowed whichever case was
+ * timed first, so every case is warmed up before any is timed.
+ */
+@Tag("benchmark")
+class LuceneLoadingCollectorImplBenchmarkTest {
+
+	private static final int DOCS = 50_000;
+
+	private Path tempDir;
+	private List<TransformedDocument> docs;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.docs = IntStream.range(0, DOCS).mapToObj(LuceneLoadingCollectorImplBenchmarkTest::document)
+				.collect(Collectors.toList());
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	/**
+	 * Loads from a parallel stream with 1, 2 and up to 4 threads, as long as there
+	 * are processors for them, and reports the speedup over one thread.
+	 */
+	@Test
+	void testThreads(TestReporter reporter) throws Exception {
+		int maxThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+		reporter.publishEntry("processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			int t = threads;
+			BenchmarkTimer.perSecond(() -> load(t));
+		}
+		double single = BenchmarkTimer.report(reporter, "1 thread", "docs", () -> load(1));
+		for (int threads = 2; threads <= maxThreads; threads++) {
+			int t = threads;
+			double docsPerSecond = BenchmarkTimer.report(reporter, threads + " threads", "docs", () -> load(t));
+			reporter.publishEntry(threads + " threads, speedup", String.format("%.2fx", docsPerSecond / single));
+		}
+	}
+
+	/**
+	 * Loads from one thread, adding the documents one at a time and in batches of
+	 * 10, 100 and 1,000.
+	 */
+	@Test
+	void testBatchSize(TestReporter reporter) throws Exception {
+		int[] batchSizes = { 1, 10, 100, 1_000 };
+		for (int batchSize : batchSizes) {
+			BenchmarkTimer.perSecond(() -> load(1, batchSize));
+		}
+		for (int batchSize : batchSizes) {
+			BenchmarkTimer.report(reporter, "batchSize " + batchSize, "docs", () -> load(1, batchSize));
+		}
+	}
+
+	private long load(int threads) throws Exception {
+		return load(threads, 1);
+	}
+
+	private long load(int threads, int batchSize) throws Exception {
+		Path dir = Files.createTempDirectory(tempDir, "threads" + threads);
+		LuceneLoadingCollectorImpl llc = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir));
+		llc.batchSize = batchSize;
+		llc.postConstruct();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long numIndexed = pool.submit(() -> docs.parallelStream().collect(llc)).get();
+			assertEquals(DOCS, numIndexed, "Every document should be counted.");
+			return numIndexed;
+		} finally {
+			pool.shutdown();
+			llc.preDestroy();
+			Files.walk(dir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private static TransformedDocument document(int i) {
+		List<Field> fields = new ArrayList<>();
+		fields.add(new IntField("chapter", i, Store.YES));
+		fields.add(new TextField("text", "And it came to pass, in chapter " + i + ", that the word " + (i * 31 % 977)
+				+ " was written, and " + (i % 13) + " more besides.", Store.YES));
+		return new TransformedDocument(fields);
+	}
+}
@@ -2,6 +2,7 @@ package j.lucene.tutorial.load.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
@@ -12,27 +13,60 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collector.Characteristics;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import org.apache.lucene.codecs.lucene90.Lucene90StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene95.Lucene95Codec;
 import org.apache.lucene.codecs.simpletext.SimpleTextCodec;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiBits;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.PrintStreamInfoStream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedChapter;
 import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.extract.impl.DocumentExtractorBibleZipFileImpl;
+import j.lucene.tutorial.extract.impl.DocumentExtractorBibleZipIncrementalImpl;
+import j.lucene.tutorial.extract.impl.SyntheticBibleZip;
 import j.lucene.tutorial.transform.DocumentTransformer;
 import j.lucene.tutorial.transform.TransformedDocument;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
 
 class LuceneLoadingCollectorImplTest {
 
@@ -96,6 +130,350 @@ class LuceneLoadingCollectorImplTest {
 
 	}
 
+	@Test
+	void testStoredFieldsMode() throws Exception {
+		for (Lucene95Codec.Mode mode : Lucene95Codec.Mode.values()) {
+			Path dir = Files.createTempDirectory(tempDir, mode.name());
+			LuceneLoadingCollectorImpl modeLlc = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir));
+			modeLlc.storedFieldsMode = mode;
+			modeLlc.postConstruct();
+			assertEquals(2, List.of(ed, ed).stream().map(mdf::transformExtractedDocument).collect(modeLlc));
+			modeLlc.preDestroy();
+
+			try (Directory d = FSDirectory.open(dir)) {
+				SegmentInfos sis = SegmentInfos.readLatestCommit(d);
+				assertEquals(mode.name(), sis.info(0).info.getAttribute(Lucene90StoredFieldsFormat.MODE_KEY),
+						"The segment should be written with the configured stored fields mode.");
+			}
+		}
+	}
+
+	/**
+	 * A parallel stream should add every document to one shared container, from
+	 * several threads, without combining.
+	 */
+	@Test
+	void testConcurrent() throws Exception {
+		assertTrue(llc.characteristics().containsAll(Set.of(Characteristics.CONCURRENT, Characteristics.UNORDERED)),
+				"The collector should be concurrent and unordered.");
+
+		Path dir = Files.createTempDirectory(tempDir, "concurrent");
+		AtomicInteger containers = new AtomicInteger();
+		LuceneLoadingCollectorImpl concurrentLlc = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir)) {
+			@Override
+			public Supplier<DocumentLoaderSupplierObj> supplier() {
+				Supplier<DocumentLoaderSupplierObj> s = super.supplier();
+				return () -> {
+					containers.incrementAndGet();
+					return s.get();
+				};
+			}
+		};
+		concurrentLlc.postConstruct();
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			long numIndexed = pool.submit(() -> IntStream.range(0, 10_000).parallel().mapToObj(i -> {
+				threads.add(Thread.currentThread().getName());
+				return document(i);
+			}).collect(concurrentLlc)).get();
+			assertEquals(10_000L, numIndexed, "Every document should be counted.");
+		} finally {
+			pool.shutdown();
+			concurrentLlc.preDestroy();
+		}
+		assertEquals(1, containers.get(), "All threads should share one container.");
+		assertTrue(threads.size() > 1, "The documents should have been added from several threads.");
+		try (Directory d = FSDirectory.open(dir); DirectoryReader r = DirectoryReader.open(d)) {
+			assertEquals(10_000, r.numDocs(), "Every document should be indexed.");
+		}
+	}
+
+	/**
+	 * A document with a term too long to index should fail on its own, leaving
+	 * the rest of its batch, and the partial batches at the end, indexed.
+	 */
+	@Test
+	void testBatch() throws Exception {
+		for (boolean byBytes : List.of(false, true)) {
+			Path dir = Files.createTempDirectory(tempDir, "batch" + byBytes);
+			LuceneLoadingCollectorImpl batchLlc = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(dir));
+			if (byBytes) {
+				batchLlc.batchSize = Integer.MAX_VALUE;
+				batchLlc.batchBytes = 2_000;
+			} else {
+				batchLlc.batchSize = 7;
+			}
+			batchLlc.postConstruct();
+			List<TransformedDocument> docs = IntStream.range(0, 100).mapToObj(this::document)
+					.collect(Collectors.toCollection(ArrayList::new));
+			TransformedDocument bad = new TransformedDocument(
+					List.of(new StringField("source", "x".repeat(IndexWriter.MAX_TERM_LENGTH + 1), Store.NO)));
+			docs.set(50, bad);
+			long numIndexed = docs.stream().collect(batchLlc);
+			assertEquals(99L, numIndexed, "Only the bad document should be lost.");
+			assertEquals(bad, batchLlc.firstFailure().get().getFailedDocument(),
+					"The bad document should be reported.");
+			batchLlc.preDestroy();
+			try (Directory d = FSDirectory.open(dir); DirectoryReader r = DirectoryReader.open(d)) {
+				assertEquals(99, r.numDocs(), "Every other document should be indexed.");
+			}
+		}
+	}
+
+	/**
+	 * Batching the documents of a transformer that re-uses Fields, or that holds
+	 * live TokenStreams, should be refused rather than index the last chapter
+	 * several times, while deferred analysis should batch every chapter intact.
+	 */
+	@Test
+	void testBatchReusedFields() throws Exception {
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 20; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "text " + chapter));
+		}
+		Path zip = tempDir.resolve("synthetic.zip");
+		SyntheticBibleZip.write(zip, htmlByChapter);
+		DocumentExtractorBibleZipFileImpl extractor = new DocumentExtractorBibleZipFileImpl();
+
+		for (DocumentTransformerHtmlBibleImpl.Builder b : List.of(
+				new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(true).reuseFields(true),
+				new DocumentTransformerHtmlBibleImpl.Builder())) {
+			try (DocumentTransformerHtmlBibleImpl dt = new DocumentTransformerHtmlBibleImpl(b);
+					Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+				LuceneLoadingCollectorImpl batchLlc = batchingLoader(dt);
+				assertThrows(LuceneTutorialException.class,
+						() -> s.map(dt::transformExtractedDocument).collect(batchLlc),
+						"Documents sharing Fields or TokenStreams should not be batched.");
+				batchLlc.preDestroy();
+				try (Directory d = FSDirectory.open(batchLlc.localDiskLocation().getLocationPath());
+						DirectoryReader r = DirectoryReader.open(d)) {
+					assertEquals(0, r.numDocs(), "The overwritten batch should have been discarded.");
+				}
+			}
+		}
+
+		try (DocumentTransformerHtmlBibleImpl dt = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(true));
+				Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+			LuceneLoadingCollectorImpl batchLlc = batchingLoader(dt);
+			assertEquals(20L, s.map(dt::transformExtractedDocument).collect(batchLlc),
+					"Every chapter should be loaded.");
+			batchLlc.preDestroy();
+			assertEquals(Set.of(IntStream.rangeClosed(1, 20).boxed().toArray()),
+					indexedChapters(batchLlc.localDiskLocation()), "Each chapter should be loaded once.");
+		}
+	}
+
+	private LuceneLoadingCollectorImpl batchingLoader(DocumentTransformerHtmlBibleImpl dt) throws IOException {
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(
+				new IndexPhysicalLocation(Files.createTempDirectory(tempDir, "batch")));
+		loader.iwc = new IndexWriterConfig(dt.indexAnalyzer());
+		loader.batchSize = 7;
+		loader.postConstruct();
+		return loader;
+	}
+
+	/**
+	 * A load that fails part way should keep what it committed, with the position
+	 * of the last chapter committed, and a second load should resume after it.
+	 */
+	@Test
+	void testCheckpoint() throws Exception {
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 30; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "text"));
+		}
+		Path zip = tempDir.resolve("synthetic.zip");
+		SyntheticBibleZip.write(zip, htmlByChapter);
+		IndexPhysicalLocation location = new IndexPhysicalLocation(Files.createTempDirectory(tempDir, "checkpoint"));
+		assertFalse(LoadCheckpoint.read(location).isPresent(), "There is no position before the first commit.");
+		DocumentExtractorBibleZipFileImpl extractor = new DocumentExtractorBibleZipFileImpl();
+
+		LoadCheckpoint checkpoint = new LoadCheckpoint();
+		LuceneLoadingCollectorImpl interrupted = checkpointingLoader(location, checkpoint);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip)) {
+			assertThrows(IllegalStateException.class, () -> s.peek(checkpoint::track).map(ed -> {
+				if (((ExtractedChapter) ed).getChapter() == 25) {
+					throw new IllegalStateException("interrupted");
+				}
+				return chapterDocument(ed);
+			}).collect(interrupted), "The load should be interrupted.");
+		}
+		interrupted.preDestroy();
+		LoadCheckpoint.Position p = LoadCheckpoint.read(location).get();
+		assertEquals("synthetic.zip", p.getSource(), "The position should name the archive.");
+		assertEquals("kj/01/20.htm", p.getEntryName(), "The position should be that of the last commit.");
+		assertEquals(Set.of(IntStream.rangeClosed(1, 20).boxed().toArray()), indexedChapters(location),
+				"Only the committed chapters should be kept.");
+
+		LoadCheckpoint resumed = new LoadCheckpoint();
+		LuceneLoadingCollectorImpl resuming = checkpointingLoader(location, resumed);
+		try (Stream<ExtractedDocument> s = extractor.documentsFromFilePath(zip, p.getEntryName())) {
+			assertEquals(10L, s.peek(resumed::track).map(this::chapterDocument).collect(resuming),
+					"Only the remaining chapters should be loaded.");
+		}
+		resuming.preDestroy();
+		assertEquals("kj/01/30.htm", LoadCheckpoint.read(location).get().getEntryName(),
+				"The final commit should record the last chapter.");
+		assertEquals(Set.of(IntStream.rangeClosed(1, 30).boxed().toArray()), indexedChapters(location),
+				"Every chapter should be loaded once.");
+	}
+
+	/**
+	 * An incremental load that fails part way, after its deletes and some changed
+	 * chapters were committed, should resume without deleting those chapters
+	 * again, leaving every chapter loaded once, in its current version.
+	 */
+	@Test
+	void testCheckpointIncremental() throws Exception {
+		Map<Integer, String> htmlByChapter = new TreeMap<>();
+		for (int chapter = 1; chapter <= 30; chapter++) {
+			htmlByChapter.put(chapter, SyntheticBibleZip.chapterHtml("Genesis, Chapter " + chapter, "original"));
+		}
+		Path zip = tempDir.resolve("synthetic.zip");
+		SyntheticBibleZip.write(zip, htmlByChapter);
+		Path manifestPath = tempDir.resolve("manifest.tsv");
+		IndexPhysicalLocation location = new IndexPhysicalLocation(Files.createTempDirectory(tempDir, "incremental"));
+
+		DocumentExtractorBibleZipIncrementalImpl first = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		LuceneLoadingCollectorImpl initial = checkpointingLoader(location, new LoadCheckpoint());
+		try (Stream<ExtractedDocument> s = first.documentsFromFilePath(zip)) {
+			assertEquals(30L, s.map(this::versionedDocument).collect(initial), "Every chapter should be loaded.");
+		}
+		initial.preDestroy();
+		first.saveManifest();
+
+		htmlByChapter.put(5, SyntheticBibleZip.chapterHtml("Genesis, Chapter 5", "edited"));
+		htmlByChapter.put(25, SyntheticBibleZip.chapterHtml("Genesis, Chapter 25", "edited"));
+		SyntheticBibleZip.write(zip, htmlByChapter);
+		DocumentExtractorBibleZipIncrementalImpl delta = new DocumentExtractorBibleZipIncrementalImpl(manifestPath);
+		LoadCheckpoint checkpoint = new LoadCheckpoint();
+		LuceneLoadingCollectorImpl interrupted = checkpointingLoader(location, checkpoint);
+		interrupted.commitEveryDocs = 1;
+		try (Stream<ExtractedDocument> s = delta.documentsFromFilePath(zip)) {
+			deletePriorVersions(interrupted, delta);
+			assertThrows(IllegalStateException.class, () -> s.peek(checkpoint::track).map(ed -> {
+				if (((ExtractedChapter) ed).getChapter() == 25) {
+					throw new IllegalStateException("interrupted");
+				}
+				return versionedDocument(ed);
+			}).collect(interrupted), "The load should be interrupted.");
+		}
+		interrupted.preDestroy();
+
+		LoadCheckpoint.Position p = LoadCheckpoint.read(location).get();
+		DocumentExtractorBibleZipIncrementalImpl resumedDelta = new DocumentExtractorBibleZipIncrementalImpl(
+				manifestPath);
+		LoadCheckpoint resumed = new LoadCheckpoint();
+		LuceneLoadingCollectorImpl resuming = checkpointingLoader(location, resumed);
+		try (Stream<ExtractedDocument> s = resumedDelta.documentsFromFilePath(zip, p.getEntryName())) {
+			deletePriorVersions(resuming, resumedDelta);
+			assertEquals(1L, s.peek(resumed::track).map(this::versionedDocument).collect(resuming),
+					"Only the changed chapter after the checkpoint should be loaded.");
+		}
+		resuming.preDestroy();
+		resumedDelta.saveManifest();
+
+		assertEquals(Set.of(IntStream.rangeClosed(1, 30).boxed().toArray()), indexedChapters(location),
+				"Every chapter should be loaded once.");
+		try (Directory d = FSDirectory.open(location.getLocationPath()); DirectoryReader r = DirectoryReader.open(d)) {
+			Bits liveDocs = MultiBits.getLiveDocs(r);
+			for (int i = 0; i < r.maxDoc(); i++) {
+				if (liveDocs != null && !liveDocs.get(i)) {
+					continue;
+				}
+				Document doc = r.storedFields().document(i);
+				int chapter = doc.getField("chapter").numericValue().intValue();
+				assertEquals(chapter == 5 || chapter == 25, doc.get("text").contains("edited"),
+						"Chapter " + chapter + " should be loaded in its current version.");
+			}
+		}
+	}
+
+	private void deletePriorVersions(LuceneLoadingCollectorImpl loader,
+			DocumentExtractorBibleZipIncrementalImpl extractor) {
+		for (ExtractedDocument d : extractor.documentsToDelete()) {
+			Map<String, Object> fields = d.getContentByFieldname();
+			loader.deleteDocuments(new BooleanQuery.Builder() //
+					.add(new TermQuery(new Term("book", (String) fields.get("book"))), Occur.FILTER) //
+					.add(IntField.newExactQuery("chapter", (Integer) fields.get("chapter")), Occur.FILTER) //
+					.add(new TermQuery(new Term("source", (String) fields.get("source"))), Occur.FILTER) //
+					.build());
+		}
+	}
+
+	private TransformedDocument versionedDocument(ExtractedDocument ed) {
+		ExtractedChapter c = (ExtractedChapter) ed;
+		return new TransformedDocument(List.of(new IntField("chapter", c.getChapter(), Store.YES),
+				new StringField("book", c.getBook(), Store.NO), new StringField("source", c.getSource(), Store.NO),
+				new StoredField("text", c.getText())));
+	}
+
+	/**
+	 * Without rollbackOnClose, user data only tags the commits, and closing
+	 * commits everything added, with the latest user data.
+	 */
+	@Test
+	void testCommitUserDataOnClose() throws Exception {
+		IndexPhysicalLocation location = new IndexPhysicalLocation(Files.createTempDirectory(tempDir, "tagged"));
+		AtomicInteger added = new AtomicInteger();
+		LuceneLoadingCollectorImpl tagging = new LuceneLoadingCollectorImpl(location);
+		tagging.commitEveryDocs = 10;
+		tagging.commitUserData = () -> Map.of("added", Integer.toString(added.get()));
+		tagging.postConstruct();
+		assertThrows(IllegalStateException.class, () -> IntStream.range(0, 25).mapToObj(i -> {
+			if (i == 24) {
+				throw new IllegalStateException("interrupted");
+			}
+			added.incrementAndGet();
+			return document(i);
+		}).collect(tagging), "The load should be interrupted.");
+		tagging.preDestroy();
+		try (Directory d = FSDirectory.open(location.getLocationPath()); DirectoryReader r = DirectoryReader.open(d)) {
+			assertEquals(24, r.numDocs(), "Closing should commit every document added.");
+			assertEquals("24", r.getIndexCommit().getUserData().get("added"),
+					"The last commit should have the latest user data.");
+		}
+	}
+
+	private LuceneLoadingCollectorImpl checkpointingLoader(IndexPhysicalLocation location, LoadCheckpoint checkpoint) {
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(location);
+		loader.commitEveryDocs = 10;
+		loader.commitUserData = checkpoint::userData;
+		loader.rollbackOnClose = true;
+		loader.postConstruct();
+		return loader;
+	}
+
+	private TransformedDocument chapterDocument(ExtractedDocument ed) {
+		return new TransformedDocument(
+				List.of(new IntField("chapter", ((ExtractedChapter) ed).getChapter(), Store.YES)));
+	}
+
+	private Set<Object> indexedChapters(IndexPhysicalLocation location) throws Exception {
+		Set<Object> chapters = new HashSet<>();
+		try (Directory d = FSDirectory.open(location.getLocationPath()); DirectoryReader r = DirectoryReader.open(d)) {
+			Bits liveDocs = MultiBits.getLiveDocs(r);
+			for (int i = 0; i < r.maxDoc(); i++) {
+				if (liveDocs != null && !liveDocs.get(i)) {
+					continue;
+				}
+				assertTrue(chapters.add(r.storedFields().document(i).getField("chapter").numericValue()),
+						"No chapter should be loaded twice.");
+			}
+		}
+		return chapters;
+	}
+
+	private TransformedDocument document(int i) {
+		List<Field> fields = new ArrayList<>();
+		fields.add(new IntField("chapter", i, Store.YES));
+		fields.add(new TextField("text", "And it came to pass, in chapter " + i + ", that the word " + (i * 31 % 977)
+				+ " was written, and " + (i % 13) + " more besides.", Store.YES));
+		return new TransformedDocument(fields);
+	}
+
 	private String fileContents(String ext) throws IOException {
 		Optional<Path> pO = Files.list(tempDir).filter(p -> p.getFileName().toString().endsWith(ext)).findFirst();
 		if (pO.isPresent()) {
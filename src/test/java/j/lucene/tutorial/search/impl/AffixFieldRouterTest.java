@@ -0,0 +1,167 @@
+package j.lucene.tutorial.search.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.load.impl.LuceneLoadingCollectorImpl;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.search.impl.PrefixQueryTutorial.PrefixInput;
+import j.lucene.tutorial.search.impl.WildcardQueryTutorial.WildcardInput;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+
+class AffixFieldRouterTest {
+
+	private static final int CHAPTERS = 200;
+
+	private static final List<String> PATTERNS = List.of("a*", "ab*", "abc*", "abcde*", "abcdef*", "*ba", "*a?c",
+			"?bc", "*c*", "a*c", "*", "ab?*");
+
+	private Path tempDir;
+	private List<String> texts;
+
+	/**
+	 * Creates chapters of random words made of few letters, so most patterns
+	 * match many terms.
+	 */
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.texts = new ArrayList<>();
+		Random r = new Random(1);
+		for (int i = 0; i < CHAPTERS; i++) {
+			StringBuilder sb = new StringBuilder("<html><body><p>");
+			for (int w = 0; w < 20; w++) {
+				int length = 1 + r.nextInt(8);
+				for (int c = 0; c < length; c++) {
+					sb.append((char) ('a' + r.nextInt(6)));
+				}
+				sb.append(' ');
+			}
+			texts.add(sb.append("</p></body></html>").toString());
+		}
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		Path plain = index("plain", new DocumentTransformerHtmlBibleImpl.Builder(), 0, CHAPTERS);
+		Path affixes = index("affixes", new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text"), 0,
+				CHAPTERS);
+		for (String pattern : PATTERNS) {
+			assertEquals(wildcard(plain, pattern), wildcard(affixes, pattern),
+					"The auxiliary fields should match the same chapters: " + pattern);
+		}
+		for (String prefix : List.of("a", "ab", "abcde", "abcdef")) {
+			assertEquals(prefix(plain, prefix), prefix(affixes, prefix),
+					"The auxiliary fields should match the same chapters: " + prefix);
+		}
+
+		try (Directory dir = FSDirectory.open(affixes); DirectoryReader r = DirectoryReader.open(dir)) {
+			assertEquals("ConstantScore(text_prefix:abc)", AffixFieldRouter.wildcardQuery(r, "text", "abc*").toString(),
+					"A short prefix should be one term.");
+			assertEquals("text:abcdef*", AffixFieldRouter.wildcardQuery(r, "text", "abcdef*").toString(),
+					"A long prefix should be enumerated.");
+			assertEquals("text_reversed:c?a*", AffixFieldRouter.wildcardQuery(r, "text", "*a?c").toString(),
+					"A leading wildcard should be reversed.");
+			assertEquals("text:*c*", AffixFieldRouter.wildcardQuery(r, "text", "*c*").toString(),
+					"A pattern that ends with a wildcard cannot be reversed.");
+			assertEquals("book:Jo*", AffixFieldRouter.wildcardQuery(r, "book", "Jo*").toString(),
+					"Fields without affixes should not be routed.");
+		}
+		try (Directory dir = FSDirectory.open(plain); DirectoryReader r = DirectoryReader.open(dir)) {
+			assertEquals("text:*a?c", AffixFieldRouter.wildcardQuery(r, "text", "*a?c").toString(),
+					"Indexes without affixes should not be routed.");
+		}
+	}
+
+	/**
+	 * If some segments were indexed without affixes, searching the auxiliary
+	 * fields would miss their documents.
+	 */
+	@Test
+	void testMixedSegments() throws Exception {
+		Path plain = index("plain", new DocumentTransformerHtmlBibleImpl.Builder(), 0, CHAPTERS);
+		Path mixed = index("mixed", new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text"), 0,
+				CHAPTERS / 2);
+		index("mixed", new DocumentTransformerHtmlBibleImpl.Builder(), CHAPTERS / 2, CHAPTERS);
+		try (Directory dir = FSDirectory.open(mixed); DirectoryReader r = DirectoryReader.open(dir)) {
+			assertTrue(r.leaves().size() > 1, "There should be a segment with, and one without, affixes.");
+			assertEquals("text:*ba", AffixFieldRouter.wildcardQuery(r, "text", "*ba").toString(),
+					"Patterns should not be routed unless every segment has affixes.");
+		}
+		for (String pattern : PATTERNS) {
+			assertEquals(wildcard(plain, pattern), wildcard(mixed, pattern),
+					"Every chapter should be found: " + pattern);
+		}
+	}
+
+	private Set<Object> wildcard(Path location, String pattern) {
+		WildcardQueryTutorial wqt = new WildcardQueryTutorial(new IndexPhysicalLocation(location));
+		wqt.postConstruct();
+		try {
+			return chapters(wqt.query(new WildcardInput("text", pattern), CHAPTERS));
+		} finally {
+			wqt.preDestroy();
+		}
+	}
+
+	private Set<Object> prefix(Path location, String prefix) {
+		PrefixQueryTutorial pqt = new PrefixQueryTutorial(new IndexPhysicalLocation(location));
+		pqt.postConstruct();
+		try {
+			return chapters(pqt.query(new PrefixInput("text", prefix), CHAPTERS));
+		} finally {
+			pqt.preDestroy();
+		}
+	}
+
+	private Path index(String name, DocumentTransformerHtmlBibleImpl.Builder b, int from, int to) throws Exception {
+		Path location = tempDir.resolve(name);
+		if (from == 0 && Files.exists(location)) {
+			return location;
+		}
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(location));
+		loader.postConstruct();
+		try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(b)) {
+			List<ExtractedChapter> chapters = new ArrayList<>();
+			for (int i = from; i < to; i++) {
+				chapters.add(new ExtractedChapter(new ExtractedChapter.Builder() //
+						.chapter(i + 1) //
+						.addTimestampMillis(1000L) //
+						.book("Synthetic") //
+						.text(texts.get(i))));
+			}
+			chapters.stream().map(transformer::transformExtractedDocument).collect(loader);
+		}
+		loader.preDestroy();
+		return location;
+	}
+
+	private Set<Object> chapters(SearchResults sr) {
+		assertEquals(sr.getTotalHits(), sr.getResults().size(), "Every match should be returned.");
+		return sr.getResults().stream().map(r -> r.getValues().get("chapter")).collect(Collectors.toSet());
+	}
+}
@@ -0,0 +1,167 @@
+package j.lucene.tutorial.search.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.lucene95.Lucene95HnswVectorsFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.load.impl.LuceneLoadingCollectorImpl;
+import j.lucene.tutorial.search.SearchResult;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+import j.lucene.tutorial.transform.impl.FeatureHashingEmbedder;
+
+class KnnVectorQueryTutorialTest {
+
+	private static final int CHAPTERS = 1000;
+
+	private Path tempDir;
+	private StandardAnalyzer analyzer;
+	private FeatureHashingEmbedder embedder;
+	private List<String> texts;
+
+	/**
+	 * Creates 1000 chapters of random words, alternately in "Genesis" and
+	 * "Exodus".
+	 */
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.analyzer = new StandardAnalyzer();
+		this.embedder = new FeatureHashingEmbedder(analyzer, 64);
+		this.texts = new ArrayList<>();
+		for (int i = 1; i <= CHAPTERS; i++) {
+			texts.add(randomWords(new Random(i)));
+		}
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		analyzer.close();
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		Path location = index("default", Lucene95HnswVectorsFormat.DEFAULT_MAX_CONN,
+				Lucene95HnswVectorsFormat.DEFAULT_BEAM_WIDTH);
+		KnnVectorQueryTutorial kt = new KnnVectorQueryTutorial(new IndexPhysicalLocation(location), embedder, 50);
+		kt.postConstruct();
+		try {
+			SearchResults sr = kt.query(texts.get(6), 5);
+			assertEquals(5, sr.getResults().size(), "There should always be as many results as requested.");
+			assertEquals(7, sr.getResults().get(0).getValues().get("chapter"),
+					"A chapter should be nearest to itself.");
+
+			SearchResults exodus = kt.query(texts.get(6), "Exodus", 5);
+			assertEquals(5, exodus.getResults().size(), "The filter should not reduce the number of results.");
+			for (SearchResult r : exodus.getResults()) {
+				assertEquals("Exodus", r.getValues().get("book"), "Only the filtered book should be searched.");
+			}
+			assertFalse(chapters(exodus).contains(7), "Chapter 7 is in Genesis.");
+		} finally {
+			kt.preDestroy();
+		}
+	}
+
+	/**
+	 * Compares the approximate nearest neighbors with the exact ones, for a graph
+	 * with the fewest possible connections, and for Lucene's defaults.
+	 */
+	@Test
+	void testRecall() throws Exception {
+		List<float[]> vectors = texts.stream().map(embedder::embed).toList();
+		List<float[]> queries = new ArrayList<>();
+		List<Set<Object>> exact = new ArrayList<>();
+		for (int q = 0; q < 20; q++) {
+			float[] query = embedder.embed(randomWords(new Random(-q)));
+			queries.add(query);
+			exact.add(IntStream.range(0, CHAPTERS).boxed()
+					.sorted(Comparator.comparingDouble(
+							(Integer i) -> -embedder.similarity().compare(query, vectors.get(i))))
+					.limit(10).map(i -> (Object) (i + 1)).collect(Collectors.toSet()));
+		}
+
+		double sparse = recall(index("sparse", 2, 4), 10, queries, exact);
+		double sparseWithMoreCandidates = recall(index("sparse", 2, 4), 100, queries, exact);
+		double dense = recall(index("default", Lucene95HnswVectorsFormat.DEFAULT_MAX_CONN,
+				Lucene95HnswVectorsFormat.DEFAULT_BEAM_WIDTH), 100, queries, exact);
+		assertTrue(sparseWithMoreCandidates > sparse,
+				"Keeping more candidates should find more of the nearest neighbors: " + sparseWithMoreCandidates
+						+ " vs " + sparse);
+		assertTrue(dense >= 0.95, "The default graph should find nearly all of the nearest neighbors: " + dense);
+	}
+
+	private double recall(Path location, int numCandidates, List<float[]> queries, List<Set<Object>> exact) {
+		KnnVectorQueryTutorial kt = new KnnVectorQueryTutorial(new IndexPhysicalLocation(location), embedder,
+				numCandidates);
+		kt.postConstruct();
+		try {
+			int found = 0;
+			for (int q = 0; q < queries.size(); q++) {
+				Set<Object> approximate = new HashSet<>(chapters(kt.query(queries.get(q), null, 10)));
+				approximate.retainAll(exact.get(q));
+				found += approximate.size();
+			}
+			return (double) found / (queries.size() * 10);
+		} finally {
+			kt.preDestroy();
+		}
+	}
+
+	private Path index(String name, int maxConn, int beamWidth) throws Exception {
+		Path location = tempDir.resolve(name);
+		if (Files.exists(location)) {
+			return location;
+		}
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(location));
+		loader.hnswMaxConn = maxConn;
+		loader.hnswBeamWidth = beamWidth;
+		loader.postConstruct();
+		try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().embedder(embedder))) {
+			List<ExtractedChapter> chapters = new ArrayList<>();
+			for (int i = 0; i < texts.size(); i++) {
+				chapters.add(new ExtractedChapter(new ExtractedChapter.Builder() //
+						.chapter(i + 1) //
+						.addTimestampMillis(1000L) //
+						.book(i % 2 == 0 ? "Genesis" : "Exodus") //
+						.text("<html><body><p>" + texts.get(i) + "</p></body></html>")));
+			}
+			chapters.stream().map(transformer::transformExtractedDocument).collect(loader);
+		}
+		loader.preDestroy();
+		return location;
+	}
+
+	private Set<Object> chapters(SearchResults sr) {
+		return sr.getResults().stream().map(r -> r.getValues().get("chapter")).collect(Collectors.toSet());
+	}
+
+	private String randomWords(Random r) {
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			words.add("word" + r.nextInt(500));
+		}
+		return String.join(" ", words);
+	}
+}
@@ -0,0 +1,130 @@
+package j.lucene.tutorial.search.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.load.impl.LuceneLoadingCollectorImpl;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+import j.lucene.tutorial.transform.impl.MinHashSignature;
+
+class NearDuplicateTutorialTest {
+
+	private static final int CHAPTERS = 30;
+
+	private Path tempDir;
+	private MinHashSignature minHash;
+	private List<String> texts;
+	private NearDuplicateTutorial ndt;
+
+	/**
+	 * Indexes 30 distinct chapters, then 2 lightly edited copies of chapter 5, as
+	 * chapters 31 and 32.
+	 */
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.minHash = new MinHashSignature();
+		this.texts = new ArrayList<>();
+		for (int i = 1; i <= CHAPTERS; i++) {
+			texts.add(html(randomWords(new Random(i))));
+		}
+		List<String> original = randomWords(new Random(5));
+		for (int copy = 1; copy <= 2; copy++) {
+			List<String> edited = new ArrayList<>(original);
+			for (int i = 0; i < 3; i++) {
+				edited.set(copy * 40 + i * 7, "edited" + copy + i);
+			}
+			texts.add(html(edited));
+		}
+
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(tempDir));
+		loader.postConstruct();
+		try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().minHash(minHash))) {
+			List<ExtractedChapter> chapters = new ArrayList<>();
+			for (int i = 0; i < texts.size(); i++) {
+				chapters.add(new ExtractedChapter(new ExtractedChapter.Builder() //
+						.chapter(i + 1) //
+						.addTimestampMillis(1000L) //
+						.book("Synthetic") //
+						.text(texts.get(i))));
+			}
+			chapters.stream().map(transformer::transformExtractedDocument).collect(loader);
+		}
+		loader.preDestroy();
+
+		this.ndt = new NearDuplicateTutorial(new IndexPhysicalLocation(tempDir), minHash, 0.7);
+		ndt.postConstruct();
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		ndt.preDestroy();
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void testQuery() throws Exception {
+		int[] signature;
+		try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().minHash(minHash))) {
+			signature = transformer.textSignature(texts.get(4));
+		}
+		SearchResults sr = ndt.query(signature, 10);
+		assertEquals(3L, sr.getTotalHits(), "Chapter 5 and its 2 edited copies should be near-duplicates.");
+		assertFalse(sr.isTotalApproximate(), "The total hits should be exact.");
+		assertEquals(5, sr.getResults().get(0).getValues().get("chapter"),
+				"The identical chapter should be the most similar.");
+		assertEquals(Set.of(5, 31, 32), chapters(sr), "The edited copies should be found.");
+
+		assertEquals(1, ndt.query(signature, 1).getResults().size(), "Only as many results as requested.");
+	}
+
+	@Test
+	void testCollapse() throws Exception {
+		TermQuery everything = new TermQuery(new Term("book", "Synthetic"));
+		SearchResults sr = ndt.collapse(everything, 100);
+		assertEquals(32L, sr.getTotalHits(), "The total hits should be before collapsing.");
+		assertEquals(CHAPTERS, sr.getResults().size(), "Each group of near-duplicates should be returned once.");
+		assertFalse(chapters(sr).contains(31) || chapters(sr).contains(32),
+				"The edited copies should be collapsed into chapter 5, which scores the same and comes first.");
+
+		SearchResults firstTen = ndt.collapse(everything, 10);
+		assertEquals(10, firstTen.getResults().size(), "Only as many results as requested.");
+	}
+
+	private Set<Object> chapters(SearchResults sr) {
+		return sr.getResults().stream().map(r -> r.getValues().get("chapter")).collect(Collectors.toSet());
+	}
+
+	private List<String> randomWords(Random r) {
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < 150; i++) {
+			words.add("word" + r.nextInt(300));
+		}
+		return words;
+	}
+
+	private String html(List<String> words) {
+		return "<html><body><p>" + String.join(" ", words) + "</p></body></html>";
+	}
+}
@@ -0,0 +1,113 @@
+package j.lucene.tutorial.search.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.load.impl.IndexPhysicalLocation;
+import j.lucene.tutorial.load.impl.LuceneLoadingCollectorImpl;
+import j.lucene.tutorial.search.SearchResult;
+import j.lucene.tutorial.search.SearchResults;
+import j.lucene.tutorial.transform.impl.DocumentTransformerHtmlBibleImpl;
+
+class SnippetTutorialTest {
+
+	private static final String HTML = """
+			<html><head><title>John 11</title></head><body>
+			<p><span class="verse">1</span> Now a certain man was sick, named Lazarus, of Bethany, the town of Mary and her sister Martha.</p>
+			<p><span class="verse">2</span> (It was that Mary which anointed the Lord with ointment, and wiped his feet with her hair, whose brother Lazarus was sick.)</p>
+			<p><span class="verse">3</span> Therefore his sisters sent unto him, saying, Lord, behold, he whom thou lovest is sick.</p>
+			<p><span class="verse">4</span> When Jesus heard that, he said, This sickness is not unto death, but for the glory of God, that the Son of God might be glorified thereby.</p>
+			<p><span class="verse">5</span> Now Jesus loved Martha, and her sister, and Lazarus.</p>
+			</body></html>
+			""";
+
+	private Path tempDir;
+	private SnippetTutorial st;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		LuceneLoadingCollectorImpl loader = new LuceneLoadingCollectorImpl(new IndexPhysicalLocation(tempDir));
+		loader.postConstruct();
+		try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true).indexOffsets("text"))) {
+			List<ExtractedChapter> chapters = new ArrayList<>();
+			for (int i = 1; i <= 3; i++) {
+				chapters.add(new ExtractedChapter(new ExtractedChapter.Builder() //
+						.chapter(i) //
+						.addTimestampMillis(1000L) //
+						.book("John") //
+						.synopsis("Raising of Lazarus, part " + i) //
+						.text(i == 3 ? HTML.replace("Lazarus", "Jairus") : HTML)));
+			}
+			chapters.stream().map(transformer::transformExtractedDocument).collect(loader);
+		}
+		loader.preDestroy();
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		if (st != null) {
+			st.preDestroy();
+		}
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		try (StandardAnalyzer analyzer = new StandardAnalyzer()) {
+			st = new SnippetTutorial(new IndexPhysicalLocation(tempDir), "text", 2, analyzer);
+			st.postConstruct();
+			SearchResults sr = st.query(new TermQuery(new Term("text", "lazarus")), 10);
+			assertEquals(2L, sr.getTotalHits(), "Chapters 1 and 2 mention Lazarus.");
+			for (SearchResult r : sr.getResults()) {
+				Map<String, Object> values = r.getValues();
+				assertFalse(values.containsKey("text"), "The whole text should not be returned.");
+				assertEquals("John", values.get("book"), "Other stored fields should be returned.");
+				List<?> snippets = (List<?>) values.get(SnippetTutorial.SNIPPETS);
+				assertEquals(2, snippets.size(), "There should be as many snippets as requested.");
+				for (Object snippet : snippets) {
+					assertTrue(snippet.toString().contains("<b>Lazarus</b>"),
+							"Each snippet should highlight the match: " + snippet);
+					assertFalse(snippet.toString().contains("<span"), "Snippets should not contain HTML: " + snippet);
+					assertTrue(snippet.toString().length() < HTML.length() / 2,
+							"A snippet should be a passage, not the whole text.");
+					assertTrue(snippet.toString().matches("\\d+ [^\n]+"), "A snippet should be one verse: " + snippet);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testWithoutOffsets() throws Exception {
+		try (StandardAnalyzer analyzer = new StandardAnalyzer()) {
+			st = new SnippetTutorial(new IndexPhysicalLocation(tempDir), "synopsis", 1, analyzer);
+			st.postConstruct();
+			SearchResults sr = st.query(new TermQuery(new Term("synopsis", "part")), 10);
+			assertEquals(3, sr.getResults().size(), "Every chapter's synopsis matches.");
+			for (SearchResult r : sr.getResults()) {
+				List<?> snippets = (List<?>) r.getValues().get(SnippetTutorial.SNIPPETS);
+				assertEquals(1, snippets.size(), "There should be one snippet.");
+				assertTrue(snippets.get(0).toString().startsWith("Raising of Lazarus, <b>part</b>"),
+						"Without offsets, the synopsis should be re-analyzed to find the match: " + snippets.get(0));
+			}
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package j.lucene.tutorial.transform.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import j.lucene.tutorial.BenchmarkTimer;
+import j.lucene.tutorial.extract.ExtractedChapter;
+import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.extract.impl.DocumentExtractorBibleZipFileImpl;
+import j.lucene.tutorial.extract.impl.SyntheticBibleZip;
+
+/**
+ * Transforms the chapters of a Bible-sized archive, already extracted, and
+ * reports chapters per second and the bytes allocated per chapter. Some
+ * benchmarks also index the chapters, in memory, as the options they compare
+ * only take effect then.
+ */
+@Tag("benchmark")
+class DocumentTransformerHtmlBibleImplBenchmarkTest {
+
+	private Path tempDir;
+	private List<ExtractedChapter> chapters;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		Path zip = tempDir.resolve("large.zip");
+		SyntheticBibleZip.writeLarge(zip, 1189, 26);
+		try (Stream<ExtractedDocument> s = new DocumentExtractorBibleZipFileImpl().documentsFromFilePath(zip)) {
+			this.chapters = s.map(d -> (ExtractedChapter) d).collect(Collectors.toList());
+		}
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	/**
+	 * Builds each document as the extractor would, then transforms it: once as a
+	 * map of boxed values, as before {@link ExtractedChapter}, and once typed.
+	 * Analysis is deferred, so only building the document and its Fields is
+	 * timed.
+	 */
+	@Test
+	void testTypedChapter(TestReporter reporter) throws Exception {
+		try (DocumentTransformerHtmlBibleImpl dt = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(true))) {
+			BenchmarkTimer.Task map = () -> {
+				for (ExtractedChapter c : chapters) {
+					dt.transformExtractedDocument(mapDocument(c));
+				}
+				return chapters.size();
+			};
+			BenchmarkTimer.Task typed = () -> {
+				for (ExtractedChapter c : chapters) {
+					dt.transformExtractedDocument(typedDocument(c));
+				}
+				return chapters.size();
+			};
+			BenchmarkTimer.report(reporter, "map", "docs", map);
+			BenchmarkTimer.report(reporter, "typed", "docs", typed);
+			BenchmarkTimer.reportAllocation(reporter, "map", "doc", map);
+			BenchmarkTimer.reportAllocation(reporter, "typed", "doc", typed);
+		}
+	}
+
+	/**
+	 * Indexes every chapter, analyzing the text, and again replaying the tokens
+	 * from a token cache that already holds them all.
+	 */
+	@Test
+	void testTokenCache(TestReporter reporter) throws Exception {
+		try (DocumentTransformerHtmlBibleImpl analyzing = new DocumentTransformerHtmlBibleImpl();
+				DocumentTransformerHtmlBibleImpl cached = new DocumentTransformerHtmlBibleImpl(
+						new DocumentTransformerHtmlBibleImpl.Builder().tokenCache(tempDir.resolve("tokens")))) {
+			index(cached);
+			BenchmarkTimer.report(reporter, "analyzing", "docs", () -> index(analyzing));
+			BenchmarkTimer.report(reporter, "token cache hits", "docs", () -> index(cached));
+			PreAnalyzedTokenCache cache = cached.tokenCache().get();
+			reporter.publishEntry("token cache", cache.hits() + " hits, " + cache.misses() + " misses");
+		}
+	}
+
+	/**
+	 * Transforms, and indexes, every chapter with new Fields for each, and with
+	 * Fields re-used by the thread. Allocation is only measured for the transform,
+	 * as indexing allocates far more.
+	 */
+	@Test
+	void testReuseFields(TestReporter reporter) throws Exception {
+		try (DocumentTransformerHtmlBibleImpl newFields = new DocumentTransformerHtmlBibleImpl();
+				DocumentTransformerHtmlBibleImpl reusedFields = new DocumentTransformerHtmlBibleImpl(
+						new DocumentTransformerHtmlBibleImpl.Builder().reuseFields(true))) {
+			BenchmarkTimer.reportAllocation(reporter, "new fields, transform", "doc", () -> transform(newFields));
+			BenchmarkTimer.reportAllocation(reporter, "re-used fields, transform", "doc",
+					() -> transform(reusedFields));
+			BenchmarkTimer.report(reporter, "new fields, index", "docs", () -> index(newFields));
+			BenchmarkTimer.report(reporter, "re-used fields, index", "docs", () -> index(reusedFields));
+		}
+	}
+
+	/**
+	 * Only the TokenStream of the last document is left unconsumed, which is
+	 * allowed.
+	 */
+	private long transform(DocumentTransformerHtmlBibleImpl dt) {
+		for (ExtractedChapter c : chapters) {
+			dt.transformExtractedDocument(c);
+		}
+		return chapters.size();
+	}
+
+	/**
+	 * Indexes the chapters storing the raw HTML, the stripped text, and the
+	 * stripped text with its offsets into the HTML. Also indexes the raw HTML
+	 * while stripping each chapter separately, as storing stripped text took
+	 * before it was stripped once for both storing and analyzing.
+	 */
+	@Test
+	void testStoreStrippedText(TestReporter reporter) throws Exception {
+		try (DocumentTransformerHtmlBibleImpl raw = new DocumentTransformerHtmlBibleImpl();
+				DocumentTransformerHtmlBibleImpl stripped = new DocumentTransformerHtmlBibleImpl(
+						new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true));
+				DocumentTransformerHtmlBibleImpl withOffsets = new DocumentTransformerHtmlBibleImpl(
+						new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true).storeOffsets(true))) {
+			BenchmarkTimer.Task strippedTwice = () -> {
+				long chars = 0;
+				for (ExtractedChapter c : chapters) {
+					chars += StrippedHtml.strip(c.getText(), false).text().length();
+				}
+				return chars > 0 ? index(raw) : 0;
+			};
+			BenchmarkTimer.report(reporter, "raw HTML", "docs", () -> index(raw));
+			BenchmarkTimer.report(reporter, "stripped twice", "docs", strippedTwice);
+			BenchmarkTimer.report(reporter, "stripped once", "docs", () -> index(stripped));
+			BenchmarkTimer.report(reporter, "stripped once, with offsets", "docs", () -> index(withOffsets));
+			BenchmarkTimer.reportAllocation(reporter, "raw HTML", "doc", () -> index(raw));
+			BenchmarkTimer.reportAllocation(reporter, "stripped twice", "doc", strippedTwice);
+			BenchmarkTimer.reportAllocation(reporter, "stripped once", "doc", () -> index(stripped));
+			reporter.publishEntry("raw HTML, index size", String.format("%,d bytes", indexSize(raw)));
+			reporter.publishEntry("stripped, index size", String.format("%,d bytes", indexSize(stripped)));
+			reporter.publishEntry("stripped with offsets, index size",
+					String.format("%,d bytes", indexSize(withOffsets)));
+		}
+	}
+
+	private long indexSize(DocumentTransformerHtmlBibleImpl dt) throws IOException {
+		try (Directory dir = new ByteBuffersDirectory()) {
+			try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(dt.indexAnalyzer()))) {
+				for (ExtractedChapter c : chapters) {
+					iw.addDocument(dt.transformExtractedDocument(c).getFields());
+				}
+				iw.forceMerge(1);
+			}
+			long size = 0;
+			for (String file : dir.listAll()) {
+				size += dir.fileLength(file);
+			}
+			return size;
+		}
+	}
+
+	private long index(DocumentTransformerHtmlBibleImpl dt) throws IOException {
+		try (Directory dir = new ByteBuffersDirectory();
+				IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(dt.indexAnalyzer()))) {
+			for (ExtractedChapter c : chapters) {
+				iw.addDocument(dt.transformExtractedDocument(c).getFields());
+			}
+		}
+		return chapters.size();
+	}
+
+	private static ExtractedDocument mapDocument(ExtractedChapter c) {
+		Map<String, Object> fields = new HashMap<>();
+		fields.put("chapter", c.getChapter());
+		fields.put("book", c.getBook());
+		fields.put("synopsis", c.getSynopsis());
+		fields.put("keywords", c.getKeywords());
+		fields.put("add_timestamp",
+				ZonedDateTime.ofInstant(Instant.ofEpochMilli(c.getAddTimestampMillis()), ZoneOffset.UTC));
+		fields.put("source", c.getSource());
+		fields.put("text", c.getText());
+		return new ExtractedDocument(fields);
+	}
+
+	private static ExtractedDocument typedDocument(ExtractedChapter c) {
+		return new ExtractedChapter(new ExtractedChapter.Builder() //
+				.chapter(c.getChapter()) //
+				.book(c.getBook()) //
+				.synopsis(c.getSynopsis()) //
+				.keywords(c.getKeywords()) //
+				.addTimestampMillis(c.getAddTimestampMillis()) //
+				.source(c.getSource()) //
+				.entryName(c.getEntryName()) //
+				.text(c.getText()));
+	}
+}
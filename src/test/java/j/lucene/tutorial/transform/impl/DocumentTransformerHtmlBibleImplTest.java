@@ -1,31 +1,64 @@
 package j.lucene.tutorial.transform.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.KeywordField;
+import org.apache.lucene.document.KnnFloatVectorField;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedChapter;
 import j.lucene.tutorial.extract.ExtractedDocument;
 import j.lucene.tutorial.transform.TransformedDocument;
 
@@ -102,6 +135,450 @@ class DocumentTransformerHtmlBibleImplTest {
 		}
 	}
 
+	@Test
+	void testExtractedChapter() throws Exception {
+		ExtractedChapter typed = new ExtractedChapter(new ExtractedChapter.Builder() //
+				.chapter(11) //
+				.addTimestampMillis(((ZonedDateTime) rawFields.get("add_timestamp")).toInstant().toEpochMilli()) //
+				.book("John") //
+				.source("kj_new.zip") //
+				.synopsis("Raising of Lazarus") //
+				.keywords((String[]) rawFields.get("keywords")) //
+				.text(raw));
+		assertEquals(describe(dt.transformExtractedDocument(new ExtractedDocument(rawFields))),
+				describe(dt.transformExtractedDocument(typed)),
+				"The typed chapter should produce the same fields as the equivalent map.");
+		assertEquals(rawFields.keySet(), typed.getContentByFieldname().keySet(),
+				"The typed chapter should still be viewable as a map.");
+	}
+
+	@Test
+	void testDeferAnalysis() throws Exception {
+		try (DocumentTransformerHtmlBibleImpl deferred = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(true))) {
+			List<Field> fields = deferred.transformExtractedDocument(new ExtractedDocument(rawFields)).getFields();
+			assertEquals(19, fields.size(), "There should be 19 fields.");
+			for (String n : new String[] { "synopsis", "text" }) {
+				TextField tf = checkTextField(n, fields);
+				assertNull(tf.tokenStreamValue(), "'" + n + "' should not be analyzed until it is indexed.");
+				assertEquals(rawFields.get(n), tf.stringValue(), "'" + n + "' should hold its String value.");
+			}
+		}
+	}
+
+	@Test
+	void testDeferAnalysisConcurrently() throws Exception {
+		List<ExtractedDocument> chapters = new ArrayList<>();
+		for (int i = 1; i <= 500; i++) {
+			Map<String, Object> m = new HashMap<>(rawFields);
+			m.put("chapter", i);
+			m.put("synopsis", "Synopsis number " + i + (i % 2 == 0 ? " even" : " odd"));
+			m.put("text", raw.replace("Lazarus", "Lazarus" + (i % 17)).replace("Bethany", "<b>Bethany" + i + "</b>"));
+			chapters.add(new ExtractedDocument(m));
+		}
+
+		List<String> eager = index(chapters, dt, new IndexWriterConfig(), 1);
+		assertTrue(eager.stream().anyMatch(p -> p.startsWith("text:bethany250:250:")),
+				"The chapter's own text should be indexed.");
+		assertFalse(eager.stream().anyMatch(p -> p.startsWith("text:span:")), "HTML should be stripped.");
+		try (DocumentTransformerHtmlBibleImpl deferred = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(true))) {
+			List<String> oneThread = index(chapters, deferred, new IndexWriterConfig(deferred.indexAnalyzer()), 1);
+			assertEquals(eager, oneThread, "Deferred analysis should index the same tokens as eager analysis.");
+			for (int run = 0; run < 3; run++) {
+				IndexWriterConfig iwc = new IndexWriterConfig(deferred.indexAnalyzer());
+				List<String> manyThreads = index(chapters, deferred, iwc, 8);
+				assertEquals(oneThread, manyThreads,
+						run + ": Transforming concurrently should produce the same index as one thread.");
+			}
+		}
+	}
+
+	@Test
+	void testReuseFields() throws Exception {
+		List<ExtractedChapter> chapters = new ArrayList<>();
+		for (int i = 1; i <= 500; i++) {
+			chapters.add(new ExtractedChapter(new ExtractedChapter.Builder() //
+					.chapter(i) //
+					.addTimestampMillis(1000L * i) //
+					.book(i % 3 == 0 ? null : "John" + (i % 4)) //
+					.source("kj_new.zip") //
+					.synopsis("Synopsis number " + i) //
+					.keywords(Arrays.copyOf((String[]) rawFields.get("keywords"), i % 6)) //
+					.text(raw.replace("Bethany", "<b>Bethany" + i + "</b>"))));
+		}
+		List<String> expected = index(chapters, dt, new IndexWriterConfig(), 1);
+		for (boolean deferAnalysis : new boolean[] { false, true }) {
+			try (DocumentTransformerHtmlBibleImpl plain = new DocumentTransformerHtmlBibleImpl(
+					new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(deferAnalysis));
+					DocumentTransformerHtmlBibleImpl reusing = new DocumentTransformerHtmlBibleImpl(
+							new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(deferAnalysis)
+									.reuseFields(true))) {
+				TransformedDocument first = reusing.transformExtractedDocument(chapters.get(0));
+				List<String> firstDescription = describe(first);
+				assertEquals(describe(plain.transformExtractedDocument(chapters.get(1))),
+						describe(reusing.transformExtractedDocument(chapters.get(1))),
+						deferAnalysis + ": Re-populated fields should match newly-created fields.");
+				assertSame(first, reusing.transformExtractedDocument(chapters.get(0)),
+						deferAnalysis + ": Each thread should re-use its document.");
+				assertEquals(firstDescription, describe(first),
+						deferAnalysis + ": Optional fields should be removed and re-added.");
+
+				IndexWriterConfig iwc = new IndexWriterConfig(reusing.indexAnalyzer());
+				assertEquals(expected, index(chapters, reusing, iwc, 8, false),
+						deferAnalysis + ": Re-using fields on many threads should produce the same index.");
+			}
+		}
+	}
+
+	@Test
+	void testStoreStrippedText() throws Exception {
+		List<ExtractedDocument> chapters = new ArrayList<>();
+		for (int i = 1; i <= 20; i++) {
+			Map<String, Object> m = new HashMap<>(rawFields);
+			m.put("chapter", i);
+			m.put("text", raw.replace("Bethany", "Bethany" + i + " &lt;i&gt;escaped&lt;/i&gt;"));
+			chapters.add(new ExtractedDocument(m));
+		}
+		List<String> expected = index(chapters, dt, new IndexWriterConfig(), 1);
+		for (DocumentTransformerHtmlBibleImpl.Builder b : List.of(
+				new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true).storeOffsets(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true).deferAnalysis(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true).reuseFields(true))) {
+			try (DocumentTransformerHtmlBibleImpl stripped = new DocumentTransformerHtmlBibleImpl(b)) {
+				IndexWriterConfig iwc = new IndexWriterConfig(stripped.indexAnalyzer());
+				assertEquals(expected, index(chapters, stripped, iwc, 1),
+						"Storing stripped text should not change the indexed tokens, nor strip HTML twice.");
+			}
+		}
+
+		try (DocumentTransformerHtmlBibleImpl stripped = new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().storeStrippedText(true).storeOffsets(true))) {
+			String html = (String) chapters.get(0).getContentByFieldname().get("text");
+			List<Field> fields = stripped.transformExtractedDocument(chapters.get(0)).getFields();
+			Field storedText = fields.stream().filter(f -> f.name().equals("text"))
+					.filter(StoredField.class::isInstance).findAny().get();
+			assertFalse(storedText.stringValue().contains("<span"), "The stored text should not contain HTML.");
+			assertTrue(storedText.stringValue().contains("Now a certain man was sick, named Lazarus, of Bethany1"),
+					"The stored text should keep the text.");
+			BytesRef offsets = fields.stream()
+					.filter(f -> f.name().equals(DocumentTransformerHtmlBibleImpl.TEXT_OFFSETS_FIELD)).findAny().get()
+					.binaryValue();
+			List<Field> eagerFields = dt.transformExtractedDocument(chapters.get(0)).getFields();
+			List<int[]> rawOffsets = offsets(checkTextField("text", eagerFields).tokenStreamValue());
+			List<int[]> strippedOffsets = offsets(checkTextField("text", fields).tokenStreamValue());
+			assertEquals(rawOffsets.size(), strippedOffsets.size(), "There should be the same number of tokens.");
+			for (int i = 0; i < rawOffsets.size(); i++) {
+				int[] so = strippedOffsets.get(i);
+				assertEquals(rawOffsets.get(i)[0], StrippedHtml.originalOffset(offsets, so[0]),
+						i + ": The start offset should map back to the raw HTML.");
+				assertEquals(rawOffsets.get(i)[1], StrippedHtml.originalOffset(offsets, so[1]),
+						i + ": The end offset should map back to the raw HTML.");
+			}
+			int lazarus = storedText.stringValue().indexOf("Lazarus");
+			assertEquals(html.indexOf("Lazarus"), StrippedHtml.originalOffset(offsets, lazarus),
+					"An offset in the stored text should map to the same word in the raw HTML.");
+		}
+	}
+
+	private List<int[]> offsets(TokenStream ts) throws IOException {
+		List<int[]> offsets = new ArrayList<>();
+		OffsetAttribute oa = ts.addAttribute(OffsetAttribute.class);
+		ts.reset();
+		while (ts.incrementToken()) {
+			offsets.add(new int[] { oa.startOffset(), oa.endOffset() });
+		}
+		ts.end();
+		ts.close();
+		return offsets;
+	}
+
+	@Test
+	void testTokenCache() throws Exception {
+		Path cacheDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		try {
+			List<ExtractedDocument> chapters = new ArrayList<>();
+			for (int i = 1; i <= 50; i++) {
+				Map<String, Object> m = new HashMap<>(rawFields);
+				m.put("chapter", i);
+				m.put("text", raw.replace("Bethany", "Bethany" + (i % 10)));
+				chapters.add(new ExtractedDocument(m));
+			}
+			List<String> expected = index(chapters, dt, new IndexWriterConfig(), 1);
+			for (int run = 0; run < 2; run++) {
+				try (DocumentTransformerHtmlBibleImpl cached = new DocumentTransformerHtmlBibleImpl(
+						new DocumentTransformerHtmlBibleImpl.Builder().tokenCache(cacheDir))) {
+					// Concurrent misses on the same text may each analyze it, so start with one thread.
+					assertEquals(expected, index(chapters, cached, new IndexWriterConfig(), run == 0 ? 1 : 4),
+							run + ": Cached tokens should index the same as analyzing each time.");
+					PreAnalyzedTokenCache cache = cached.tokenCache().get();
+					assertEquals(run == 0 ? 11 : 0, cache.misses(),
+							run + ": Each distinct synopsis and text should be analyzed once.");
+					assertEquals(run == 0 ? 89 : 100, cache.hits(), run + ": Other values should be replayed.");
+				}
+			}
+		} finally {
+			Files.walk(cacheDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	void testIndexOffsets() throws Exception {
+		ExtractedDocument in = new ExtractedDocument(rawFields);
+		List<int[]> expected = offsets(checkTextField("text", dt.transformExtractedDocument(in).getFields())
+				.tokenStreamValue());
+		for (DocumentTransformerHtmlBibleImpl.Builder b : List.of(
+				new DocumentTransformerHtmlBibleImpl.Builder().indexOffsets("text"),
+				new DocumentTransformerHtmlBibleImpl.Builder().indexOffsets("text").deferAnalysis(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().indexOffsets("text").reuseFields(true))) {
+			try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(b);
+					Directory dir = new ByteBuffersDirectory()) {
+				try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(transformer.indexAnalyzer()))) {
+					iw.addDocument(transformer.transformExtractedDocument(in).getFields());
+				}
+				try (DirectoryReader r = DirectoryReader.open(dir)) {
+					LeafReader leaf = r.leaves().get(0).reader();
+					assertEquals(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS,
+							leaf.getFieldInfos().fieldInfo("text").getIndexOptions(),
+							"The text should be indexed with offsets.");
+					assertEquals(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS,
+							leaf.getFieldInfos().fieldInfo("synopsis").getIndexOptions(),
+							"Only the given fields should be indexed with offsets.");
+					TermsEnum te = leaf.terms("text").iterator();
+					assertTrue(te.seekExact(new BytesRef("lazarus")), "The text should be indexed.");
+					PostingsEnum pe = te.postings(null, PostingsEnum.OFFSETS);
+					pe.nextDoc();
+					pe.nextPosition();
+					int start = pe.startOffset();
+					int end = pe.endOffset();
+					String html = (String) rawFields.get("text");
+					assertEquals("Lazarus", html.substring(start, end), "The offsets should point into the raw HTML.");
+					assertTrue(expected.stream().anyMatch(o -> o[0] == start && o[1] == end),
+							"The offsets should be those of the analyzed tokens.");
+				}
+			}
+		}
+		assertThrows(LuceneTutorialException.class, () -> new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().indexOffsets("book")),
+				"Only text fields have offsets.");
+	}
+
+	@Test
+	void testMinHash() throws Exception {
+		MinHashSignature minHash = new MinHashSignature();
+		String edited = raw.replace("Bethany", "Bethphage").replace("Martha", "Mary");
+		String unrelated = "<html><body><p>In the beginning God created the heaven and the earth.</p></body></html>";
+		ExtractedChapter chapter = new ExtractedChapter(
+				new ExtractedChapter.Builder().chapter(11).addTimestampMillis(1000L).book("John").text(raw));
+		int[] expected = null;
+		for (DocumentTransformerHtmlBibleImpl.Builder b : List.of(
+				new DocumentTransformerHtmlBibleImpl.Builder().minHash(minHash),
+				new DocumentTransformerHtmlBibleImpl.Builder().minHash(minHash).deferAnalysis(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().minHash(minHash).storeStrippedText(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().minHash(minHash).storeStrippedText(true)
+						.reuseFields(true))) {
+			try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(b)) {
+				int[] signature = transformer.textSignature(raw);
+				if (expected == null) {
+					expected = signature;
+				}
+				assertTrue(Arrays.equals(expected, signature), "The signature should not depend on how text is stored.");
+
+				for (ExtractedDocument in : List.of(new ExtractedDocument(rawFields), chapter)) {
+					List<Field> fields = transformer.transformExtractedDocument(in).getFields();
+					List<Field> minHashFields = fields.stream()
+							.filter(f -> f.name().equals(DocumentTransformerHtmlBibleImpl.TEXT_MINHASH_FIELD)).toList();
+					assertEquals(1, minHashFields.size(), "There should be one signature.");
+					assertTrue(Arrays.equals(signature, MinHashSignature.decode(minHashFields.get(0).binaryValue())),
+							"The stored signature should match the text's signature.");
+					List<BytesRef> bands = fields.stream()
+							.filter(f -> f.name().equals(DocumentTransformerHtmlBibleImpl.TEXT_MINHASH_BANDS_FIELD))
+							.map(Field::binaryValue).toList();
+					assertEquals(Arrays.asList(minHash.bands(signature)), bands, "Each band should be indexed.");
+				}
+
+				double similar = MinHashSignature.similarity(signature, transformer.textSignature(edited));
+				assertTrue(similar > 0.7, "A lightly edited chapter should be a near-duplicate: " + similar);
+				double different = MinHashSignature.similarity(signature, transformer.textSignature(unrelated));
+				assertTrue(different < 0.2, "An unrelated chapter should not be a near-duplicate: " + different);
+			}
+		}
+		assertFalse(dt.transformExtractedDocument(chapter).getFields().stream()
+				.anyMatch(f -> f.name().startsWith(DocumentTransformerHtmlBibleImpl.TEXT_MINHASH_FIELD)),
+				"Without MinHash, there should be no signature fields.");
+	}
+
+	@Test
+	void testIndexAffixes() throws Exception {
+		ExtractedDocument in = new ExtractedDocument(rawFields);
+		ExtractedChapter chapter = new ExtractedChapter(new ExtractedChapter.Builder().chapter(11)
+				.addTimestampMillis(1000L).book("John").synopsis("Raising of Lazarus").text(raw));
+		for (DocumentTransformerHtmlBibleImpl.Builder b : List.of(
+				new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text", "synopsis"),
+				new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text", "synopsis").deferAnalysis(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text", "synopsis")
+						.storeStrippedText(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text", "synopsis").reuseFields(true),
+				new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("text", "synopsis").reuseFields(true)
+						.storeStrippedText(true))) {
+			try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(b);
+					Directory dir = new ByteBuffersDirectory()) {
+				try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(transformer.indexAnalyzer()))) {
+					iw.addDocument(transformer.transformExtractedDocument(in).getFields());
+					iw.addDocument(transformer.transformExtractedDocument(chapter).getFields());
+				}
+				try (DirectoryReader r = DirectoryReader.open(dir)) {
+					LeafReader leaf = r.leaves().get(0).reader();
+					String prefixes = "text" + DocumentTransformerHtmlBibleImpl.PREFIX_FIELD_SUFFIX;
+					String reversed = "text" + DocumentTransformerHtmlBibleImpl.REVERSED_FIELD_SUFFIX;
+					assertEquals(IndexOptions.DOCS, leaf.getFieldInfos().fieldInfo(prefixes).getIndexOptions(),
+							"Prefixes only need to find documents.");
+					for (String prefix : List.of("l", "la", "laz", "laza", "lazar")) {
+						assertEquals(2, leaf.docFreq(new Term(prefixes, prefix)), "Each prefix should be indexed.");
+					}
+					assertEquals(0, leaf.docFreq(new Term(prefixes, "lazaru")),
+							"Prefixes longer than the maximum should not be indexed.");
+					assertEquals(0, leaf.docFreq(new Term(prefixes, "spa")), "HTML should be stripped from prefixes.");
+					assertEquals(2, leaf.docFreq(new Term(reversed, "surazal")), "Tokens should be reversed.");
+					assertEquals(0, leaf.docFreq(new Term(reversed, "naps")), "HTML should be stripped when reversed.");
+					assertEquals(2, leaf.docFreq(new Term("synopsis" + DocumentTransformerHtmlBibleImpl.PREFIX_FIELD_SUFFIX,
+							"rai")), "The synopsis should have prefixes too.");
+					assertEquals(2, leaf.docFreq(new Term("text", "lazarus")), "The text should still be indexed.");
+				}
+			}
+		}
+		assertFalse(dt.transformExtractedDocument(in).getFields().stream()
+				.anyMatch(f -> f.name().endsWith(DocumentTransformerHtmlBibleImpl.PREFIX_FIELD_SUFFIX)),
+				"By default, there should be no affixes.");
+		assertThrows(LuceneTutorialException.class, () -> new DocumentTransformerHtmlBibleImpl(
+				new DocumentTransformerHtmlBibleImpl.Builder().indexAffixes("book")),
+				"Only text fields have affixes.");
+	}
+
+	@Test
+	void testEmbedder() throws Exception {
+		try (StandardAnalyzer analyzer = new StandardAnalyzer()) {
+			FeatureHashingEmbedder embedder = new FeatureHashingEmbedder(analyzer, 32);
+			float[] expected = embedder.embed(StrippedHtml.strip(raw, false).text());
+			double norm = 0;
+			for (float v : expected) {
+				norm += v * v;
+			}
+			assertEquals(1.0, norm, 1e-5, "The vector should have unit length.");
+			assertNull(embedder.embed(" ... "), "Text without terms has no vector.");
+
+			ExtractedChapter chapter = new ExtractedChapter(
+					new ExtractedChapter.Builder().chapter(11).addTimestampMillis(1000L).book("John").text(raw));
+			for (DocumentTransformerHtmlBibleImpl.Builder b : List.of(
+					new DocumentTransformerHtmlBibleImpl.Builder().embedder(embedder),
+					new DocumentTransformerHtmlBibleImpl.Builder().embedder(embedder).deferAnalysis(true),
+					new DocumentTransformerHtmlBibleImpl.Builder().embedder(embedder).storeStrippedText(true),
+					new DocumentTransformerHtmlBibleImpl.Builder().embedder(embedder).reuseFields(true),
+					new DocumentTransformerHtmlBibleImpl.Builder().embedder(embedder).storeStrippedText(true)
+							.reuseFields(true))) {
+				try (DocumentTransformerHtmlBibleImpl transformer = new DocumentTransformerHtmlBibleImpl(b)) {
+					for (ExtractedDocument in : List.of(new ExtractedDocument(rawFields), chapter)) {
+						List<Field> vectors = transformer.transformExtractedDocument(in).getFields().stream()
+								.filter(f -> f.name().equals(DocumentTransformerHtmlBibleImpl.TEXT_VECTOR_FIELD))
+								.toList();
+						assertEquals(1, vectors.size(), "There should be one vector.");
+						KnnFloatVectorField vector = (KnnFloatVectorField) vectors.get(0);
+						assertTrue(Arrays.equals(expected, vector.vectorValue()),
+								"The vector should be of the text without markup, however it is stored.");
+						assertEquals(VectorSimilarityFunction.DOT_PRODUCT, vector.fieldType().vectorSimilarityFunction(),
+								"The embedder decides how vectors are compared.");
+					}
+				}
+			}
+		}
+		assertFalse(dt.transformExtractedDocument(new ExtractedDocument(rawFields)).getFields().stream()
+				.anyMatch(f -> f.name().equals(DocumentTransformerHtmlBibleImpl.TEXT_VECTOR_FIELD)),
+				"Without an embedder, there should be no vector.");
+	}
+
+	private List<String> index(List<? extends ExtractedDocument> in, DocumentTransformerHtmlBibleImpl transformer,
+			IndexWriterConfig iwc, int threads) throws Exception {
+		return index(in, transformer, iwc, threads, true);
+	}
+
+	/**
+	 * With one thread, indexes each document as soon as it is transformed.
+	 * Otherwise, transforms the documents on the given number of threads, and
+	 * indexes them, also concurrently. If buffering, all documents are
+	 * transformed before any are indexed. Returns every posting, with positions,
+	 * keyed by chapter rather than docId.
+	 */
+	private List<String> index(List<? extends ExtractedDocument> in, DocumentTransformerHtmlBibleImpl transformer,
+			IndexWriterConfig iwc, int threads, boolean buffer) throws Exception {
+		try (Directory dir = new ByteBuffersDirectory(); IndexWriter iw = new IndexWriter(dir, iwc)) {
+			if (threads == 1) {
+				for (ExtractedDocument ed : in) {
+					iw.addDocument(transformer.transformExtractedDocument(ed).getFields());
+				}
+			} else if (!buffer) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					pool.submit(() -> in.parallelStream().forEach(ed -> {
+						try {
+							iw.addDocument(transformer.transformExtractedDocument(ed).getFields());
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})).get();
+				} finally {
+					pool.shutdown();
+				}
+			} else {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					List<TransformedDocument> buffered = pool
+							.submit(() -> in.parallelStream().map(transformer::transformExtractedDocument).toList())
+							.get();
+					pool.submit(() -> buffered.parallelStream().forEach(td -> {
+						try {
+							iw.addDocument(td.getFields());
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})).get();
+				} finally {
+					pool.shutdown();
+				}
+			}
+			iw.forceMerge(1);
+			iw.commit();
+			List<String> postings = new ArrayList<>();
+			try (DirectoryReader r = DirectoryReader.open(dir)) {
+				assertEquals(in.size(), r.numDocs(), "Every document should be indexed.");
+				LeafReader leaf = r.leaves().get(0).reader();
+				for (String field : new String[] { "synopsis", "text", "keywords", "book" }) {
+					TermsEnum te = leaf.terms(field).iterator();
+					PostingsEnum pe = null;
+					while (te.next() != null) {
+						pe = te.postings(pe, PostingsEnum.POSITIONS);
+						NumericDocValues chapter = leaf.getNumericDocValues("chapter");
+						for (int doc = pe.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = pe.nextDoc()) {
+							chapter.advanceExact(doc);
+							StringBuilder sb = new StringBuilder(field).append(':').append(te.term().utf8ToString())
+									.append(':').append(chapter.longValue()).append(':');
+							for (int i = 0; i < pe.freq(); i++) {
+								sb.append(pe.nextPosition()).append(',');
+							}
+							postings.add(sb.toString());
+						}
+					}
+				}
+			}
+			Collections.sort(postings);
+			return postings;
+		}
+	}
+
+	private List<String> describe(TransformedDocument td) {
+		return td.getFields().stream().map(f -> f.name() + ":" + f.getClass().getSimpleName() + ":"
+				+ (f.numericValue() != null ? f.numericValue() : f.stringValue())).sorted().toList();
+	}
+
 	private StringField checkStringField(String name, List<Field> l) {
 		Optional<StringField> sfo = l.stream().filter(f -> f.name().equals(name)).filter(StringField.class::isInstance)
 				.map(StringField.class::cast).findAny();
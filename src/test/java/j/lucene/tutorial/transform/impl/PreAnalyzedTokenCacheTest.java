@@ -0,0 +1,96 @@
+package j.lucene.tutorial.transform.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PreAnalyzedTokenCacheTest {
+
+	private static final String TEXT = "Now a certain man was sick, named Lazarus, of Bethany.";
+
+	private Path tempDir;
+	private Analyzer analyzer;
+
+	@BeforeEach
+	void before() throws Exception {
+		this.tempDir = Files.createTempDirectory(this.getClass().getSimpleName());
+		this.analyzer = new StandardAnalyzer();
+	}
+
+	@AfterEach
+	void after() throws Exception {
+		analyzer.close();
+		Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	void test() throws Exception {
+		List<String> expected = tokens(analyzer.tokenStream("f", TEXT));
+
+		PreAnalyzedTokenCache cache = new PreAnalyzedTokenCache(tempDir, analyzer, "test");
+		assertEquals(expected, tokens(cache.tokenStream("f", TEXT)), "A miss should return the analyzed tokens.");
+		assertEquals(0, cache.hits(), "The first request should not be a hit.");
+		assertEquals(1, cache.misses(), "The first request should be a miss.");
+
+		PreAnalyzedTokenCache reopened = new PreAnalyzedTokenCache(tempDir, analyzer, "test");
+		TokenStream replay = reopened.tokenStream("f", TEXT);
+		assertEquals(expected, tokens(replay), "A hit should replay the same tokens.");
+		assertEquals(expected, tokens(replay), "A replayed TokenStream may be reset and consumed again.");
+		assertEquals(1, reopened.hits(), "The cache should persist on disk.");
+
+		reopened.tokenStream("g", TEXT);
+		reopened.tokenStream("f", TEXT + " ");
+		new PreAnalyzedTokenCache(tempDir, analyzer, "changed").tokenStream("f", TEXT);
+		assertEquals(1, reopened.hits(), "The field name and the text should be part of the key.");
+		try (var s = Files.walk(tempDir)) {
+			assertEquals(4, s.filter(p -> p.toString().endsWith(".tok")).count(),
+					"There should be one entry per field, text and analysis id.");
+		}
+	}
+
+	@Test
+	void testCorruptEntry() throws Exception {
+		PreAnalyzedTokenCache cache = new PreAnalyzedTokenCache(tempDir, analyzer, "test");
+		List<String> expected = tokens(cache.tokenStream("f", TEXT));
+		try (var s = Files.walk(tempDir)) {
+			for (Path p : s.filter(p -> p.toString().endsWith(".tok")).toList()) {
+				Files.write(p, new byte[] { 1, 127, 3 });
+			}
+		}
+		assertEquals(expected, tokens(cache.tokenStream("f", TEXT)), "A corrupt entry should be re-analyzed.");
+		assertEquals(2, cache.misses(), "A corrupt entry should count as a miss.");
+		assertEquals(expected, tokens(cache.tokenStream("f", TEXT)), "A corrupt entry should be re-written.");
+		assertEquals(1, cache.hits(), "The re-written entry should be used.");
+	}
+
+	private List<String> tokens(TokenStream ts) throws Exception {
+		List<String> tokens = new ArrayList<>();
+		CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+		PositionIncrementAttribute posInc = ts.addAttribute(PositionIncrementAttribute.class);
+		OffsetAttribute offset = ts.addAttribute(OffsetAttribute.class);
+		ts.reset();
+		while (ts.incrementToken()) {
+			tokens.add(term + ":" + posInc.getPositionIncrement() + ":" + offset.startOffset() + "-"
+					+ offset.endOffset());
+		}
+		ts.end();
+		tokens.add("end:" + posInc.getPositionIncrement() + ":" + offset.endOffset());
+		ts.close();
+		return tokens;
+	}
+}
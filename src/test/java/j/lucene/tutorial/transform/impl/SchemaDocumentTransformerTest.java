@@ -0,0 +1,178 @@
+package j.lucene.tutorial.transform.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+import j.lucene.tutorial.LuceneTutorialException;
+import j.lucene.tutorial.extract.ExtractedDocument;
+import j.lucene.tutorial.extract.ExtractedRecord;
+import j.lucene.tutorial.transform.TransformedDocument;
+import j.lucene.tutorial.transform.impl.DocumentSchema.FieldType;
+import j.lucene.tutorial.transform.impl.DocumentSchema.Option;
+
+class SchemaDocumentTransformerTest {
+
+	private static final String HTML = "<html><head><title>Raising of Lazarus</title></head><body>"
+			+ "<p><span class=\"verse\">1</span> Now a certain man was sick, named Lazarus, of Bethany.</p></body></html>";
+
+	/**
+	 * The fields of a Bible chapter, as DocumentTransformerHtmlBibleImpl creates
+	 * them, loaded from a properties file.
+	 */
+	private static final DocumentSchema BIBLE = DocumentSchema.bible();
+
+	@Test
+	void test() throws Exception {
+		ZonedDateTime added = ZonedDateTime.of(2001, 2, 3, 4, 5, 6, 7, ZoneOffset.UTC);
+		String[] keywords = new String[] { "just", "some ", " JUNK" };
+		Map<String, Object> m = new HashMap<>();
+		m.put("chapter", 11);
+		m.put("add_timestamp", added);
+		m.put("book", "John");
+		m.put("source", "kj_new.zip");
+		m.put("synopsis", "Raising of Lazarus");
+		m.put("keywords", keywords);
+		m.put("text", HTML);
+		m.put("undeclared", "ignored");
+		ExtractedDocument mapped = new ExtractedDocument(m);
+		ExtractedRecord record = BIBLE.newRecord(11, added, "John", "kj_new.zip", "Raising of Lazarus", HTML,
+				keywords);
+		assertEquals(mapped.getContentByFieldname().size() - 1, record.getContentByFieldname().size(),
+				"The record should also be readable as a map.");
+
+		try (SchemaDocumentTransformer sdt = new SchemaDocumentTransformer(BIBLE);
+				DocumentTransformerHtmlBibleImpl bible = new DocumentTransformerHtmlBibleImpl(
+						new DocumentTransformerHtmlBibleImpl.Builder().deferAnalysis(true))) {
+			List<String> expected = describe(bible.transformExtractedDocument(mapped));
+			assertEquals(expected, describe(sdt.transformExtractedDocument(mapped)),
+					"The schema should produce the same fields as the hand-written transformer.");
+			assertEquals(expected, describe(sdt.transformExtractedDocument(record)),
+					"A record should produce the same fields as a map.");
+
+			ExtractedRecord partial = BIBLE.newRecord(12, added, "John", null, null, HTML, null);
+			assertEquals(10, sdt.transformExtractedDocument(partial).getFields().size(),
+					"Fields without a value should be skipped.");
+		}
+	}
+
+	@Test
+	void testIndexAnalyzer() throws Exception {
+		DocumentSchema schema = new DocumentSchema(new DocumentSchema.Builder() //
+				.field("title", FieldType.TEXT, Option.INDEXED, Option.STORED) //
+				.field("body", FieldType.HTML_TEXT, Option.INDEXED) //
+				.field("id", FieldType.LONG, Option.STORED, Option.DOC_VALUES) //
+				.analyzer("title", new WhitespaceAnalyzer()));
+		try (SchemaDocumentTransformer sdt = new SchemaDocumentTransformer(schema);
+				Directory dir = new ByteBuffersDirectory()) {
+			try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(sdt.indexAnalyzer()))) {
+				iw.addDocument(sdt.transformExtractedDocument(schema.newRecord("Raising of Lazarus", HTML, 7L))
+						.getFields());
+			}
+			try (DirectoryReader r = DirectoryReader.open(dir)) {
+				LeafReader leaf = r.leaves().get(0).reader();
+				assertEquals(1, leaf.docFreq(new Term("title", "Lazarus")),
+						"The title should be analyzed with its own Analyzer, which keeps case.");
+				assertEquals(1, leaf.docFreq(new Term("body", "bethany")),
+						"The body should be analyzed with StandardAnalyzer.");
+				assertEquals(0, leaf.docFreq(new Term("body", "span")), "HTML should be stripped from the body.");
+				assertNull(r.storedFields().document(0).get("body"), "The body should not be stored.");
+				assertNotNull(leaf.getNumericDocValues("id"), "The id should be in doc values.");
+				assertNull(leaf.getPointValues("id"), "The id should not be indexed.");
+			}
+		}
+	}
+
+	@Test
+	void testValidation() throws Exception {
+		assertThrows(LuceneTutorialException.class,
+				() -> new DocumentSchema(new DocumentSchema.Builder().field("a", FieldType.INT, Option.STORED)
+						.field("a", FieldType.LONG, Option.STORED)),
+				"A field may only be declared once.");
+		assertThrows(LuceneTutorialException.class,
+				() -> new DocumentSchema(new DocumentSchema.Builder().field("a", FieldType.INT)),
+				"A field must be indexed, stored or in doc values.");
+		assertThrows(LuceneTutorialException.class,
+				() -> new DocumentSchema(
+						new DocumentSchema.Builder().field("a", FieldType.TEXT, Option.INDEXED, Option.DOC_VALUES)),
+				"Analyzed text cannot be in doc values.");
+		assertThrows(LuceneTutorialException.class,
+				() -> new DocumentSchema(new DocumentSchema.Builder().field("a", FieldType.STRING, Option.INDEXED)
+						.analyzer("a", new WhitespaceAnalyzer())),
+				"Only text fields are analyzed.");
+		assertThrows(LuceneTutorialException.class,
+				() -> new DocumentSchema(new DocumentSchema.Builder().field("a", FieldType.TEXT, Option.INDEXED)
+						.analyzer("b", new WhitespaceAnalyzer())),
+				"An analyzer must be for a declared field.");
+		assertThrows(LuceneTutorialException.class, () -> BIBLE.newRecord(1, 2),
+				"A record must have a value, or null, for each field.");
+
+		ExtractedRecord other = new ExtractedRecord(new ArrayList<>(BIBLE.fieldNames()),
+				new Object[] { 1, null, null, null, null, null, null });
+		try (SchemaDocumentTransformer sdt = new SchemaDocumentTransformer(BIBLE)) {
+			assertFalse(sdt.transformExtractedDocument(other).getFields().isEmpty(),
+					"A record for another list of names should be read from its map.");
+		}
+		assertTrue(BIBLE.fields().get(0).has(Option.DOC_VALUES), "The options should be kept.");
+	}
+
+	@Test
+	void testLoad() throws Exception {
+		Path file = Files.createTempFile(this.getClass().getSimpleName(), ".properties");
+		try {
+			Files.writeString(file, "fields = title, id\n" //
+					+ "title.type = TEXT\n" //
+					+ "title.options = INDEXED, STORED\n" //
+					+ "id.type = LONG\n" //
+					+ "id.options = STORED, DOC_VALUES\n");
+			DocumentSchema schema = DocumentSchema.load(file);
+			assertEquals(List.of("title", "id"), schema.fieldNames(), "The fields should be in the order listed.");
+			assertEquals(FieldType.LONG, schema.fields().get(1).type(), "The type should be loaded.");
+			assertEquals(EnumSet.of(Option.STORED, Option.DOC_VALUES), schema.fields().get(1).options(),
+					"The options should be loaded.");
+
+			Map<String, String> invalid = Map.of( //
+					"title.type = TEXT\n", "The fields must be listed.", //
+					"fields = title\ntitle.type = PARAGRAPH\ntitle.options = STORED\n", "The type must be known.", //
+					"fields = title\ntitle.type = TEXT\ntitle.options = SORTED\n", "The options must be known.", //
+					"fields = title\ntitle.options = STORED\n", "Each field must have a type.", //
+					"fields = title\ntitle.type = TEXT\ntitle.options = STORED\ntitel.type = TEXT\n",
+					"A property for a field not listed is probably a mistake.", //
+					"fields = title\ntitle.type = TEXT\n", "The schema should still be validated.");
+			for (Map.Entry<String, String> e : invalid.entrySet()) {
+				Files.writeString(file, e.getKey());
+				assertThrows(LuceneTutorialException.class, () -> DocumentSchema.load(file), e.getValue());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private List<String> describe(TransformedDocument td) {
+		return td.getFields().stream().map(f -> f.name() + ":" + f.getClass().getSimpleName() + ":"
+				+ (f.numericValue() != null ? f.numericValue() : f.stringValue())).sorted().toList();
+	}
+}